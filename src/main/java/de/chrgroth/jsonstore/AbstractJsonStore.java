@@ -1,8 +1,19 @@
 package de.chrgroth.jsonstore;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import de.chrgroth.jsonstore.metrics.JsonStoreMetrics;
 
@@ -17,6 +28,7 @@ import de.chrgroth.jsonstore.metrics.JsonStoreMetrics;
  *            concrete type structure used for storage of instances of type T
  */
 public abstract class AbstractJsonStore<T, P> {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractJsonStore.class);
 
     protected final JsonService jsonService;
     protected final StorageService storageService;
@@ -25,6 +37,31 @@ public abstract class AbstractJsonStore<T, P> {
     protected final boolean autoSave;
     protected final Map<Integer, VersionMigrationHandler> migrationHandlers;
 
+    private volatile AutoSaveScheduler autoSaveScheduler;
+
+    private final AtomicLong modifications;
+    private final AtomicLong persistedModifications;
+    private final AtomicInteger saveRequests;
+
+    private final List<ListenerRegistration<T>> listeners;
+
+    /**
+     * Listener along with the executor used for delivery.
+     */
+    private static final class ListenerRegistration<T> {
+        private final StoreListener<T> listener;
+        private final Executor executor;
+
+        private ListenerRegistration(StoreListener<T> listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private final Object batchMonitor;
+    private int batchDepth;
+    private boolean batchChanged;
+
     protected AbstractJsonStore(JsonService jsonService, StorageService storageService, String uid, int payloadTypeVersion, boolean autoSave,
             VersionMigrationHandler... migrationHandlers) {
 
@@ -49,6 +86,13 @@ public abstract class AbstractJsonStore<T, P> {
 
         // set auto-save mode
         this.autoSave = autoSave;
+        batchMonitor = new Object();
+
+        // nothing modified yet
+        modifications = new AtomicLong();
+        persistedModifications = new AtomicLong();
+        saveRequests = new AtomicInteger();
+        listeners = new CopyOnWriteArrayList<>();
 
         // set migration handlers
         this.migrationHandlers = new HashMap<>();
@@ -75,6 +119,114 @@ public abstract class AbstractJsonStore<T, P> {
      */
     public abstract long size();
 
+    /**
+     * Adds a listener notified synchronously about all changes of this store.
+     *
+     * @param listener
+     *            listener to be added
+     */
+    public void addListener(StoreListener<T> listener) {
+        addListener(listener, null);
+    }
+
+    /**
+     * Adds a listener notified about all changes of this store using the given executor. Events are delivered in order if the executor processes tasks in
+     * order, e.g. a single thread executor.
+     *
+     * @param listener
+     *            listener to be added
+     * @param executor
+     *            executor used for delivery, may be null to deliver synchronously
+     */
+    public void addListener(StoreListener<T> listener, Executor executor) {
+        if (listener == null) {
+            throw new JsonStoreException("listener must be provided!!");
+        }
+        listeners.add(new ListenerRegistration<>(listener, executor));
+    }
+
+    /**
+     * Removes the given listener.
+     *
+     * @param listener
+     *            listener to be removed
+     */
+    public void removeListener(StoreListener<T> listener) {
+        listeners.removeIf(registration -> registration.listener == listener);
+    }
+
+    /**
+     * Checks if any listener was added, e.g. to avoid creating events nobody listens to.
+     *
+     * @return true if listeners exist, false otherwise
+     */
+    protected final boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Notifies all listeners about added elements.
+     *
+     * @param items
+     *            immutable collection of added elements
+     */
+    protected final void fireAdd(Collection<T> items) {
+        fire(listener -> listener.onAdd(items));
+    }
+
+    /**
+     * Notifies all listeners about removed elements.
+     *
+     * @param items
+     *            immutable collection of removed elements
+     */
+    protected final void fireRemove(Collection<T> items) {
+        fire(listener -> listener.onRemove(items));
+    }
+
+    /**
+     * Notifies all listeners about removal of all elements.
+     */
+    protected final void fireClear() {
+        fire(StoreListener::onClear);
+    }
+
+    /**
+     * Notifies all listeners about a replaced element.
+     *
+     * @param oldItem
+     *            replaced element, may be null
+     * @param newItem
+     *            new element, may be null
+     */
+    protected final void fireReplace(T oldItem, T newItem) {
+        fire(listener -> listener.onReplace(oldItem, newItem));
+    }
+
+    private void fire(Consumer<StoreListener<T>> event) {
+        for (ListenerRegistration<T> registration : listeners) {
+            if (registration.executor == null) {
+                deliver(registration.listener, event);
+            } else {
+                try {
+                    registration.executor.execute(() -> deliver(registration.listener, event));
+                } catch (RuntimeException e) {
+                    LOG.error(metadata.getUid() + ": unable to deliver store event!!", e);
+                }
+            }
+        }
+    }
+
+    private void deliver(StoreListener<T> listener, Consumer<StoreListener<T>> event) {
+
+        // failing listeners must not affect the store or other listeners
+        try {
+            event.accept(listener);
+        } catch (RuntimeException e) {
+            LOG.error(metadata.getUid() + ": store listener failed!!", e);
+        }
+    }
+
     /**
      * Computes current metrics for this instance.
      *
@@ -84,19 +236,224 @@ public abstract class AbstractJsonStore<T, P> {
         return new JsonStoreMetrics(metadata.getUid(), size(), metadata.getModified(), storageService.size(metadata));
     }
 
+    /**
+     * Checks if the store was modified since it was saved or loaded last time.
+     *
+     * @return true if modified, false otherwise
+     */
+    public boolean isDirty() {
+        return modifications.get() != persistedModifications.get();
+    }
+
     /**
      * Saves all data contained in store to configured file. No action if store is not persistent.
      */
     public final void save() {
 
-        // create JSON
-        String json = toJson();
+        // covers all changes
+        AutoSaveScheduler scheduler = autoSaveScheduler;
+        if (scheduler != null) {
+            scheduler.cancel(this);
+        }
+        long modification = modifications.get();
 
         // update metadata
         metadata.setModified(new Date());
 
-        // write
-        storageService.write(metadata, json);
+        // stream JSON to storage, maybe in background
+        write(() -> markPersisted(modification));
+    }
+
+    /**
+     * Marks the store as modified.
+     *
+     * @return current modification counter
+     */
+    protected final long markModified() {
+        return modifications.incrementAndGet();
+    }
+
+    /**
+     * Marks all modifications up to the given one as persisted.
+     *
+     * @param modification
+     *            modification counter persisted
+     */
+    protected final void markPersisted(long modification) {
+        persistedModifications.accumulateAndGet(modification, Math::max);
+    }
+
+    /**
+     * Gets called by {@link #save()} to write all data to the storage service.
+     *
+     * @param written
+     *            callback to be invoked after all data was written
+     */
+    protected void write(Runnable written) {
+
+        // serialize detached payload in background
+        if (storageService.isWriteBehind()) {
+            JsonStoreMetadata<P> detached = detachedMetadata();
+            storageService.write(metadata, writer -> jsonService.toJson(detached, writer), written);
+            return;
+        }
+
+        // serialize current payload right away
+        JsonStoreMetadata<P> current = currentMetadata();
+        storageService.write(metadata, writer -> jsonService.toJson(current, writer));
+        written.run();
+    }
+
+    /**
+     * Returns the metadata holding the current payload to be serialized. Stores not keeping their payload in {@link #metadata} have to return a copy, see
+     * {@link #copyMetadata(Object)}.
+     *
+     * @return metadata to be serialized
+     */
+    protected JsonStoreMetadata<P> currentMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the metadata holding the current payload to be serialized in background, see {@link StorageService#isWriteBehind()}. Stores changing the payload
+     * of {@link #currentMetadata()} in place have to return a copy not affected by later changes.
+     *
+     * @return metadata to be serialized in background
+     */
+    protected JsonStoreMetadata<P> detachedMetadata() {
+        return currentMetadata();
+    }
+
+    /**
+     * Marks the store as modified after a change and saves it if using auto-save mode. Saving is deferred while a batch is running, see {@link #deferSave()},
+     * and done in background if an {@link AutoSaveScheduler} is used.
+     */
+    protected final void saveChanged() {
+        markModified();
+
+        // nothing to do without auto-save or while running a batch
+        if (!autoSave || deferSave()) {
+            return;
+        }
+
+        // save now or debounced
+        AutoSaveScheduler scheduler = autoSaveScheduler;
+        if (scheduler != null) {
+            scheduler.changed(this);
+        } else {
+            saveCoalesced();
+        }
+    }
+
+    private void saveCoalesced() {
+
+        // a concurrent save in progress saves again afterwards
+        if (saveRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        // each save covers all changes requested before it was started
+        int requests;
+        do {
+            requests = saveRequests.get();
+            try {
+                save();
+            } catch (RuntimeException e) {
+                saveRequests.set(0);
+                throw e;
+            }
+        } while (saveRequests.addAndGet(-requests) != 0);
+    }
+
+    /**
+     * Uses the given scheduler to save changes in background, see {@link #saveChanged()}. Stores are guarded using {@link #exclusive(Runnable)} while saving in
+     * background, so only stores supporting background saves are accepted, see {@link #isBackgroundSaveSupported()}.
+     *
+     * @param scheduler
+     *            auto-save scheduler, may be null to save right away
+     */
+    final void autoSaveScheduler(AutoSaveScheduler scheduler) {
+        if (scheduler != null && !isBackgroundSaveSupported()) {
+            throw new JsonStoreException(metadata.getUid() + ": saving in background requires a store safe for concurrent access!!");
+        }
+        autoSaveScheduler = scheduler;
+    }
+
+    /**
+     * Checks if the store may be saved in background while being changed, i.e. {@link #exclusive(Runnable)} guards saving against all changes.
+     *
+     * @return true if saving in background is supported, false otherwise
+     */
+    protected boolean isBackgroundSaveSupported() {
+        return false;
+    }
+
+    /**
+     * Runs the given operation deferring auto-save until the operation is done. If the store was changed it gets saved exactly once afterwards, even if the
+     * operation fails, because changes are not rolled back. Batches may be nested.
+     *
+     * @param operation
+     *            operation to be run
+     */
+    final void deferAutoSave(Runnable operation) {
+        beginBatch();
+        try {
+            operation.run();
+        } catch (RuntimeException | Error e) {
+
+            // failing save must not hide the failure of the operation
+            try {
+                endBatch();
+            } catch (RuntimeException failure) {
+                e.addSuppressed(failure);
+            }
+            throw e;
+        }
+        endBatch();
+    }
+
+    /**
+     * Starts deferring auto-save, see {@link #deferAutoSave(Runnable)}. Each call has to be followed by {@link #endBatch()}.
+     */
+    final void beginBatch() {
+        synchronized (batchMonitor) {
+            batchDepth++;
+        }
+    }
+
+    /**
+     * Ends deferring auto-save and saves the store if changed and no outer batch is running.
+     */
+    final void endBatch() {
+
+        // check for pending changes
+        boolean changed;
+        synchronized (batchMonitor) {
+            batchDepth--;
+            changed = batchDepth == 0 && batchChanged;
+            if (changed) {
+                batchChanged = false;
+            }
+        }
+
+        // single save for all changes
+        if (changed && autoSave) {
+            save();
+        }
+    }
+
+    /**
+     * Checks if auto-save is deferred by a running batch. If so the change is remembered and the store gets saved once the batch is done.
+     *
+     * @return true if auto-save is deferred, false if store has to be saved right away
+     */
+    protected final boolean deferSave() {
+        synchronized (batchMonitor) {
+            if (batchDepth > 0) {
+                batchChanged = true;
+            }
+            return batchDepth > 0;
+        }
     }
 
     /**
@@ -105,7 +462,7 @@ public abstract class AbstractJsonStore<T, P> {
      * @return JSON data
      */
     public final String toJson() {
-        return jsonService.toJson(metadata);
+        return jsonService.toJson(currentMetadata());
     }
 
     /**
@@ -113,12 +470,35 @@ public abstract class AbstractJsonStore<T, P> {
      * successful save.
      */
     public final void load() {
+        exclusive(() -> {
+
+            // stream persistent data to recreate store contents
+            boolean migrated = read();
 
-        // load
-        String json = storageService.read(metadata);
+            // apply incremental changes
+            if (replayJournal()) {
+                migrated = true;
+            }
+
+            // save migrated data
+            if (autoSave && migrated) {
+                save();
+            }
+        });
+    }
 
-        // recreate data
-        fromJsonInternal(json, false);
+    /**
+     * Gets called by {@link #load()} to read all data from the storage service and replace the store contents, if any data exists.
+     *
+     * @return true if data was migrated, false otherwise
+     */
+    protected boolean read() {
+        AtomicBoolean migrated = new AtomicBoolean();
+        storageService.read(metadata, reader -> jsonService.fromJson(metadata, migrationHandlers, reader, snapshotMigrated -> {
+            metadataRefreshed();
+            migrated.set(snapshotMigrated);
+        }));
+        return migrated.get();
     }
 
     /**
@@ -129,16 +509,48 @@ public abstract class AbstractJsonStore<T, P> {
      *            JSON data
      */
     public final void fromJson(String json) {
-        fromJsonInternal(json, true);
+        exclusive(() -> jsonService.fromJson(metadata, migrationHandlers, json, fromJsonCallback(true)));
     }
 
-    protected void fromJsonInternal(String json, boolean forceStore) {
-        jsonService.fromJson(metadata, migrationHandlers, json, migrated -> {
+    private Consumer<Boolean> fromJsonCallback(boolean forceStore) {
+        return migrated -> {
             metadataRefreshed();
+            markModified();
             if (autoSave && (forceStore || migrated)) {
                 save();
             }
-        });
+        };
+    }
+
+    /**
+     * Creates a detached copy of current metadata holding the given payload, e.g. to be serialized while the store is changed concurrently.
+     *
+     * @param payload
+     *            payload of the copy
+     * @return metadata copy
+     * @param <Q>
+     *            concrete type of payload
+     */
+    protected <Q> JsonStoreMetadata<Q> copyMetadata(Q payload) {
+        JsonStoreMetadata<Q> copy = new JsonStoreMetadata<>();
+        copy.setUid(metadata.getUid());
+        copy.setPayloadTypeVersion(metadata.getPayloadTypeVersion());
+        copy.setSingleton(metadata.isSingleton());
+        copy.setCreated(metadata.getCreated());
+        copy.setModified(metadata.getModified());
+        copy.setPayload(payload);
+        return copy;
+    }
+
+    /**
+     * Runs the given operation replacing all store contents, e.g. {@link #load()}, without interference of other operations. Stores supporting concurrent access
+     * have to guard the operation, the default implementation just runs it and is not safe for saving in background, see {@link #isBackgroundSaveSupported()}.
+     *
+     * @param operation
+     *            operation to be run
+     */
+    protected void exclusive(Runnable operation) {
+        operation.run();
     }
 
     /**
@@ -146,10 +558,23 @@ public abstract class AbstractJsonStore<T, P> {
      */
     protected abstract void metadataRefreshed();
 
+    /**
+     * Gets called during {@link #load()} after persistent data was loaded to apply all journaled changes, see {@link JournalStorageService}.
+     *
+     * @return true if any journal record was migrated, false otherwise
+     */
+    protected boolean replayJournal() {
+        return false;
+    }
+
     /**
      * Drops store file explicitly. Transient data in store remains unchanged.
      */
     public final void drop() {
+        AutoSaveScheduler scheduler = autoSaveScheduler;
+        if (scheduler != null) {
+            scheduler.cancel(this);
+        }
         storageService.delete(metadata);
     }
 }
@@ -0,0 +1,71 @@
+package de.chrgroth.jsonstore;
+
+/**
+ * Auto-save policy of stores created by {@link JsonStores}. By default stores are saved right away after each change. Debounced auto-save coalesces changes
+ * and saves stores in background, see {@link AutoSaveScheduler}, bounding write amplification under bursty load at the cost of an explicit durability window.
+ *
+ * @author Christian Groth
+ */
+public final class AutoSavePolicy {
+
+    private static final AutoSavePolicy IMMEDIATE = new AutoSavePolicy(0, 0, 0);
+
+    private final long maxDelayMillis;
+    private final int maxChanges;
+    private final long idleMillis;
+
+    private AutoSavePolicy(long maxDelayMillis, int maxChanges, long idleMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxChanges = maxChanges;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Saves stores right away after each change.
+     *
+     * @return auto-save policy
+     */
+    public static AutoSavePolicy immediate() {
+        return IMMEDIATE;
+    }
+
+    /**
+     * Saves changed stores in background as soon as any of the given triggers fires. Any trigger less or equal to zero is disabled, but at least one trigger
+     * must be enabled. Pending changes are saved on {@link JsonStores#shutdown()} anyway.
+     *
+     * @param maxDelayMillis
+     *            maximum time in milliseconds a change remains unsaved
+     * @param maxChanges
+     *            number of unsaved changes triggering a save
+     * @param idleMillis
+     *            time in milliseconds without further changes triggering a save
+     * @return auto-save policy
+     */
+    public static AutoSavePolicy debounced(long maxDelayMillis, int maxChanges, long idleMillis) {
+        if (maxDelayMillis <= 0 && maxChanges <= 0 && idleMillis <= 0) {
+            throw new JsonStoreException("debounced auto-save requires at least one trigger!!");
+        }
+        return new AutoSavePolicy(maxDelayMillis, maxChanges, idleMillis);
+    }
+
+    /**
+     * Checks if stores are saved right away after each change.
+     *
+     * @return true if saved immediately, false if debounced
+     */
+    public boolean isImmediate() {
+        return this == IMMEDIATE;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public int getMaxChanges() {
+        return maxChanges;
+    }
+
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+}
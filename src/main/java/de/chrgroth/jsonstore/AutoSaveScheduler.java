@@ -0,0 +1,183 @@
+package de.chrgroth.jsonstore;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Saves changed stores in background according to a debounced {@link AutoSavePolicy}. Changes are coalesced per store, so each store is saved at most once per
+ * trigger regardless of the number of changes. Background saves are guarded by the store, see {@link AbstractJsonStore#exclusive(Runnable)}, so
+ * stores have to support saving in background, see {@link AbstractJsonStore#isBackgroundSaveSupported()}.
+ *
+ * @author Christian Groth
+ */
+public class AutoSaveScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(AutoSaveScheduler.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MINUTES = 1;
+
+    private final AutoSavePolicy policy;
+    private final Map<AbstractJsonStore<?, ?>, PendingSave> pending;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Unsaved changes of a single store.
+     */
+    private static final class PendingSave {
+        private final long firstChange;
+        private int changes;
+        private ScheduledFuture<?> future;
+
+        private PendingSave(long firstChange) {
+            this.firstChange = firstChange;
+        }
+    }
+
+    /**
+     * Creates a new scheduler using the given policy.
+     *
+     * @param policy
+     *            debounced auto-save policy
+     */
+    public AutoSaveScheduler(AutoSavePolicy policy) {
+        if (policy == null || policy.isImmediate()) {
+            throw new JsonStoreException("debounced auto-save policy must be provided!!");
+        }
+        this.policy = policy;
+        pending = new IdentityHashMap<>();
+
+        // drop cancelled saves right away, so shutdown doesn't wait for their delay
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("json-store-auto-save-%d").build());
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        executor = scheduledExecutor;
+    }
+
+    /**
+     * Records a change of the given store and (re)schedules saving it.
+     *
+     * @param store
+     *            changed store
+     */
+    void changed(AbstractJsonStore<?, ?> store) {
+
+        // save right away after shutdown
+        if (!schedule(store)) {
+            store.save();
+        }
+    }
+
+    private boolean schedule(AbstractJsonStore<?, ?> store) {
+        synchronized (this) {
+            if (!executor.isShutdown()) {
+
+                // count changes
+                long now = System.currentTimeMillis();
+                PendingSave pendingSave = pending.computeIfAbsent(store, s -> new PendingSave(now));
+                pendingSave.changes++;
+
+                // reschedule using the earliest trigger
+                long due = Long.MAX_VALUE;
+                if (policy.getMaxChanges() > 0 && pendingSave.changes >= policy.getMaxChanges()) {
+                    due = now;
+                }
+                if (policy.getIdleMillis() > 0) {
+                    due = Math.min(due, now + policy.getIdleMillis());
+                }
+                if (policy.getMaxDelayMillis() > 0) {
+                    due = Math.min(due, pendingSave.firstChange + policy.getMaxDelayMillis());
+                }
+                if (pendingSave.future != null) {
+                    pendingSave.future.cancel(false);
+                    pendingSave.future = null;
+                }
+                if (due != Long.MAX_VALUE) {
+                    pendingSave.future = executor.schedule(() -> save(store, pendingSave), Math.max(0, due - now), TimeUnit.MILLISECONDS);
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void save(AbstractJsonStore<?, ?> store, PendingSave pendingSave) {
+
+        // abort if already saved
+        synchronized (this) {
+            if (pending.get(store) != pendingSave) {
+                return;
+            }
+            pending.remove(store);
+        }
+
+        // save all changes up to now
+        try {
+            store.exclusive(store::save);
+        } catch (RuntimeException e) {
+
+            // store is still dirty, so retry according to policy
+            LOG.error(store.getUid() + ": auto-save failed, retrying later!!", e);
+            schedule(store);
+        }
+    }
+
+    /**
+     * Drops unsaved changes of the given store, e.g. because it was saved or dropped.
+     *
+     * @param store
+     *            store
+     */
+    synchronized void cancel(AbstractJsonStore<?, ?> store) {
+        PendingSave pendingSave = pending.remove(store);
+        if (pendingSave != null && pendingSave.future != null) {
+            pendingSave.future.cancel(false);
+        }
+    }
+
+    /**
+     * Saves all stores with unsaved changes in the calling thread.
+     */
+    public void flush() {
+
+        // take all pending saves
+        List<AbstractJsonStore<?, ?>> stores;
+        synchronized (this) {
+            stores = new ArrayList<>(pending.keySet());
+            pending.values().stream().filter(p -> p.future != null).forEach(p -> p.future.cancel(false));
+            pending.clear();
+        }
+
+        // save
+        for (AbstractJsonStore<?, ?> store : stores) {
+            store.exclusive(store::save);
+        }
+    }
+
+    /**
+     * Saves all stores with unsaved changes and stops background processing. Further changes are saved right away.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            executor.shutdown();
+        }
+        flush();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                LOG.warn("pending auto-saves did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("interrupted while waiting for pending auto-saves");
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.chrgroth.jsonstore;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Immutable snapshot of all elements of a {@link JsonStore} maintained on each change, so reads neither copy data nor take locks. Changes are applied in place
+ * as long as nobody has read the current snapshot, otherwise the snapshot is copied once and the changed copy gets published. Reading is thread-safe, changes
+ * have to be applied by one thread at a time.
+ *
+ * @author Christian Groth
+ * @param <T>
+ *            concrete type of elements
+ */
+final class CopyOnWriteSnapshot<T> {
+
+    private static final int UNREAD = 0;
+    private static final int READ = 1;
+    private static final int CHANGING = 2;
+
+    private volatile Published<T> published;
+
+    /**
+     * Elements along with the state deciding whether changes may be applied in place.
+     */
+    private static final class Published<T> {
+        private final Set<T> items;
+        private final Set<T> view;
+        private final AtomicInteger state;
+
+        private Published(Set<T> items) {
+            this.items = items;
+            view = Collections.unmodifiableSet(items);
+            state = new AtomicInteger(UNREAD);
+        }
+    }
+
+    CopyOnWriteSnapshot() {
+        published = new Published<>(new HashSet<>());
+    }
+
+    /**
+     * Returns the current snapshot. A read racing an in place change of a snapshot nobody has read yet waits for that change only.
+     *
+     * @return immutable snapshot
+     */
+    Set<T> get() {
+        while (true) {
+            Published<T> current = published;
+            int state = current.state.get();
+            if (state == READ || state == UNREAD && current.state.compareAndSet(UNREAD, READ)) {
+                return current.view;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Applies the given change to the elements.
+     *
+     * @param change
+     *            change to be applied
+     */
+    void change(Consumer<Set<T>> change) {
+
+        // nobody can see the current elements yet
+        Published<T> current = published;
+        if (current.state.compareAndSet(UNREAD, CHANGING)) {
+            try {
+                change.accept(current.items);
+            } finally {
+                current.state.set(UNREAD);
+            }
+            return;
+        }
+
+        // readers keep the current snapshot
+        Set<T> items = new HashSet<>(current.items);
+        change.accept(items);
+        published = new Published<>(items);
+    }
+
+    /**
+     * Replaces all elements.
+     *
+     * @param items
+     *            new elements
+     */
+    void replace(Collection<? extends T> items) {
+        published = new Published<>(new HashSet<>(items));
+    }
+}
@@ -0,0 +1,117 @@
+package de.chrgroth.jsonstore;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Compacts journals of stores using a {@link JournalStorageService} by writing a fresh snapshot in background as soon as the journal size or the time needed
+ * to replay the journal exceeds the configured thresholds. Compactions are coalesced per store, so at most one compaction per store is pending at any time.
+ *
+ * @author Christian Groth
+ */
+public class JournalCompactor {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalCompactor.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MINUTES = 1;
+
+    private final long maxJournalSize;
+    private final long maxReplayMillis;
+
+    private final Set<String> pending;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new compactor. Any threshold less or equal to zero is disabled.
+     *
+     * @param maxJournalSize
+     *            journal size in bytes triggering a compaction
+     * @param maxReplayMillis
+     *            journal replay time in milliseconds triggering a compaction
+     */
+    public JournalCompactor(long maxJournalSize, long maxReplayMillis) {
+        this.maxJournalSize = maxJournalSize;
+        this.maxReplayMillis = maxReplayMillis;
+        pending = ConcurrentHashMap.newKeySet();
+        executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("json-store-compactor-%d").build());
+    }
+
+    /**
+     * Checks if the given journal size requires a compaction.
+     *
+     * @param journalSize
+     *            current journal size in bytes
+     * @return true if compaction is needed, false otherwise
+     */
+    public boolean isJournalSizeExceeded(long journalSize) {
+        return maxJournalSize > 0 && journalSize >= maxJournalSize;
+    }
+
+    /**
+     * Checks if the given replay time requires a compaction.
+     *
+     * @param replayMillis
+     *            time needed to replay the journal in milliseconds
+     * @return true if compaction is needed, false otherwise
+     */
+    public boolean isReplayTimeExceeded(long replayMillis) {
+        return maxReplayMillis > 0 && replayMillis >= maxReplayMillis;
+    }
+
+    /**
+     * Schedules a compaction for the store with given uid, if there is no compaction pending yet. The snapshot supplier is invoked in the calling thread and
+     * must return the compaction to be executed in background.
+     *
+     * @param uid
+     *            store uid
+     * @param snapshot
+     *            creates the snapshot and returns the compaction task
+     */
+    public void schedule(String uid, Supplier<Runnable> snapshot) {
+
+        // coalesce compactions
+        if (!pending.add(uid)) {
+            return;
+        }
+
+        // take snapshot and process in background
+        try {
+            Runnable compaction = snapshot.get();
+            executor.execute(() -> {
+                try {
+                    compaction.run();
+                } catch (RuntimeException e) {
+                    LOG.error(uid + ": journal compaction failed!!", e);
+                } finally {
+                    pending.remove(uid);
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.remove(uid);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops background processing after all pending compactions are done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                LOG.warn("pending journal compactions did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("interrupted while waiting for pending journal compactions");
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package de.chrgroth.jsonstore;
+
+/**
+ * Represents a single incremental change of a {@link JsonStore} written to the journal of a {@link JournalStorageService}.
+ *
+ * @author Christian Groth
+ */
+public class JournalRecord {
+
+    /**
+     * All operations that can be recorded.
+     *
+     * @author Christian Groth
+     */
+    public enum Operation {
+        ADD, REMOVE, CLEAR
+    }
+
+    private final Operation operation;
+    private final int payloadTypeVersion;
+    private final String json;
+
+    /**
+     * Creates a new journal record.
+     *
+     * @param operation
+     *            recorded operation
+     * @param payloadTypeVersion
+     *            version of payload type class the item was serialized with
+     * @param json
+     *            serialized payload item, may be null for {@link Operation#CLEAR}
+     */
+    public JournalRecord(Operation operation, int payloadTypeVersion, String json) {
+        this.operation = operation;
+        this.payloadTypeVersion = payloadTypeVersion;
+        this.json = json;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public int getPayloadTypeVersion() {
+        return payloadTypeVersion;
+    }
+
+    public String getJson() {
+        return json;
+    }
+}
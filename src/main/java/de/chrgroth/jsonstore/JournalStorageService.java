@@ -0,0 +1,74 @@
+package de.chrgroth.jsonstore;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage service being able to persist incremental changes of a {@link JsonStore} in an append only journal in addition to full snapshots. Loading a store
+ * replays the journal on top of the last snapshot. Writing a snapshot using {@link #write(JsonStoreMetadata, Consumer)} has to discard all journal records
+ * contained in the snapshot. Snapshots may also be written in background using {@link #rotateJournal(JsonStoreMetadata)} and
+ * {@link #compact(JsonStoreMetadata, Consumer)} without blocking further appends.
+ *
+ * @author Christian Groth
+ */
+public interface JournalStorageService extends StorageService {
+
+    /**
+     * Checks if journaling is enabled for the given store metadata.
+     *
+     * @param metadata
+     *            store metadata
+     * @return true if changes should be appended to the journal, false if full snapshots have to be written
+     */
+    boolean isJournaling(JsonStoreMetadata<?> metadata);
+
+    /**
+     * Appends the given records to the journal of given store metadata. Failures have to be reported by throwing a {@link JsonStoreException}.
+     *
+     * @param metadata
+     *            store metadata
+     * @param records
+     *            records to be appended in order
+     */
+    void append(JsonStoreMetadata<?> metadata, List<JournalRecord> records);
+
+    /**
+     * Reads all records contained in the journal of given store metadata in the order they were appended.
+     *
+     * @param metadata
+     *            store metadata
+     * @param records
+     *            consumer for all journal records
+     */
+    void readJournal(JsonStoreMetadata<?> metadata, Consumer<JournalRecord> records);
+
+    /**
+     * Returns the size of the journal in bytes not yet marked for compaction using {@link #rotateJournal(JsonStoreMetadata)}.
+     *
+     * @param metadata
+     *            store metadata
+     * @return journal size in bytes
+     */
+    long journalSize(JsonStoreMetadata<?> metadata);
+
+    /**
+     * Marks all records currently contained in the journal of given store metadata to be discarded by the next call to
+     * {@link #compact(JsonStoreMetadata, Consumer)}. Has to be called right before the snapshot to be compacted is taken.
+     *
+     * @param metadata
+     *            store metadata
+     */
+    void rotateJournal(JsonStoreMetadata<?> metadata);
+
+    /**
+     * Writes a snapshot taken right after {@link #rotateJournal(JsonStoreMetadata)} and discards all marked journal records. Records appended after rotation
+     * are kept. The compaction has to be skipped if a snapshot was written or the store was deleted since rotation.
+     *
+     * @param metadata
+     *            store metadata
+     * @param json
+     *            consumer writing the JSON data of the snapshot
+     */
+    void compact(JsonStoreMetadata<?> metadata, Consumer<Writer> json);
+}
@@ -0,0 +1,377 @@
+package de.chrgroth.jsonstore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Represents a JSON store for a concrete class holding zero to many instances identified by a key, e.g. the id of an entity. Elements are accessed by key in
+ * constant time and an element replaces any element with the same key. Keys must not change while an element is contained in the store. Changes are
+ * published to all listeners added using {@link #addListener(StoreListener)}, replaced elements as {@link StoreListener#onReplace(Object, Object)}.
+ * <p>
+ * Data is persisted in the same format as used by {@link JsonStore}, including segments and journal records. Saving always writes a single snapshot replacing
+ * segments and journal.
+ * <p>
+ * The store is not thread-safe, but changes are guarded against saving in background, see {@link AutoSaveScheduler}.
+ *
+ * @author Christian Groth
+ * @param <K>
+ *            concrete type of keys
+ * @param <T>
+ *            concrete type stored in this instance
+ */
+public class JsonMapStore<K, T> extends AbstractJsonStore<T, Collection<T>> {
+
+    private final Function<? super T, ? extends K> keyFunction;
+    private final Map<K, T> entries;
+
+    /**
+     * Creates a new JSON map store.
+     *
+     * @param jsonService
+     *            JSON service implementation
+     * @param storageService
+     *            storage service implementation
+     * @param uid
+     *            store uid
+     * @param payloadTypeVersion
+     *            version of payload type class
+     * @param autoSave
+     *            auto-save mode
+     * @param keyFunction
+     *            function computing the key of an element
+     * @param migrationHandlers
+     *            all migration handlers to be applied
+     */
+    public JsonMapStore(JsonService jsonService, StorageService storageService, String uid, int payloadTypeVersion, boolean autoSave,
+            Function<? super T, ? extends K> keyFunction, VersionMigrationHandler... migrationHandlers) {
+        super(jsonService, storageService, uid, payloadTypeVersion, autoSave, migrationHandlers);
+
+        // set key function
+        if (keyFunction == null) {
+            throw new JsonStoreException("keyFunction must be provided!!");
+        }
+        this.keyFunction = keyFunction;
+
+        // values are persisted as list
+        entries = new HashMap<>();
+        metadata.setPayload(entries.values());
+    }
+
+    @Override
+    protected void metadataRefreshed() {
+
+        // index loaded payload by key, gets loaded as list by flexjson
+        Collection<T> payload = metadata.getPayload();
+        entries.clear();
+        if (payload != null) {
+            payload.forEach(item -> entries.put(keyFunction.apply(item), item));
+        }
+        metadata.setPayload(entries.values());
+
+        // all contents were replaced
+        if (hasListeners()) {
+            fireClear();
+            if (!entries.isEmpty()) {
+                fireAdd(Collections.unmodifiableList(new ArrayList<>(entries.values())));
+            }
+        }
+    }
+
+    @Override
+    protected boolean read() {
+
+        // read single file
+        if (!(storageService instanceof SegmentedStorageService)) {
+            return super.read();
+        }
+
+        // read all segments, data may have been written by a segmented store
+        List<T> loaded = new ArrayList<>();
+        AtomicBoolean found = new AtomicBoolean();
+        AtomicBoolean migrated = new AtomicBoolean();
+        ((SegmentedStorageService) storageService).readSegments(metadata, (segment, reader) -> {
+            JsonStoreMetadata<Collection<T>> segmentMetadata = copyMetadata(null);
+            AtomicBoolean segmentMigrated = new AtomicBoolean();
+            jsonService.fromJson(segmentMetadata, migrationHandlers, reader, segmentMigrated::set);
+            synchronized (loaded) {
+                found.set(true);
+                if (segmentMetadata.getPayload() != null) {
+                    loaded.addAll(segmentMetadata.getPayload());
+                }
+                if (segmentMigrated.get()) {
+                    migrated.set(true);
+                }
+            }
+        });
+
+        // replace store contents
+        if (found.get()) {
+            metadata.setPayload(loaded);
+            metadataRefreshed();
+        }
+        return migrated.get();
+    }
+
+    @Override
+    protected boolean replayJournal() {
+
+        // nothing to do if journal is not supported
+        if (!(storageService instanceof JournalStorageService)) {
+            return false;
+        }
+
+        // apply all records appended by a journaling store
+        AtomicBoolean migrated = new AtomicBoolean();
+        ((JournalStorageService) storageService).readJournal(metadata, record -> {
+            if (record.getPayloadTypeVersion() < metadata.getPayloadTypeVersion()) {
+                migrated.set(true);
+            }
+            replay(record);
+        });
+        return migrated.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replay(JournalRecord record) {
+        T item;
+        switch (record.getOperation()) {
+            case ADD:
+                item = (T) jsonService.payloadItemFromJson(metadata, migrationHandlers, record.getPayloadTypeVersion(), record.getJson());
+                firePut(entries.put(keyFunction.apply(item), item), item);
+                break;
+            case REMOVE:
+                item = (T) jsonService.payloadItemFromJson(metadata, migrationHandlers, record.getPayloadTypeVersion(), record.getJson());
+                K key = keyFunction.apply(item);
+                if (entries.containsKey(key)) {
+                    T old = entries.remove(key);
+                    if (hasListeners()) {
+                        fireRemove(Collections.singletonList(old));
+                    }
+                }
+                break;
+            case CLEAR:
+                entries.clear();
+                fireClear();
+                break;
+            default:
+                throw new JsonStoreException("unknown journal operation " + record.getOperation() + " for " + metadata.getUid() + "!!");
+        }
+    }
+
+    @Override
+    protected boolean isBackgroundSaveSupported() {
+
+        // all changes are synchronized
+        return true;
+    }
+
+    @Override
+    protected void exclusive(Runnable operation) {
+        synchronized (metadata) {
+            operation.run();
+        }
+    }
+
+    @Override
+    protected JsonStoreMetadata<Collection<T>> detachedMetadata() {
+
+        // values are changed in place
+        synchronized (metadata) {
+            return copyMetadata(new ArrayList<>(entries.values()));
+        }
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks if store is empty
+     *
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Checks if store contains an element with given key.
+     *
+     * @param key
+     *            key to be checked
+     * @return true if contained, false otherwise
+     */
+    public boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Returns the element with given key.
+     *
+     * @param key
+     *            key of element
+     * @return element, may be null
+     */
+    public T get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Stores the given element replacing any element with the same key. Will invoke {@link #save()} if using auto-save mode.
+     *
+     * @param item
+     *            element to store
+     * @return replaced element or null
+     */
+    public T put(T item) {
+        synchronized (metadata) {
+            T old = entries.put(keyFunction.apply(item), item);
+            firePut(old, item);
+            saveChanged();
+            return old;
+        }
+    }
+
+    /**
+     * Stores all given elements replacing any elements with the same keys. Will invoke {@link #save()} once if using auto-save mode and any element was given.
+     *
+     * @param items
+     *            elements to store
+     */
+    public void putAll(Collection<? extends T> items) {
+        synchronized (metadata) {
+            items.forEach(item -> firePut(entries.put(keyFunction.apply(item), item), item));
+            if (!items.isEmpty()) {
+                saveChanged();
+            }
+        }
+    }
+
+    /**
+     * Returns the element with given key or creates and stores a new one using the given function. Will invoke {@link #save()} if using auto-save mode and a
+     * new element was stored.
+     *
+     * @param key
+     *            key of element
+     * @param mappingFunction
+     *            function creating the element, the key of the created element must match the given key
+     * @return existing or created element, may be null if function returns null
+     */
+    public T computeIfAbsent(K key, Function<? super K, ? extends T> mappingFunction) {
+
+        synchronized (metadata) {
+
+            // existing element
+            T item = entries.get(key);
+            if (item != null) {
+                return item;
+            }
+
+            // create new element
+            item = mappingFunction.apply(key);
+            if (item == null) {
+                return null;
+            }
+            if (!Objects.equals(key, keyFunction.apply(item))) {
+                throw new JsonStoreException("key of created element does not match " + key + " for " + metadata.getUid() + "!!");
+            }
+            entries.put(key, item);
+            firePut(null, item);
+            saveChanged();
+            return item;
+        }
+    }
+
+    /**
+     * Removes the element with given key. Will invoke {@link #save()} if using auto-save mode and store was changed.
+     *
+     * @param key
+     *            key of element
+     * @return removed element or null
+     */
+    public T remove(K key) {
+        synchronized (metadata) {
+            boolean contained = entries.containsKey(key);
+            T old = entries.remove(key);
+            if (contained) {
+                if (hasListeners()) {
+                    fireRemove(Collections.singletonList(old));
+                }
+                saveChanged();
+            }
+            return old;
+        }
+    }
+
+    /**
+     * Clears all elements in store. Will invoke {@link #save()} if using auto-save mode and store was changed.
+     */
+    public void clear() {
+        synchronized (metadata) {
+            if (!entries.isEmpty()) {
+                entries.clear();
+                fireClear();
+                saveChanged();
+            }
+        }
+    }
+
+    private void firePut(T old, T item) {
+        if (!hasListeners()) {
+            return;
+        }
+        if (old != null) {
+            fireReplace(old, item);
+        } else {
+            fireAdd(Collections.singletonList(item));
+        }
+    }
+
+    /**
+     * Runs the given operation on this store deferring auto-save until the operation is done. If the store was changed it gets saved exactly once afterwards,
+     * even if the operation fails, because changes are not rolled back.
+     *
+     * @param operation
+     *            operation to be run
+     */
+    public void batch(Consumer<JsonMapStore<K, T>> operation) {
+        deferAutoSave(() -> operation.accept(this));
+    }
+
+    /**
+     * Returns copy of data
+     *
+     * @return copy of data by key
+     */
+    public Map<K, T> copy() {
+        return new HashMap<>(entries);
+    }
+
+    /**
+     * Returns an immutable view of all keys.
+     *
+     * @return keys
+     */
+    public Collection<K> keys() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Creates a stream over a copy of all elements in this store.
+     *
+     * @return stream over elements in store
+     */
+    public Stream<T> stream() {
+        return copy().values().stream();
+    }
+}
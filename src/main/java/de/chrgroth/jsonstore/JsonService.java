@@ -1,5 +1,7 @@
 package de.chrgroth.jsonstore;
 
+import java.io.Reader;
+import java.io.Writer;
 import java.util.Map;
 import java.util.function.Consumer;
 
@@ -19,6 +21,17 @@ public interface JsonService {
      */
     String toJson(JsonStoreMetadata<?> metadata);
 
+    /**
+     * Converts the given store metadata to JSON data and streams it to given writer without creating the whole JSON data in memory. The writer will not be
+     * closed.
+     *
+     * @param metadata
+     *            store metadata
+     * @param writer
+     *            writer the serialized JSON data is written to
+     */
+    void toJson(JsonStoreMetadata<?> metadata, Writer writer);
+
     /**
      * Converts the given JSON and updates the payload in given store metadata.
      *
@@ -32,4 +45,45 @@ public interface JsonService {
      *            success callback
      */
     void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, String json, Consumer<Boolean> successConsumer);
+
+    /**
+     * Converts the JSON data read from given reader and updates the payload in given store metadata. The JSON data is consumed directly from the reader
+     * without creating the whole JSON data in memory. The reader will not be closed.
+     *
+     * @param metadata
+     *            store metadata
+     * @param migrationHandlers
+     *            version migrations handlers to convert given JSON data to correct version defined in store metadata
+     * @param json
+     *            reader providing the JSON data to be deserialized
+     * @param successConsumer
+     *            success callback
+     */
+    void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, Reader json, Consumer<Boolean> successConsumer);
+
+    /**
+     * Converts a single payload item of given store to JSON data. The JSON data must not contain any line breaks.
+     *
+     * @param metadata
+     *            store metadata
+     * @param payloadItem
+     *            payload item to be converted
+     * @return serialized JSON data
+     */
+    String payloadItemToJson(JsonStoreMetadata<?> metadata, Object payloadItem);
+
+    /**
+     * Converts the given JSON data created by {@link #payloadItemToJson(JsonStoreMetadata, Object)} back to a payload item of given store.
+     *
+     * @param metadata
+     *            store metadata
+     * @param migrationHandlers
+     *            version migrations handlers to convert given JSON data to correct version defined in store metadata
+     * @param payloadTypeVersion
+     *            version of payload type class the JSON data was created with
+     * @param json
+     *            JSON data to be deserialized
+     * @return deserialized payload item
+     */
+    Object payloadItemFromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, int payloadTypeVersion, String json);
 }
@@ -1,7 +1,14 @@
 package de.chrgroth.jsonstore;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
 /**
- * Represents a JSON store for a concrete class holding none or one instance. You may use flexjson annotations to control conversion from/to JSON.
+ * Represents a JSON store for a concrete class holding none or one instance. You may use flexjson annotations to control conversion from/to JSON. Changes
+ * are published to all listeners added using {@link #addListener(StoreListener)} as {@link StoreListener#onReplace(Object, Object)}.
+ * <p>
+ * The payload is held in an atomic reference, so updates using {@link #update(UnaryOperator)} or {@link #compareAndSet(Object, Object)} never block and
+ * never get lost. Racing auto-saves are coalesced into a single save.
  *
  * @author Christian Groth
  * @param <T>
@@ -9,6 +16,8 @@ package de.chrgroth.jsonstore;
  */
 public class JsonSingletonStore<T> extends AbstractJsonStore<T, T> {
 
+    private final AtomicReference<T> payload;
+
     /**
      * Creates a new JSON store.
      *
@@ -28,6 +37,7 @@ public class JsonSingletonStore<T> extends AbstractJsonStore<T, T> {
     public JsonSingletonStore(JsonService jsonService, StorageService storageService, String uid, int payloadTypeVersion, boolean autoSave,
             VersionMigrationHandler... migrationHandlers) {
         super(jsonService, storageService, uid, payloadTypeVersion, autoSave, migrationHandlers);
+        payload = new AtomicReference<>();
     }
 
     @Override
@@ -37,7 +47,29 @@ public class JsonSingletonStore<T> extends AbstractJsonStore<T, T> {
 
     @Override
     protected void metadataRefreshed() {
-        // nothing to do
+        T loaded = metadata.getPayload();
+        changed(payload.getAndSet(loaded), loaded, false);
+    }
+
+    @Override
+    protected JsonStoreMetadata<T> currentMetadata() {
+
+        // serialize current payload, metadata is only used while loading
+        return copyMetadata(payload.get());
+    }
+
+    @Override
+    protected boolean isBackgroundSaveSupported() {
+
+        // saves serialize a detached copy of the atomic payload
+        return true;
+    }
+
+    @Override
+    protected void exclusive(Runnable operation) {
+        synchronized (metadata) {
+            operation.run();
+        }
     }
 
     /**
@@ -46,7 +78,7 @@ public class JsonSingletonStore<T> extends AbstractJsonStore<T, T> {
      * @return data, may be null
      */
     public T get() {
-        return metadata.getPayload();
+        return payload.get();
     }
 
     /**
@@ -59,25 +91,64 @@ public class JsonSingletonStore<T> extends AbstractJsonStore<T, T> {
     }
 
     /**
-     * Stores the given object. Will invoke {@link #save()} if using auto-save mode and store was changed.
+     * Stores the given object. Will invoke {@link #save()} if using auto-save mode.
      *
      * @param payload
      *            object to store
      * @return previous stored object or null
      */
     public T set(T payload) {
+        return getAndSet(payload);
+    }
 
-        // switch data
-        T old = payload;
-        metadata.setPayload(payload);
+    /**
+     * Stores the given object and returns the previous one atomically. Will invoke {@link #save()} if using auto-save mode.
+     *
+     * @param newPayload
+     *            object to store
+     * @return previous stored object or null
+     */
+    public T getAndSet(T newPayload) {
+        T old = payload.getAndSet(newPayload);
+        changed(old, newPayload, true);
+        return old;
+    }
 
-        // save
-        if (autoSave) {
-            save();
+    /**
+     * Stores the given object if the current object is the expected one, compared by identity. Will invoke {@link #save()} if using auto-save mode and store
+     * was changed.
+     *
+     * @param expectedPayload
+     *            expected current object, may be null
+     * @param newPayload
+     *            object to store
+     * @return true if store was changed, false otherwise
+     */
+    public boolean compareAndSet(T expectedPayload, T newPayload) {
+        boolean set = payload.compareAndSet(expectedPayload, newPayload);
+        if (set) {
+            changed(expectedPayload, newPayload, true);
         }
+        return set;
+    }
 
-        // done
-        return old;
+    /**
+     * Replaces the stored object atomically by the result of the given function, retrying on concurrent updates. The function may be invoked multiple times
+     * and should be free of side effects. Will invoke {@link #save()} if using auto-save mode.
+     *
+     * @param updateFunction
+     *            function computing the new object from the current one, which may be null
+     * @return new stored object
+     */
+    public T update(UnaryOperator<T> updateFunction) {
+        while (true) {
+            T old = payload.get();
+            T updated = updateFunction.apply(old);
+            if (payload.compareAndSet(old, updated)) {
+                changed(old, updated, true);
+                return updated;
+            }
+        }
     }
 
     /**
@@ -86,4 +157,17 @@ public class JsonSingletonStore<T> extends AbstractJsonStore<T, T> {
     public void clear() {
         set(null);
     }
+
+    private void changed(T old, T updated, boolean save) {
+
+        // notify listeners
+        if (hasListeners()) {
+            fireReplace(old, updated);
+        }
+
+        // save
+        if (save) {
+            saveChanged();
+        }
+    }
 }
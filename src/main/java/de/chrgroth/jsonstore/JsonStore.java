@@ -1,21 +1,81 @@
 package de.chrgroth.jsonstore;
 
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hashing;
+
+import de.chrgroth.jsonstore.JournalRecord.Operation;
+import de.chrgroth.jsonstore.index.HashIndex;
+import de.chrgroth.jsonstore.index.Index;
+import de.chrgroth.jsonstore.index.SortedIndex;
+
 /**
  * Represents a JSON store for a concrete class holding zero to many instances. Access is provided using delegate methods to Java built in stream API. You may
- * use flexjson annotations to control conversion from/to JSON.
+ * use flexjson annotations to control conversion from/to JSON. Changes are published to all listeners added using {@link #addListener(StoreListener)}.
+ * <p>
+ * Reads like {@link #stream()} use an immutable snapshot of all elements maintained on each change, so reads never copy data.
+ * <p>
+ * By default a store is not thread-safe. In concurrent mode {@link #contains(Object)}, {@link #size()} and snapshot based reads don't take locks, while
+ * changes, loading and saving are serialized using a write lock. Concurrent stores do not support null elements.
+ * <p>
+ * Indexes created using {@link #createIndex(String, Function)} are maintained on each change and allow to {@link #lookup(String, Object)} elements without
+ * scanning the store. Sorted indexes, see {@link #createSortedIndex(String, Function)}, also support range queries and ordered access.
+ * <p>
+ * If the storage service supports journaling (see {@link JournalStorageService}) auto-save appends changes to the journal instead of invoking
+ * {@link #save()}. A {@link JournalCompactor} compacts the journal in background once it grows too large or takes too long to replay.
+ * <p>
+ * If the storage service splits the payload into segments (see {@link SegmentedStorageService}) {@link #save()} only writes segments with changed items.
  *
  * @author Christian Groth
  * @param <T>
  *            concrete type stored in this instance
  */
 public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonStore.class);
+
+    private final JournalStorageService journalStorageService;
+    private final JournalCompactor journalCompactor;
+
+    private final SegmentedStorageService segmentedStorageService;
+    private final int segments;
+    private final BitSet dirtySegments;
+
+    private final boolean concurrent;
+    private final Lock readLock;
+    private final Lock writeLock;
+    private final Map<String, Index<T, ?>> indexes;
+    private volatile Set<T> payload;
+    private final CopyOnWriteSnapshot<T> snapshot;
 
     /**
      * Creates a new JSON store.
@@ -34,8 +94,78 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      *            all migration handlers to be applied
      */
     public JsonStore(JsonService jsonService, StorageService storageService, String uid, int payloadTypeVersion, boolean autoSave, VersionMigrationHandler... migrationHandlers) {
+        this(jsonService, storageService, null, uid, payloadTypeVersion, autoSave, migrationHandlers);
+    }
+
+    /**
+     * Creates a new JSON store compacting the journal using the given compactor.
+     *
+     * @param jsonService
+     *            JSON service implementation
+     * @param storageService
+     *            storage service implementation
+     * @param journalCompactor
+     *            journal compactor, may be null
+     * @param uid
+     *            store uid
+     * @param payloadTypeVersion
+     *            version of payload type class
+     * @param autoSave
+     *            auto-save mode
+     * @param migrationHandlers
+     *            all migration handlers to be applied
+     */
+    public JsonStore(JsonService jsonService, StorageService storageService, JournalCompactor journalCompactor, String uid, int payloadTypeVersion, boolean autoSave,
+            VersionMigrationHandler... migrationHandlers) {
+        this(jsonService, storageService, journalCompactor, uid, payloadTypeVersion, autoSave, false, migrationHandlers);
+    }
+
+    /**
+     * Creates a new JSON store compacting the journal using the given compactor, optionally safe for concurrent access.
+     *
+     * @param jsonService
+     *            JSON service implementation
+     * @param storageService
+     *            storage service implementation
+     * @param journalCompactor
+     *            journal compactor, may be null
+     * @param uid
+     *            store uid
+     * @param payloadTypeVersion
+     *            version of payload type class
+     * @param autoSave
+     *            auto-save mode
+     * @param concurrent
+     *            concurrent mode
+     * @param migrationHandlers
+     *            all migration handlers to be applied
+     */
+    public JsonStore(JsonService jsonService, StorageService storageService, JournalCompactor journalCompactor, String uid, int payloadTypeVersion, boolean autoSave,
+            boolean concurrent, VersionMigrationHandler... migrationHandlers) {
         super(jsonService, storageService, uid, payloadTypeVersion, autoSave, migrationHandlers);
-        metadata.setPayload(new HashSet<>());
+
+        // reentrant locking, auto-save writes while changing
+        this.concurrent = concurrent;
+        ReadWriteLock lock = concurrent ? new ReentrantReadWriteLock() : null;
+        readLock = lock != null ? lock.readLock() : null;
+        writeLock = lock != null ? lock.writeLock() : null;
+        indexes = new HashMap<>();
+        snapshot = new CopyOnWriteSnapshot<>();
+        replacePayload(newPayload());
+
+        // check for journaling support
+        if (storageService instanceof JournalStorageService && ((JournalStorageService) storageService).isJournaling(metadata)) {
+            journalStorageService = (JournalStorageService) storageService;
+        } else {
+            journalStorageService = null;
+        }
+        this.journalCompactor = journalStorageService != null ? journalCompactor : null;
+
+        // check for segmentation support, nothing was written yet so all segments are dirty
+        segmentedStorageService = storageService instanceof SegmentedStorageService ? (SegmentedStorageService) storageService : null;
+        segments = segmentedStorageService != null ? segmentedStorageService.segments(metadata) : 1;
+        dirtySegments = new BitSet(segments);
+        dirtySegments.set(0, segments);
     }
 
     @Override
@@ -43,9 +173,187 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
 
         // TODO move to JsonService somehow?
         // change payload to set, gets loaded as list by flexjson
-        Set<T> payload = new HashSet<T>();
-        payload.addAll(metadata.getPayload());
-        metadata.setPayload(payload);
+        Set<T> loaded = newPayload();
+        loaded.addAll(metadata.getPayload());
+        replacePayload(loaded);
+
+        // all contents were replaced
+        dirtySegments.set(0, segments);
+    }
+
+    @Override
+    protected boolean read() {
+
+        // read single file
+        if (segmentedStorageService == null) {
+            return super.read();
+        }
+
+        // read all segments in parallel
+        Set<T> loaded = newPayload();
+        BitSet dirty = new BitSet(segments);
+        AtomicBoolean found = new AtomicBoolean();
+        AtomicBoolean migrated = new AtomicBoolean();
+        segmentedStorageService.readSegments(metadata, (segment, reader) -> {
+            JsonStoreMetadata<Collection<T>> segmentMetadata = copyMetadata(null);
+            AtomicBoolean segmentMigrated = new AtomicBoolean();
+            jsonService.fromJson(segmentMetadata, migrationHandlers, reader, segmentMigrated::set);
+            Collection<T> items = segmentMetadata.getPayload();
+            synchronized (loaded) {
+                found.set(true);
+                if (items != null) {
+                    loaded.addAll(items);
+                    markMisplacedItems(segment, items, dirty);
+                }
+                if (segmentMigrated.get()) {
+                    migrated.set(true);
+                    markDirty(segment, dirty);
+                }
+            }
+        });
+
+        // replace store contents
+        if (found.get()) {
+            replacePayload(loaded);
+            dirtySegments.clear();
+            dirtySegments.or(dirty);
+        }
+        return migrated.get();
+    }
+
+    private Set<T> newPayload() {
+        return concurrent ? ConcurrentHashMap.newKeySet() : new HashSet<>();
+    }
+
+    private void replacePayload(Set<T> items) {
+
+        // lock-free readers never see the intermediate payload while loading
+        payload = items;
+        metadata.setPayload(items);
+        snapshot.replace(items);
+        indexes.values().forEach(index -> index.rebuild(items));
+
+        // all contents were replaced
+        if (hasListeners()) {
+            fireClear();
+            if (!items.isEmpty()) {
+                fireAdd(Collections.unmodifiableList(new ArrayList<>(items)));
+            }
+        }
+    }
+
+    private void markMisplacedItems(int segment, Collection<T> items, BitSet dirty) {
+
+        // items not stored in expected segment, e.g. changed number of segments or hash codes, have to be moved
+        for (T item : items) {
+            int expectedSegment = segment(item);
+            if (expectedSegment != segment) {
+                dirty.set(expectedSegment);
+                markDirty(segment, dirty);
+            }
+        }
+    }
+
+    private void markDirty(int segment, BitSet dirty) {
+
+        // stale segments are discarded after all dirty segments are written
+        if (segment >= 0 && segment < segments) {
+            dirty.set(segment);
+        }
+    }
+
+    private int segment(T item) {
+
+        // consistent hashing spreads poor hash codes and moves few items when changing the number of segments
+        return Hashing.consistentHash(Objects.hashCode(item), segments);
+    }
+
+    @Override
+    protected boolean isBackgroundSaveSupported() {
+        return concurrent;
+    }
+
+    @Override
+    protected void exclusive(Runnable operation) {
+        locked(writeLock, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    private <R> R locked(Lock lock, Supplier<R> operation) {
+
+        // no locking if not in concurrent mode
+        if (lock == null) {
+            return operation.get();
+        }
+
+        // guard operation
+        lock.lock();
+        try {
+            return operation.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void write(Runnable written) {
+
+        // dirty segments are tracked while writing
+        exclusive(() -> writePayload(written));
+    }
+
+    @Override
+    protected JsonStoreMetadata<Set<T>> detachedMetadata() {
+
+        // snapshot is never changed afterwards
+        return copyMetadata(snapshot());
+    }
+
+    private void writePayload(Runnable written) {
+
+        // write single file
+        if (segmentedStorageService == null || segments == 1) {
+            super.write(written);
+            dirtySegments.clear();
+            return;
+        }
+
+        // partition dirty segments
+        Map<Integer, Set<T>> payloads = new HashMap<>();
+        dirtySegments.stream().forEach(segment -> payloads.put(segment, new HashSet<>()));
+        for (T item : payload) {
+            Set<T> segmentPayload = payloads.get(segment(item));
+            if (segmentPayload != null) {
+                segmentPayload.add(item);
+            }
+        }
+
+        // write dirty segments only
+        Map<Integer, Consumer<Writer>> json = new HashMap<>();
+        payloads.forEach((segment, payload) -> {
+            JsonStoreMetadata<Set<T>> segmentMetadata = copyMetadata(payload);
+            json.put(segment, writer -> jsonService.toJson(segmentMetadata, writer));
+        });
+        Set<Integer> failed = segmentedStorageService.writeSegments(metadata, json);
+
+        // keep failed segments dirty, so they are written again on next save
+        dirtySegments.clear();
+        failed.forEach(dirtySegments::set);
+        if (!failed.isEmpty()) {
+            throw new JsonStoreException(metadata.getUid() + ": unable to write segments " + failed + "!!");
+        }
+        written.run();
+    }
+
+    /**
+     * Checks if store is safe for concurrent access.
+     *
+     * @return true if in concurrent mode, false otherwise
+     */
+    public boolean isConcurrent() {
+        return concurrent;
     }
 
     /**
@@ -54,7 +362,181 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return copy of data
      */
     public Set<T> copy() {
-        return new HashSet<>(metadata.getPayload());
+        return locked(readLock, () -> new HashSet<>(payload));
+    }
+
+    /**
+     * Returns an immutable snapshot of data. The snapshot is maintained on each change and shared by all readers until the store is changed, so reads never
+     * copy data and don't take locks in concurrent mode. A change copies the snapshot once if it was read since the last change.
+     *
+     * @return immutable snapshot of data
+     */
+    public Set<T> snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Creates a secondary index grouping all elements by the key computed using the given function. Keys must not change while an element is contained in the
+     * store. The index is maintained on all changes and rebuilt on load.
+     *
+     * @param name
+     *            unique index name
+     * @param keyFunction
+     *            function computing the key of an element
+     * @param <K>
+     *            concrete type of index keys
+     */
+    public <K> void createIndex(String name, Function<? super T, ? extends K> keyFunction) {
+        addIndex(name, new HashIndex<>(keyFunction));
+    }
+
+    /**
+     * Creates a sorted secondary index ordering all elements by the natural order of the key computed using the given function, see
+     * {@link #createIndex(String, Function)}. Elements with a null key are not indexed.
+     *
+     * @param name
+     *            unique index name
+     * @param keyFunction
+     *            function computing the key of an element
+     * @param <K>
+     *            concrete type of index keys
+     */
+    public <K extends Comparable<? super K>> void createSortedIndex(String name, Function<? super T, ? extends K> keyFunction) {
+        addIndex(name, SortedIndex.naturalOrder(keyFunction));
+    }
+
+    /**
+     * Creates a sorted secondary index ordering all elements by the key computed using the given function, see {@link #createIndex(String, Function)}.
+     * Elements with a null key are not indexed.
+     *
+     * @param name
+     *            unique index name
+     * @param keyFunction
+     *            function computing the key of an element
+     * @param comparator
+     *            comparator of keys
+     * @param <K>
+     *            concrete type of index keys
+     */
+    public <K> void createSortedIndex(String name, Function<? super T, ? extends K> keyFunction, Comparator<? super K> comparator) {
+        addIndex(name, new SortedIndex<>(keyFunction, comparator));
+    }
+
+    private void addIndex(String name, Index<T, ?> index) {
+        exclusive(() -> {
+            if (indexes.containsKey(name)) {
+                throw new JsonStoreException("index " + name + " already exists for " + metadata.getUid() + "!!");
+            }
+            index.rebuild(payload);
+            indexes.put(name, index);
+        });
+    }
+
+    /**
+     * Drops the secondary index with given name, if existent.
+     *
+     * @param name
+     *            index name
+     */
+    public void dropIndex(String name) {
+        exclusive(() -> indexes.remove(name));
+    }
+
+    /**
+     * Returns all elements with the given key in the secondary index with given name.
+     *
+     * @param name
+     *            index name
+     * @param key
+     *            key to look up
+     * @return immutable set of matching elements, never null
+     * @param <K>
+     *            concrete type of index keys
+     */
+    public <K> Set<T> lookup(String name, K key) {
+        return locked(readLock, () -> this.<K> index(name).lookup(key));
+    }
+
+    /**
+     * Returns all elements with keys in the given range of the sorted index with given name, ordered by key.
+     *
+     * @param name
+     *            sorted index name
+     * @param from
+     *            lowest key, inclusive, null for no lower bound
+     * @param to
+     *            highest key, exclusive, null for no upper bound
+     * @return elements in range, never null, empty if from is greater than to
+     * @param <K>
+     *            concrete type of index keys
+     */
+    public <K> List<T> range(String name, K from, K to) {
+        return locked(readLock, () -> this.<K> sortedIndex(name).range(from, to));
+    }
+
+    /**
+     * Returns any element with the lowest key in the sorted index with given name.
+     *
+     * @param name
+     *            sorted index name
+     * @return first element, may be null
+     */
+    public T first(String name) {
+        return locked(readLock, () -> sortedIndex(name).first());
+    }
+
+    /**
+     * Returns any element with the highest key in the sorted index with given name.
+     *
+     * @param name
+     *            sorted index name
+     * @return last element, may be null
+     */
+    public T last(String name) {
+        return locked(readLock, () -> sortedIndex(name).last());
+    }
+
+    /**
+     * Returns elements in ascending order of keys in the sorted index with given name.
+     *
+     * @param name
+     *            sorted index name
+     * @param limit
+     *            maximum number of elements
+     * @return ordered elements, never null
+     */
+    public List<T> ascending(String name, int limit) {
+        return locked(readLock, () -> sortedIndex(name).ascending(limit));
+    }
+
+    /**
+     * Returns elements in descending order of keys in the sorted index with given name, e.g. the latest entries by timestamp.
+     *
+     * @param name
+     *            sorted index name
+     * @param limit
+     *            maximum number of elements
+     * @return ordered elements, never null
+     */
+    public List<T> descending(String name, int limit) {
+        return locked(readLock, () -> sortedIndex(name).descending(limit));
+    }
+
+    private <K> SortedIndex<T, K> sortedIndex(String name) {
+        Index<T, K> index = index(name);
+        if (!(index instanceof SortedIndex)) {
+            throw new JsonStoreException("index " + name + " for " + metadata.getUid() + " is not sorted!!");
+        }
+        return (SortedIndex<T, K>) index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> Index<T, K> index(String name) {
+        Index<T, ?> index = indexes.get(name);
+        if (index == null) {
+            throw new JsonStoreException("unknown index " + name + " for " + metadata.getUid() + "!!");
+        }
+        return (Index<T, K>) index;
     }
 
     /**
@@ -64,7 +546,7 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      */
     @Override
     public long size() {
-        return metadata.getPayload().size();
+        return payload.size();
     }
 
     /**
@@ -73,7 +555,7 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return true if empty, false otherwise
      */
     public boolean isEmpty() {
-        return metadata.getPayload().isEmpty();
+        return payload.isEmpty();
     }
 
     /**
@@ -84,7 +566,7 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return true if object is contained, false otherwise
      */
     public boolean contains(Object o) {
-        return metadata.getPayload().contains(o);
+        return (!concurrent || o != null) && payload.contains(o);
     }
 
     /**
@@ -95,37 +577,58 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return true if all objects are contained, false otherwise
      */
     public boolean containsAll(Collection<?> c) {
-        return metadata.getPayload().containsAll(c);
+        return payload.containsAll(c);
     }
 
     /**
-     * Adds given object to store. Will invoke {@link #save()} if using auto-save mode and store was changed.
+     * Adds given object to store. Will invoke {@link #save()} if using auto-save mode and store was changed. Null elements are rejected in concurrent
+     * mode before the store is changed.
      *
      * @param e
      *            object to add
      * @return true if store was changed, false otherwise
      */
     public boolean add(T e) {
-        boolean add = metadata.getPayload().add(e);
-        if (autoSave && add) {
-            save();
-        }
-        return add;
+        checkElement(e);
+        return locked(writeLock, () -> {
+            boolean add = payload.add(e);
+            if (add) {
+                changed(Operation.ADD, Collections.singletonList(e));
+            }
+            return add;
+        });
     }
 
     /**
-     * Adds all objects from given collection to store. Will invoke {@link #save()} if using auto-save mode and store was changed.
+     * Adds all objects from given collection to store. Will invoke {@link #save()} if using auto-save mode and store was changed. Null elements are rejected in concurrent
+     * mode before the store is changed.
      *
      * @param c
      *            objects to add
      * @return true if store was changed, false otherwise
      */
     public boolean addAll(Collection<? extends T> c) {
-        boolean addAll = metadata.getPayload().addAll(c);
-        if (autoSave && addAll) {
-            save();
+
+        // failing in between would skip maintenance of added elements
+        c.forEach(this::checkElement);
+        return locked(writeLock, () -> {
+            List<T> added = new ArrayList<>();
+            for (T e : c) {
+                if (payload.add(e)) {
+                    added.add(e);
+                }
+            }
+            if (!added.isEmpty()) {
+                changed(Operation.ADD, added);
+            }
+            return !added.isEmpty();
+        });
+    }
+
+    private void checkElement(T e) {
+        if (concurrent && e == null) {
+            throw new JsonStoreException("null elements are not supported in concurrent mode for " + metadata.getUid() + "!!");
         }
-        return addAll;
     }
 
     /**
@@ -136,11 +639,7 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return true if store was changed, false otherwise
      */
     public boolean retainAll(Collection<?> c) {
-        boolean retainAll = metadata.getPayload().retainAll(c);
-        if (autoSave && retainAll) {
-            save();
-        }
-        return retainAll;
+        return removeIf(e -> !c.contains(e));
     }
 
     /**
@@ -151,11 +650,16 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return true if store was changed, false otherwise
      */
     public boolean remove(T t) {
-        boolean remove = metadata.getPayload().remove(t);
-        if (autoSave) {
-            save();
+        if (concurrent && t == null) {
+            return false;
         }
-        return remove;
+        return locked(writeLock, () -> {
+            boolean remove = payload.remove(t);
+            if (remove) {
+                changed(Operation.REMOVE, Collections.singletonList(t));
+            }
+            return remove;
+        });
     }
 
     /**
@@ -166,11 +670,18 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return true if store was changed, false otherwise
      */
     public boolean removeAll(Collection<T> c) {
-        boolean removeAll = metadata.getPayload().removeAll(c);
-        if (autoSave) {
-            save();
-        }
-        return removeAll;
+        return locked(writeLock, () -> {
+            List<T> removed = new ArrayList<>();
+            for (T e : c) {
+                if ((!concurrent || e != null) && payload.remove(e)) {
+                    removed.add(e);
+                }
+            }
+            if (!removed.isEmpty()) {
+                changed(Operation.REMOVE, removed);
+            }
+            return !removed.isEmpty();
+        });
     }
 
     /**
@@ -181,43 +692,221 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      * @return true if store was changed, false otherwise
      */
     public boolean removeIf(Predicate<? super T> filter) {
-        boolean removeIf = metadata.getPayload().removeIf(filter);
-        if (autoSave) {
-            save();
-        }
-        return removeIf;
+        return locked(writeLock, () -> {
+            List<T> removed = new ArrayList<>();
+            Iterator<T> iterator = payload.iterator();
+            while (iterator.hasNext()) {
+                T e = iterator.next();
+                if (filter.test(e)) {
+                    iterator.remove();
+                    removed.add(e);
+                }
+            }
+            if (!removed.isEmpty()) {
+                changed(Operation.REMOVE, removed);
+            }
+            return !removed.isEmpty();
+        });
     }
 
     /**
-     * Clears all elements in store. Will invoke {@link #save()} if using auto-save mode.
+     * Clears all elements in store. Will invoke {@link #save()} if using auto-save mode and store was changed.
      */
     public void clear() {
-        metadata.getPayload().clear();
-        if (autoSave) {
+        exclusive(() -> {
+            if (!payload.isEmpty()) {
+                payload.clear();
+                changed(Operation.CLEAR, Collections.emptyList());
+            }
+        });
+    }
+
+    /**
+     * Runs the given operation on this store deferring auto-save until the operation is done. If the store was changed it gets saved exactly once afterwards,
+     * even if the operation fails, because changes are not rolled back. In concurrent mode other threads are blocked until the batch is done.
+     *
+     * @param operation
+     *            operation to be run
+     */
+    public void batch(Consumer<JsonStore<T>> operation) {
+        exclusive(() -> deferAutoSave(() -> operation.accept(this)));
+    }
+
+    private void changed(Operation operation, List<T> items) {
+        applied(operation, items);
+
+        // track changed segments
+        if (operation == Operation.CLEAR) {
+            dirtySegments.set(0, segments);
+        } else {
+            items.forEach(item -> dirtySegments.set(segment(item)));
+        }
+
+        // save snapshot if not journaling
+        if (journalStorageService == null) {
+            saveChanged();
+            return;
+        }
+
+        // nothing to do without auto-save or while running a batch
+        boolean journalComplete = !isDirty();
+        long modification = markModified();
+        if (!autoSave || deferSave()) {
+            return;
+        }
+
+        // journal misses earlier changes if appending failed, so a full snapshot is needed
+        if (!journalComplete) {
             save();
+            return;
+        }
+
+        // append changes to journal
+        metadata.setModified(new Date());
+        int payloadTypeVersion = metadata.getPayloadTypeVersion();
+        List<JournalRecord> records = operation == Operation.CLEAR ? Collections.singletonList(new JournalRecord(operation, payloadTypeVersion, null))
+                : items.stream().map(item -> new JournalRecord(operation, payloadTypeVersion, jsonService.payloadItemToJson(metadata, item))).collect(Collectors.toList());
+        journalStorageService.append(metadata, records);
+        markPersisted(modification);
+
+        // compact large journal
+        if (journalCompactor != null && journalCompactor.isJournalSizeExceeded(journalStorageService.journalSize(metadata))) {
+            compact();
+        }
+    }
+
+    private void applied(Operation operation, List<T> items) {
+
+        // maintain snapshot
+        switch (operation) {
+            case ADD:
+                snapshot.change(current -> current.addAll(items));
+                break;
+            case REMOVE:
+                snapshot.change(current -> current.removeAll(items));
+                break;
+            case CLEAR:
+                snapshot.change(Set::clear);
+                break;
+            default:
+                throw new JsonStoreException("unknown operation " + operation + " for " + metadata.getUid() + "!!");
+        }
+
+        // maintain indexes
+        for (Index<T, ?> index : indexes.values()) {
+            switch (operation) {
+                case ADD:
+                    items.forEach(index::add);
+                    break;
+                case REMOVE:
+                    items.forEach(index::remove);
+                    break;
+                case CLEAR:
+                    index.clear();
+                    break;
+                default:
+                    throw new JsonStoreException("unknown operation " + operation + " for " + metadata.getUid() + "!!");
+            }
+        }
+
+        // notify listeners
+        if (hasListeners()) {
+            if (operation == Operation.CLEAR) {
+                fireClear();
+            } else if (operation == Operation.ADD) {
+                fireAdd(Collections.unmodifiableList(items));
+            } else {
+                fireRemove(Collections.unmodifiableList(items));
+            }
+        }
+    }
+
+    private void compact() {
+        journalCompactor.schedule(metadata.getUid(), () -> {
+
+            // records up to now are covered by the snapshot, which is immutable and can be written in background
+            journalStorageService.rotateJournal(metadata);
+            JsonStoreMetadata<Set<T>> snapshotMetadata = copyMetadata(snapshot());
+            return () -> journalStorageService.compact(snapshotMetadata, writer -> jsonService.toJson(snapshotMetadata, writer));
+        });
+    }
+
+    @Override
+    protected boolean replayJournal() {
+
+        // nothing to do if not journaling
+        if (journalStorageService == null) {
+            return false;
+        }
+
+        // apply all records
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        AtomicBoolean migrated = new AtomicBoolean();
+        AtomicLong count = new AtomicLong();
+        journalStorageService.readJournal(metadata, record -> {
+            if (record.getPayloadTypeVersion() < metadata.getPayloadTypeVersion()) {
+                migrated.set(true);
+            }
+            count.incrementAndGet();
+            replay(record);
+        });
+        stopwatch.stop();
+        LOG.info(metadata.getUid() + ": replaying " + count.get() + " journal records took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+
+        // compact slow journal, migrated data gets saved anyway
+        if (autoSave && !migrated.get() && journalCompactor != null && journalCompactor.isReplayTimeExceeded(stopwatch.elapsed(TimeUnit.MILLISECONDS))) {
+            compact();
+        }
+
+        // done
+        return migrated.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replay(JournalRecord record) {
+        T item;
+        switch (record.getOperation()) {
+            case ADD:
+                item = (T) jsonService.payloadItemFromJson(metadata, migrationHandlers, record.getPayloadTypeVersion(), record.getJson());
+                if (payload.add(item)) {
+                    applied(Operation.ADD, Collections.singletonList(item));
+                }
+                break;
+            case REMOVE:
+                item = (T) jsonService.payloadItemFromJson(metadata, migrationHandlers, record.getPayloadTypeVersion(), record.getJson());
+                if (payload.remove(item)) {
+                    applied(Operation.REMOVE, Collections.singletonList(item));
+                }
+                break;
+            case CLEAR:
+                payload.clear();
+                applied(Operation.CLEAR, Collections.emptyList());
+                break;
+            default:
+                throw new JsonStoreException("unknown journal operation " + record.getOperation() + " for " + metadata.getUid() + "!!");
         }
     }
 
     /**
-     * Creates a stream over a copy of all elements in this store.
+     * Creates a stream over a snapshot of all elements in this store.
      *
      * @return stream over elements in store
      */
     public Stream<T> stream() {
-        return copy().stream();
+        return snapshot().stream();
     }
 
     /**
-     * Creates a parallel stream over a copy of all elements in this store.
+     * Creates a parallel stream over a snapshot of all elements in this store.
      *
      * @return parallel stream over elements in store
      */
     public Stream<T> parallelStream() {
-        return copy().parallelStream();
+        return snapshot().parallelStream();
     }
 
     /**
-     * Performs given action on a copy of all elements in store.<br>
+     * Performs given action on a snapshot of all elements in store.<br>
      * <br>
      * <b>Attention: Even if using auto-save mode you have to call {@link #save()} yourself!!</b>
      *
@@ -225,6 +914,6 @@ public class JsonStore<T> extends AbstractJsonStore<T, Set<T>> {
      *            action to be performed on store elements
      */
     public void forEach(Consumer<? super T> action) {
-        copy().forEach(action);
+        snapshot().forEach(action);
     }
 }
@@ -1,7 +1,9 @@
 package de.chrgroth.jsonstore;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -11,7 +13,8 @@ import de.chrgroth.jsonstore.metrics.JsonStoresMetrics;
  * Central API class to create JSON stores. Stores are maintained using {@link #resolve(String)}, {@link #ensure(String, Integer, VersionMigrationHandler...)}
  * and {@link #drop(String)} and similar methods for singleton stores. The {@link #save()} method acts as shortcut to save all stores. If an instance is created
  * with auto save mode enabled (see {@link JsonStoresBuilder#autoSave(boolean)}) then {@link #ensure(String, Integer, VersionMigrationHandler...)} and
- * {@link #ensureSingleton(String, Integer, VersionMigrationHandler...)} will automatically load possibly existing data using configured storage service.
+ * {@link #ensureSingleton(String, Integer, VersionMigrationHandler...)} will automatically load possibly existing data using configured storage service. Map
+ * stores keyed by an element property are maintained using {@link #ensureMap(String, Integer, Function, VersionMigrationHandler...)} and similar methods.
  *
  * @author Christian Groth
  */
@@ -22,7 +25,10 @@ public class JsonStores {
 
     private final Map<String, JsonStore<?>> stores;
     private final Map<String, JsonSingletonStore<?>> singletonStores;
+    private final Map<String, JsonMapStore<?, ?>> mapStores;
     private final boolean autoSave;
+    private final JournalCompactor journalCompactor;
+    private final AutoSaveScheduler autoSaveScheduler;
 
     /**
      * Builder class to control creation of {@link JsonStores}.
@@ -35,10 +41,14 @@ public class JsonStores {
         private final StorageService storageService;
 
         private boolean autoSave;
+        private AutoSavePolicy autoSavePolicy;
+        private long maxJournalSize;
+        private long maxReplayMillis;
 
         private JsonStoresBuilder(JsonService jsonService, StorageService storageService) {
             this.jsonService = jsonService;
             this.storageService = storageService;
+            autoSavePolicy = AutoSavePolicy.immediate();
         }
 
         /**
@@ -53,13 +63,48 @@ public class JsonStores {
             return this;
         }
 
+        /**
+         * Enables auto save mode using the given policy. Using a debounced policy stores are saved in background, so all {@link JsonStore} instances are
+         * created in concurrent mode.
+         *
+         * @param autoSavePolicy
+         *            auto save policy
+         * @return builder
+         */
+        public JsonStoresBuilder autoSave(AutoSavePolicy autoSavePolicy) {
+            if (autoSavePolicy == null) {
+                throw new JsonStoreException("autoSavePolicy must be provided!!");
+            }
+            autoSave = true;
+            this.autoSavePolicy = autoSavePolicy;
+            return this;
+        }
+
+        /**
+         * Enables background compaction of journals, see {@link JournalStorageService} and {@link JournalCompactor}. Any threshold less or equal to zero is
+         * disabled.
+         *
+         * @param maxJournalSize
+         *            journal size in bytes triggering a compaction
+         * @param maxReplayMillis
+         *            journal replay time in milliseconds triggering a compaction
+         * @return builder
+         */
+        public JsonStoresBuilder journalCompaction(long maxJournalSize, long maxReplayMillis) {
+            this.maxJournalSize = maxJournalSize;
+            this.maxReplayMillis = maxReplayMillis;
+            return this;
+        }
+
         /**
          * Creates the {@link JsonStores} instance.
          *
          * @return stores instance
          */
         public JsonStores build() {
-            return new JsonStores(jsonService, storageService, autoSave);
+            JournalCompactor journalCompactor = maxJournalSize > 0 || maxReplayMillis > 0 ? new JournalCompactor(maxJournalSize, maxReplayMillis) : null;
+            AutoSaveScheduler autoSaveScheduler = autoSave && !autoSavePolicy.isImmediate() ? new AutoSaveScheduler(autoSavePolicy) : null;
+            return new JsonStores(jsonService, storageService, autoSave, journalCompactor, autoSaveScheduler);
         }
     }
 
@@ -77,13 +122,25 @@ public class JsonStores {
     }
 
     protected JsonStores(JsonService jsonService, StorageService storageService, boolean autoSave) {
+        this(jsonService, storageService, autoSave, null);
+    }
+
+    protected JsonStores(JsonService jsonService, StorageService storageService, boolean autoSave, JournalCompactor journalCompactor) {
+        this(jsonService, storageService, autoSave, journalCompactor, null);
+    }
+
+    protected JsonStores(JsonService jsonService, StorageService storageService, boolean autoSave, JournalCompactor journalCompactor,
+            AutoSaveScheduler autoSaveScheduler) {
 
         // init state
         this.jsonService = jsonService;
         this.storageService = storageService;
         stores = new HashMap<>();
         singletonStores = new HashMap<>();
+        mapStores = new HashMap<>();
         this.autoSave = autoSave;
+        this.journalCompactor = journalCompactor;
+        this.autoSaveScheduler = autoSaveScheduler;
         storageService.prepare();
     }
 
@@ -93,8 +150,11 @@ public class JsonStores {
      * @return metrics, never null
      */
     public JsonStoresMetrics computeMetrics() {
-        Stream<AbstractJsonStore<?, ? extends Object>> allStores = Stream.concat(stores.values().stream(), singletonStores.values().stream());
-        return new JsonStoresMetrics(allStores.map(s -> s.computeMetrics()).collect(Collectors.toList()));
+        return new JsonStoresMetrics(allStores().map(s -> s.computeMetrics()).collect(Collectors.toList()));
+    }
+
+    private Stream<AbstractJsonStore<?, ? extends Object>> allStores() {
+        return Stream.concat(Stream.concat(stores.values().stream(), singletonStores.values().stream()), mapStores.values().stream());
     }
 
     /**
@@ -114,12 +174,33 @@ public class JsonStores {
      * @see VersionMigrationHandler
      */
     public <T> JsonStore<T> ensure(String uid, Integer payloadClassVersion, VersionMigrationHandler... versionMigrationHandlers) {
+        return ensure(uid, payloadClassVersion, false, versionMigrationHandlers);
+    }
+
+    /**
+     * Ensures existence of JSON store for given class, see {@link #ensure(String, Integer, VersionMigrationHandler...)}. The concurrent mode is only applied if
+     * the store gets created, see {@link JsonStore}.
+     *
+     * @param uid
+     *            use {@link JsonStoreUtils#buildUid(Class, String)} to generate appropriate value
+     * @param payloadClassVersion
+     *            version of payload class, next version is always supposed to be increased by one
+     * @param concurrent
+     *            true to create a store safe for concurrent access, false otherwise
+     * @param versionMigrationHandlers
+     *            all migration handlers
+     * @return existing or created JSON store
+     * @param <T>
+     *            concrete type of data
+     * @see VersionMigrationHandler
+     */
+    public <T> JsonStore<T> ensure(String uid, Integer payloadClassVersion, boolean concurrent, VersionMigrationHandler... versionMigrationHandlers) {
 
         // ensure store
         boolean initialDataLod = false;
         if (!stores.containsKey(uid)) {
             initialDataLod = true;
-            create(uid, payloadClassVersion, versionMigrationHandlers);
+            create(uid, payloadClassVersion, concurrent, versionMigrationHandlers);
         }
 
         // load data
@@ -136,8 +217,11 @@ public class JsonStores {
         return store;
     }
 
-    protected void create(String uid, Integer payloadClassVersion, VersionMigrationHandler... versionMigrationHandlers) {
-        stores.put(uid, new JsonStore<>(jsonService, storageService, uid, payloadClassVersion, autoSave, versionMigrationHandlers));
+    protected void create(String uid, Integer payloadClassVersion, boolean concurrent, VersionMigrationHandler... versionMigrationHandlers) {
+        JsonStore<?> store = new JsonStore<>(jsonService, storageService, journalCompactor, uid, payloadClassVersion, autoSave,
+                concurrent || autoSaveScheduler != null, versionMigrationHandlers);
+        store.autoSaveScheduler(autoSaveScheduler);
+        stores.put(uid, store);
     }
 
     /**
@@ -218,7 +302,9 @@ public class JsonStores {
     }
 
     protected void createSingleton(String uid, Integer payloadClassVersion, VersionMigrationHandler... versionMigrationHandlers) {
-        singletonStores.put(uid, new JsonSingletonStore<>(jsonService, storageService, uid, payloadClassVersion, autoSave, versionMigrationHandlers));
+        JsonSingletonStore<?> store = new JsonSingletonStore<>(jsonService, storageService, uid, payloadClassVersion, autoSave, versionMigrationHandlers);
+        store.autoSaveScheduler(autoSaveScheduler);
+        singletonStores.put(uid, store);
     }
 
     /**
@@ -259,6 +345,99 @@ public class JsonStores {
         return store;
     }
 
+    /**
+     * Ensures existence of JSON map store for given class. If auto save mode is enabled store will automatically load possibly existing data from configured
+     * storage path. If any error occurs during load of existing data a {@link JsonStoreException} will be thrown cause otherwise data loss may occur on next
+     * successful save.
+     *
+     * @param uid
+     *            use {@link JsonStoreUtils#buildUid(Class, String)} to generate appropriate value
+     * @param payloadClassVersion
+     *            version of payload class, next version is always supposed to be increased by one
+     * @param keyFunction
+     *            function computing the key of an element, only applied if the store gets created
+     * @param versionMigrationHandlers
+     *            all migration handlers
+     * @return existing or created JSON map store
+     * @param <K>
+     *            concrete type of keys
+     * @param <T>
+     *            concrete type of data
+     * @see VersionMigrationHandler
+     */
+    public <K, T> JsonMapStore<K, T> ensureMap(String uid, Integer payloadClassVersion, Function<? super T, ? extends K> keyFunction,
+            VersionMigrationHandler... versionMigrationHandlers) {
+
+        // ensure store
+        boolean initialDataLod = false;
+        if (!mapStores.containsKey(uid)) {
+            initialDataLod = true;
+            createMap(uid, payloadClassVersion, keyFunction, versionMigrationHandlers);
+        }
+
+        // load data
+        JsonMapStore<K, T> store = resolveMap(uid);
+        if (initialDataLod && autoSave) {
+            try {
+                store.load();
+            } catch (Exception e) {
+                throw new JsonStoreException("Unable to delegate data load for " + store.getUid() + "!!", e);
+            }
+        }
+
+        // done
+        return store;
+    }
+
+    protected <K, T> void createMap(String uid, Integer payloadClassVersion, Function<? super T, ? extends K> keyFunction,
+            VersionMigrationHandler... versionMigrationHandlers) {
+        JsonMapStore<K, T> store = new JsonMapStore<>(jsonService, storageService, uid, payloadClassVersion, autoSave, keyFunction, versionMigrationHandlers);
+        store.autoSaveScheduler(autoSaveScheduler);
+        mapStores.put(uid, store);
+    }
+
+    /**
+     * Resolves JSON map store for given uid.
+     *
+     * @param uid
+     *            store uid
+     * @return existing JSON map store, may be null
+     * @param <K>
+     *            concrete type of keys
+     * @param <T>
+     *            concrete type of data
+     */
+    @SuppressWarnings("unchecked")
+    public <K, T> JsonMapStore<K, T> resolveMap(String uid) {
+        return (JsonMapStore<K, T>) mapStores.get(uid);
+    }
+
+    /**
+     * Drops JSON map store for given uid, is existent. Results in calling {@link JsonMapStore#drop()} if using auto-save mode and store exists.
+     *
+     * @param uid
+     *            store uid
+     * @return dropped JSON map store
+     * @param <K>
+     *            concrete type of keys
+     * @param <T>
+     *            concrete type of data
+     */
+    @SuppressWarnings("unchecked")
+    public <K, T> JsonMapStore<K, T> dropMap(String uid) {
+
+        // drop in memory
+        JsonMapStore<K, T> store = (JsonMapStore<K, T>) mapStores.remove(uid);
+        if (store != null) {
+
+            // remove file
+            store.drop();
+        }
+
+        // done
+        return store;
+    }
+
     /**
      * If stores auto save mode is disabled, this method invokes {@link JsonStore#load()} on all existing stores. In case auto save is enabled stores are loaded
      * automatically and this call won't do anything.
@@ -284,13 +463,81 @@ public class JsonStores {
                 throw new JsonStoreException("Unable to delegate data load for " + entry.getKey() + "!!", e);
             }
         });
+        mapStores.entrySet().parallelStream().forEach(entry -> {
+            try {
+                entry.getValue().load();
+            } catch (Exception e) {
+                throw new JsonStoreException("Unable to delegate data load for " + entry.getKey() + "!!", e);
+            }
+        });
     }
 
     /**
-     * Triggers {@link JsonStore#save()} on all existing stores.
+     * Triggers {@link JsonStore#save()} on all existing stores modified since saved or loaded last time, see {@link AbstractJsonStore#isDirty()}.
      */
     public void save() {
-        stores.values().parallelStream().forEach(store -> store.save());
-        singletonStores.values().parallelStream().forEach(store -> store.save());
+        stores.values().parallelStream().filter(store -> store.isDirty()).forEach(store -> store.save());
+        singletonStores.values().parallelStream().filter(store -> store.isDirty()).forEach(store -> store.save());
+        mapStores.values().parallelStream().filter(store -> store.isDirty()).forEach(store -> store.save());
+    }
+
+    /**
+     * Runs the given operation deferring auto-save of all existing stores until the operation is done. Each store changed within the operation gets saved
+     * exactly once afterwards, even if the operation fails, because changes are not rolled back. Stores created within the operation are not included.
+     *
+     * @param operation
+     *            operation to be run
+     */
+    public void batch(Runnable operation) {
+
+        // defer auto-save
+        List<AbstractJsonStore<?, ? extends Object>> batchStores = allStores().collect(Collectors.toList());
+        batchStores.forEach(AbstractJsonStore::beginBatch);
+
+        // run operation and save changed stores, failing saves must not hide the failure of the operation
+        try {
+            operation.run();
+        } catch (RuntimeException | Error e) {
+            RuntimeException failure = endBatch(batchStores);
+            if (failure != null) {
+                e.addSuppressed(failure);
+            }
+            throw e;
+        }
+        RuntimeException failure = endBatch(batchStores);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static RuntimeException endBatch(List<AbstractJsonStore<?, ? extends Object>> batchStores) {
+
+        // end batch on all stores, even if saving one of them fails
+        RuntimeException failure = null;
+        for (AbstractJsonStore<?, ? extends Object> store : batchStores) {
+            try {
+                store.endBatch();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Saves all pending changes if using a debounced {@link AutoSavePolicy} and stops background journal compaction, if enabled, after all pending compactions
+     * are done. Stores must not be changed afterwards.
+     */
+    public void shutdown() {
+        if (autoSaveScheduler != null) {
+            autoSaveScheduler.shutdown();
+        }
+        if (journalCompactor != null) {
+            journalCompactor.shutdown();
+        }
     }
 }
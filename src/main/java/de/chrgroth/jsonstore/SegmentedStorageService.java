@@ -0,0 +1,57 @@
+package de.chrgroth.jsonstore;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Storage service being able to split the payload of a {@link JsonStore} into several segments stored separately. Items are assigned to segments using their
+ * hash code, so saving a store only rewrites segments containing changed items and loading reads all segments in parallel. Each segment holds complete JSON
+ * data of the store restricted to the items of the segment.
+ *
+ * @author Christian Groth
+ */
+public interface SegmentedStorageService extends StorageService {
+
+    /**
+     * Segment index used for data written by {@link #write(JsonStoreMetadata, Consumer)}.
+     */
+    int UNSEGMENTED = -1;
+
+    /**
+     * Returns the number of segments to be used for the given store metadata.
+     *
+     * @param metadata
+     *            store metadata
+     * @return number of segments, a value of one means no segmentation and data has to be written using {@link #write(JsonStoreMetadata, Consumer)}
+     */
+    int segments(JsonStoreMetadata<?> metadata);
+
+    /**
+     * Writes the given segments in parallel, all other segments remain unchanged. Data written by {@link #write(JsonStoreMetadata, Consumer)} and segments
+     * exceeding the number of segments are discarded after all given segments have been written successfully. Segments failing to be written keep their
+     * previous data and are returned, so they can be written again later.
+     *
+     * @param metadata
+     *            store metadata
+     * @param segments
+     *            consumers writing the JSON data per segment index
+     * @return indexes of segments not written, empty if all segments were written
+     */
+    Set<Integer> writeSegments(JsonStoreMetadata<?> metadata, Map<Integer, Consumer<Writer>> segments);
+
+    /**
+     * Reads all existing segments of given store metadata in parallel, so the consumer may be called concurrently. Data written by
+     * {@link #write(JsonStoreMetadata, Consumer)} is provided using {@link #UNSEGMENTED} as segment index. The consumer is not called if there is no data at
+     * all.
+     *
+     * @param metadata
+     *            store metadata
+     * @param segments
+     *            consumer for segment index and JSON data
+     */
+    void readSegments(JsonStoreMetadata<?> metadata, BiConsumer<Integer, Reader> segments);
+}
@@ -1,5 +1,9 @@
 package de.chrgroth.jsonstore;
 
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Consumer;
+
 /**
  * Common interface for all storage relevant operations.
  *
@@ -22,23 +26,53 @@ public interface StorageService {
     long size(JsonStoreMetadata<?> metadata);
 
     /**
-     * Writes the given JSON data for given store metadata.
+     * Writes JSON data for given store metadata. The JSON data is streamed by given consumer into the provided writer, so implementations don't have to hold
+     * the complete JSON data in memory. The writer must not be closed by the consumer. Failures have to be reported by throwing a {@link JsonStoreException},
+     * so the store is saved again later.
      *
      * @param metadata
      *            store metadata
      * @param json
-     *            JSON data to be written
+     *            consumer writing the JSON data to be stored
      */
-    void write(JsonStoreMetadata<?> metadata, String json);
+    void write(JsonStoreMetadata<?> metadata, Consumer<Writer> json);
 
     /**
-     * Reads the JSON data for given store metadata.
+     * Checks if writes are done in background, see {@link #write(JsonStoreMetadata, Consumer, Runnable)}.
+     *
+     * @return true if JSON data is created and written after returning from write, false otherwise
+     */
+    default boolean isWriteBehind() {
+        return false;
+    }
+
+    /**
+     * Writes JSON data like {@link #write(JsonStoreMetadata, Consumer)} and invokes the given callback once the data was written. If writing is done in
+     * background, see {@link #isWriteBehind()}, the consumer and callback are invoked after returning, so the consumer must only access data not changed
+     * afterwards. Failing writes in background don't invoke the callback.
      *
      * @param metadata
      *            store metadata
-     * @return persistent JSON data
+     * @param json
+     *            consumer writing the JSON data to be stored
+     * @param written
+     *            callback invoked after data was written
+     */
+    default void write(JsonStoreMetadata<?> metadata, Consumer<Writer> json, Runnable written) {
+        write(metadata, json);
+        written.run();
+    }
+
+    /**
+     * Reads the JSON data for given store metadata. The JSON data is provided to the given consumer as reader, so implementations don't have to hold the
+     * complete JSON data in memory. The consumer won't be called if there is no persistent data at all and must not close the reader.
+     *
+     * @param metadata
+     *            store metadata
+     * @param json
+     *            consumer reading the persistent JSON data
      */
-    String read(JsonStoreMetadata<?> metadata);
+    void read(JsonStoreMetadata<?> metadata, Consumer<Reader> json);
 
     /**
      * Deletes the persistent storage for given store metadata.
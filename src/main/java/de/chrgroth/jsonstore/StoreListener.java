@@ -0,0 +1,55 @@
+package de.chrgroth.jsonstore;
+
+import java.util.Collection;
+
+/**
+ * Listener notified about changes of a store, see {@link AbstractJsonStore#addListener(StoreListener)}. Events are published after the store was changed and
+ * before it gets saved. Loading data replaces all contents, so regular stores publish {@link #onClear()} followed by {@link #onAdd(Collection)} with all loaded
+ * elements and singleton stores publish {@link #onReplace(Object, Object)}. Listeners invoked synchronously must not block, because the store may be locked
+ * during delivery. All methods do nothing by default.
+ *
+ * @author Christian Groth
+ * @param <T>
+ *            concrete type stored in the store
+ */
+public interface StoreListener<T> {
+
+    /**
+     * Gets called after elements were added.
+     *
+     * @param items
+     *            immutable collection of added elements
+     */
+    default void onAdd(Collection<T> items) {
+        // nothing to do
+    }
+
+    /**
+     * Gets called after elements were removed.
+     *
+     * @param items
+     *            immutable collection of removed elements
+     */
+    default void onRemove(Collection<T> items) {
+        // nothing to do
+    }
+
+    /**
+     * Gets called after all elements were removed.
+     */
+    default void onClear() {
+        // nothing to do
+    }
+
+    /**
+     * Gets called after an element was replaced, e.g. the payload of a singleton store.
+     *
+     * @param oldItem
+     *            replaced element, may be null
+     * @param newItem
+     *            new element, may be null
+     */
+    default void onReplace(T oldItem, T newItem) {
+        // nothing to do
+    }
+}
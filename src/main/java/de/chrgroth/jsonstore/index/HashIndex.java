@@ -0,0 +1,26 @@
+package de.chrgroth.jsonstore.index;
+
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * Index looking up elements by key in constant time. Null keys are supported.
+ *
+ * @author Christian Groth
+ * @param <T>
+ *            concrete type of indexed elements
+ * @param <K>
+ *            concrete type of index keys
+ */
+public class HashIndex<T, K> extends Index<T, K> {
+
+    /**
+     * Creates a new empty index.
+     *
+     * @param keyFunction
+     *            function computing the key of an element
+     */
+    public HashIndex(Function<? super T, ? extends K> keyFunction) {
+        super(keyFunction, new HashMap<>());
+    }
+}
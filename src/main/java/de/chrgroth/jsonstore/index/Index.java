@@ -0,0 +1,162 @@
+package de.chrgroth.jsonstore.index;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Secondary index grouping store elements by a key computed from each element. Keys must not change while an element is stored, just like hash codes of
+ * elements contained in a set. Indexes are not thread-safe, access has to be guarded by the owning store. Sets returned by {@link #lookup(Object)} are shared
+ * with the index and copied once on the next change of their key, so lookups don't copy any data.
+ *
+ * @author Christian Groth
+ * @param <T>
+ *            concrete type of indexed elements
+ * @param <K>
+ *            concrete type of index keys
+ */
+public abstract class Index<T, K> {
+
+    private final Function<? super T, ? extends K> keyFunction;
+    protected final Map<K, Bucket<T>> entries;
+
+    /**
+     * Elements sharing the same key. Buckets returned by lookups are never changed, but replaced by a changed copy.
+     *
+     * @param <T>
+     *            concrete type of indexed elements
+     */
+    protected static final class Bucket<T> {
+        private final Set<T> items;
+        private final Set<T> view;
+        private volatile boolean shared;
+
+        private Bucket(Set<T> items) {
+            this.items = items;
+            view = Collections.unmodifiableSet(items);
+        }
+
+        /**
+         * Returns an immutable view of all elements for use within the index.
+         *
+         * @return elements
+         */
+        Set<T> items() {
+            return view;
+        }
+
+        private Set<T> share() {
+            shared = true;
+            return view;
+        }
+    }
+
+    /**
+     * Creates a new empty index.
+     *
+     * @param keyFunction
+     *            function computing the key of an element
+     * @param entries
+     *            empty map used to hold all elements per key
+     */
+    protected Index(Function<? super T, ? extends K> keyFunction, Map<K, Bucket<T>> entries) {
+        this.keyFunction = keyFunction;
+        this.entries = entries;
+    }
+
+    /**
+     * Adds the given element to the index.
+     *
+     * @param item
+     *            element to be added
+     */
+    public void add(T item) {
+        K key = keyFunction.apply(item);
+        if (isIndexed(key)) {
+            Bucket<T> bucket = entries.get(key);
+            if (bucket == null || bucket.shared) {
+                bucket = new Bucket<>(bucket == null ? new HashSet<>() : new HashSet<>(bucket.items));
+                entries.put(key, bucket);
+            }
+            bucket.items.add(item);
+        }
+    }
+
+    /**
+     * Removes the given element from the index.
+     *
+     * @param item
+     *            element to be removed
+     */
+    public void remove(T item) {
+        K key = keyFunction.apply(item);
+        Bucket<T> bucket = isIndexed(key) ? entries.get(key) : null;
+        if (bucket == null || !bucket.items.contains(item)) {
+            return;
+        }
+
+        // drop empty keys, shared elements are kept as they are
+        if (bucket.items.size() == 1) {
+            entries.remove(key);
+        } else {
+            if (bucket.shared) {
+                bucket = new Bucket<>(new HashSet<>(bucket.items));
+                entries.put(key, bucket);
+            }
+            bucket.items.remove(item);
+        }
+    }
+
+    /**
+     * Checks if elements with the given key are held in the index.
+     *
+     * @param key
+     *            key of an element
+     * @return true if indexed, false if elements with this key are skipped
+     */
+    protected boolean isIndexed(K key) {
+        return true;
+    }
+
+    /**
+     * Removes all elements from the index.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Replaces all elements in the index.
+     *
+     * @param items
+     *            all elements to be indexed
+     */
+    public void rebuild(Collection<? extends T> items) {
+        clear();
+        items.forEach(this::add);
+    }
+
+    /**
+     * Returns all elements with the given key.
+     *
+     * @param key
+     *            key to look up
+     * @return immutable set of matching elements not affected by later changes, never null
+     */
+    public Set<T> lookup(K key) {
+        Bucket<T> bucket = isIndexed(key) ? entries.get(key) : null;
+        return bucket != null ? bucket.share() : Collections.emptySet();
+    }
+
+    /**
+     * Returns the number of distinct keys.
+     *
+     * @return number of keys
+     */
+    public int keys() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,143 @@
+package de.chrgroth.jsonstore.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Index holding elements ordered by key, supporting range queries and ordered iteration. Elements with a null key are not indexed. Elements sharing the same
+ * key are returned in no particular order.
+ *
+ * @author Christian Groth
+ * @param <T>
+ *            concrete type of indexed elements
+ * @param <K>
+ *            concrete type of index keys
+ */
+public class SortedIndex<T, K> extends Index<T, K> {
+
+    private final NavigableMap<K, Bucket<T>> sortedEntries;
+
+    /**
+     * Creates a new empty index ordering keys using the given comparator.
+     *
+     * @param keyFunction
+     *            function computing the key of an element
+     * @param comparator
+     *            comparator of keys
+     */
+    public SortedIndex(Function<? super T, ? extends K> keyFunction, Comparator<? super K> comparator) {
+        this(keyFunction, new TreeMap<>(comparator));
+    }
+
+    private SortedIndex(Function<? super T, ? extends K> keyFunction, NavigableMap<K, Bucket<T>> entries) {
+        super(keyFunction, entries);
+        sortedEntries = entries;
+    }
+
+    /**
+     * Creates a new empty index ordering keys by their natural order.
+     *
+     * @param keyFunction
+     *            function computing the key of an element
+     * @return index
+     * @param <T>
+     *            concrete type of indexed elements
+     * @param <K>
+     *            concrete type of index keys
+     */
+    public static <T, K extends Comparable<? super K>> SortedIndex<T, K> naturalOrder(Function<? super T, ? extends K> keyFunction) {
+        return new SortedIndex<>(keyFunction, Comparator.<K> naturalOrder());
+    }
+
+    @Override
+    protected boolean isIndexed(K key) {
+        return key != null;
+    }
+
+    /**
+     * Returns all elements with keys in the given range ordered by key.
+     *
+     * @param from
+     *            lowest key, inclusive, null for no lower bound
+     * @param to
+     *            highest key, exclusive, null for no upper bound
+     * @return elements in range, never null, empty if from is greater than to
+     */
+    public List<T> range(K from, K to) {
+
+        // inverted range contains no keys
+        if (from != null && to != null && sortedEntries.comparator().compare(from, to) > 0) {
+            return new ArrayList<>();
+        }
+
+        NavigableMap<K, Bucket<T>> range = sortedEntries;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, false);
+        }
+        return collect(range.values(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns any element with the lowest key.
+     *
+     * @return first element, may be null
+     */
+    public T first() {
+        Map.Entry<K, Bucket<T>> entry = sortedEntries.firstEntry();
+        return entry != null ? entry.getValue().items().iterator().next() : null;
+    }
+
+    /**
+     * Returns any element with the highest key.
+     *
+     * @return last element, may be null
+     */
+    public T last() {
+        Map.Entry<K, Bucket<T>> entry = sortedEntries.lastEntry();
+        return entry != null ? entry.getValue().items().iterator().next() : null;
+    }
+
+    /**
+     * Returns elements in ascending order of keys.
+     *
+     * @param limit
+     *            maximum number of elements
+     * @return ordered elements, never null
+     */
+    public List<T> ascending(int limit) {
+        return collect(sortedEntries.values(), limit);
+    }
+
+    /**
+     * Returns elements in descending order of keys.
+     *
+     * @param limit
+     *            maximum number of elements
+     * @return ordered elements, never null
+     */
+    public List<T> descending(int limit) {
+        return collect(sortedEntries.descendingMap().values(), limit);
+    }
+
+    private List<T> collect(Collection<Bucket<T>> values, int limit) {
+        List<T> result = new ArrayList<>();
+        for (Bucket<T> bucket : values) {
+            for (T item : bucket.items()) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                result.add(item);
+            }
+        }
+        return result;
+    }
+}
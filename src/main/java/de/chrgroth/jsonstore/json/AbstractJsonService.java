@@ -1,8 +1,20 @@
 package de.chrgroth.jsonstore.json;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +35,11 @@ import de.chrgroth.jsonstore.VersionMigrationHandler;
 public abstract class AbstractJsonService implements JsonService {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractJsonService.class);
 
+    /**
+     * Default number of payload items processed per chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
     /**
      * Migrates the given raw payload to target version contained in given metadata with given migration handlers. If no migration is needed or payload is null,
      * nothing will be done.
@@ -92,4 +109,110 @@ public abstract class AbstractJsonService implements JsonService {
         // done
         return migrated;
     }
+
+    /**
+     * Checks if given payload is large enough to be processed in chunks.
+     *
+     * @param metadata
+     *            store metadata
+     * @param payload
+     *            the raw payload to be decoded or the payload to be encoded
+     * @param chunkSize
+     *            max number of items per chunk, 0 or less to disable chunking
+     * @return true if payload consists of more than one chunk, false otherwise
+     */
+    protected boolean isChunked(JsonStoreMetadata<?> metadata, Object payload, int chunkSize) {
+        return chunkSize > 0 && !metadata.isSingleton() && payload instanceof Collection && ((Collection<?>) payload).size() > chunkSize;
+    }
+
+    /**
+     * Decodes the given raw payload items in chunks of given size. Chunks are decoded in parallel using the common fork join pool and merged afterwards
+     * keeping the order of items.
+     *
+     * @param rawItems
+     *            raw payload items
+     * @param chunkSize
+     *            max number of items per chunk
+     * @param chunkDecoder
+     *            decodes a chunk of raw items, called concurrently for different chunks
+     * @return decoded items
+     */
+    protected List<Object> decodeChunked(List<?> rawItems, int chunkSize, Function<List<?>, List<?>> chunkDecoder) {
+
+        // decode chunks in parallel, collecting keeps the encounter order
+        int size = rawItems.size();
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        List<List<?>> decodedChunks = IntStream.range(0, chunks).parallel()
+                .mapToObj(i -> chunkDecoder.apply(rawItems.subList(i * chunkSize, Math.min(size, (i + 1) * chunkSize)))).collect(Collectors.toList());
+
+        // merge
+        List<Object> items = new ArrayList<>(size);
+        decodedChunks.forEach(items::addAll);
+        return items;
+    }
+
+    /**
+     * Encodes the given payload items in chunks of given size. Chunks are encoded in parallel using the common fork join pool, each into a separate buffer,
+     * and passed to the consumer in order of items as soon as they are done. The number of chunks in flight is bounded by {@link #chunksInFlight()}, so memory
+     * needed is limited to these chunks instead of growing with the payload.
+     *
+     * @param items
+     *            payload items, iterated once on the calling thread
+     * @param chunkSize
+     *            max number of items per chunk
+     * @param chunkEncoder
+     *            encodes a chunk of items, called concurrently for different chunks
+     * @param chunkConsumer
+     *            consumes encoded chunks in order of items, called on the calling thread
+     */
+    protected void encodeChunked(Collection<?> items, int chunkSize, Function<List<?>, String> chunkEncoder, Consumer<String> chunkConsumer) {
+        int maxInFlight = chunksInFlight();
+        Deque<CompletableFuture<String>> inFlight = new ArrayDeque<>(maxInFlight);
+        try {
+
+            // submit chunks, consuming the oldest one if too many chunks are in flight
+            Iterator<?> iterator = items.iterator();
+            while (iterator.hasNext()) {
+                List<Object> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                }
+                if (inFlight.size() == maxInFlight) {
+                    chunkConsumer.accept(join(inFlight.removeFirst()));
+                }
+                inFlight.addLast(CompletableFuture.supplyAsync(() -> chunkEncoder.apply(chunk), ForkJoinPool.commonPool()));
+            }
+
+            // consume remaining chunks
+            while (!inFlight.isEmpty()) {
+                chunkConsumer.accept(join(inFlight.removeFirst()));
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * Returns the max number of chunks encoded or waiting to be consumed at the same time by {@link #encodeChunked(Collection, int, Function, Consumer)}.
+     * Defaults to twice the parallelism of the common fork join pool, so workers stay busy while chunks are consumed.
+     *
+     * @return max number of chunks in flight
+     */
+    protected int chunksInFlight() {
+        return 2 * Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,198 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.VersionMigrationHandler;
+import de.chrgroth.jsonstore.json.AbstractJsonService;
+
+/**
+ * Base class for services using {@link Codecs}, handling the metadata envelope, version migration and decoding of payload data. Subclasses define the data
+ * format by encoding values and parsing data into the generic structure used for migration.
+ *
+ * @author Christian Groth
+ */
+abstract class AbstractCodecJsonService extends AbstractJsonService {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractCodecJsonService.class);
+
+    private static final String JSON_FIELD_PAYLOAD = "payload";
+    private static final String JSON_FIELD_PAYLOAD_TYPE_VERSION = "payloadTypeVersion";
+
+    static final Object NO_VALUE = new Object();
+
+    private final Codecs codecs;
+    private final boolean prettyPrint;
+    private final int deserializationChunkSize;
+
+    AbstractCodecJsonService(Codecs codecs, boolean prettyPrint, int deserializationChunkSize) {
+        this.codecs = codecs;
+        this.prettyPrint = prettyPrint;
+        this.deserializationChunkSize = deserializationChunkSize;
+    }
+
+    @Override
+    public String toJson(JsonStoreMetadata<?> metadata) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            StringWriter writer = new StringWriter();
+            encode(metadata, writer, prettyPrint);
+            return writer.toString();
+        } finally {
+            stopwatch.stop();
+            LOG.info(metadata.getUid() + ": converting to json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        }
+    }
+
+    @Override
+    public void toJson(JsonStoreMetadata<?> metadata, Writer writer) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            encode(metadata, writer, prettyPrint);
+        } finally {
+            stopwatch.stop();
+            LOG.info(metadata.getUid() + ": streaming json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        }
+    }
+
+    @Override
+    public String payloadItemToJson(JsonStoreMetadata<?> metadata, Object payloadItem) {
+
+        // never pretty print single items to get single line JSON data
+        StringWriter writer = new StringWriter();
+        encode(payloadItem, writer, false);
+        return writer.toString();
+    }
+
+    Codecs getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Encodes given value to given writer.
+     *
+     * @param value
+     *            value to be encoded
+     * @param writer
+     *            writer to encode to
+     * @param prettyPrint
+     *            true for pretty printed output, false otherwise
+     */
+    abstract void encode(Object value, Writer writer, boolean prettyPrint);
+
+    /**
+     * Parses given data into the generic structure used for migration.
+     *
+     * @param reader
+     *            reader to parse from
+     * @return parsed value or {@link #NO_VALUE} if no content is available
+     */
+    abstract Object parse(Reader reader);
+
+    @Override
+    public Object payloadItemFromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, int payloadTypeVersion, String json) {
+
+        // null guard
+        if (json == null) {
+            return null;
+        }
+
+        // parse to raw generic structure and migrate as single item list
+        Object genericStructureRaw = parse(new StringReader(json));
+        if (genericStructureRaw == NO_VALUE) {
+            return null;
+        }
+        migrateVersions(metadata, migrationHandlers, Collections.singletonList(genericStructureRaw), payloadTypeVersion);
+
+        // decode payload object instance
+        try {
+            return codecs.decodeUntyped(genericStructureRaw);
+        } catch (RuntimeException e) {
+            throw new JsonStoreException("Unable to restore payload item from JSON content: " + metadata.getUid() + "!!", e);
+        }
+    }
+
+    @Override
+    public void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, String json, Consumer<Boolean> successConsumer) {
+
+        // null guard
+        if (json == null || "".equals(json.trim())) {
+            return;
+        }
+
+        // deserialize
+        fromJson(metadata, migrationHandlers, new StringReader(json), successConsumer);
+    }
+
+    @Override
+    public void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, Reader json, Consumer<Boolean> successConsumer) {
+
+        // null guard
+        if (json == null) {
+            return;
+        }
+
+        // parse to raw generic structure, abort on empty content
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Object genericStructureRaw = parse(json);
+        if (genericStructureRaw == NO_VALUE) {
+            return;
+        }
+        stopwatch.stop();
+        LOG.info(metadata.getUid() + ": raw parsing from json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        if (!(genericStructureRaw instanceof Map)) {
+            return;
+        }
+
+        // ensure metadata wrapper
+        @SuppressWarnings("unchecked")
+        Map<String, Object> oldMetadataRaw = (Map<String, Object>) genericStructureRaw;
+        boolean isOfMetadataType = JsonStoreMetadata.class.getName().equals(oldMetadataRaw.get(BeanCodec.CLASS_ATTRIBUTE));
+        if (!isOfMetadataType) {
+            LOG.error(metadata.getUid() + ": json invalid, no/invalid metadata wrapper detected.");
+            return;
+        }
+
+        // migrate payload data
+        Object sourceTypeVersionRaw = oldMetadataRaw.get(JSON_FIELD_PAYLOAD_TYPE_VERSION);
+        Integer sourceTypeVersion = sourceTypeVersionRaw != null ? ((Number) sourceTypeVersionRaw).intValue() : 0;
+        boolean migrated = migrateVersions(metadata, migrationHandlers, oldMetadataRaw.get(JSON_FIELD_PAYLOAD), sourceTypeVersion);
+
+        // decode payload object instances
+        decodePayload(metadata, oldMetadataRaw.get(JSON_FIELD_PAYLOAD));
+
+        // callback after work is done
+        if (successConsumer != null) {
+            successConsumer.accept(migrated);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void decodePayload(JsonStoreMetadata<T> metadata, Object rawPayload) {
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            if (isChunked(metadata, rawPayload, deserializationChunkSize)) {
+                metadata.setPayload((T) decodeChunked((List<?>) rawPayload, deserializationChunkSize, chunk -> (List<?>) codecs.decodeUntyped(chunk)));
+            } else {
+                metadata.setPayload((T) codecs.decodeUntyped(rawPayload));
+            }
+            stopwatch.stop();
+            LOG.info(metadata.getUid() + ": deserializing from json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        } catch (RuntimeException e) {
+            throw new JsonStoreException("Unable to restore from JSON content: " + metadata.getUid() + "!!", e);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+import flexjson.JSON;
+
+/**
+ * Codec for a concrete bean class compiled once on first use. Properties are discovered like flexjson does, using getters, setters and public fields. Each
+ * accessor is bound to a generated lambda using {@link LambdaMetafactory}, or to a {@link MethodHandle} if the class is not accessible from this library, so
+ * no reflection is used per instance. Properties are written sorted by name including the class attribute, which results in the same JSON data as created by
+ * flexjson. Transient properties and properties annotated with {@link JSON#include()} false are not written.
+ *
+ * @author Christian Groth
+ */
+final class BeanCodec {
+
+    static final String CLASS_ATTRIBUTE = "class";
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<?> type;
+    private final Supplier<Object> constructor;
+    private final Property[] readable;
+    private final Map<String, Property> writable;
+
+    /**
+     * Compiled accessors of a single property.
+     */
+    private static final class Property {
+        private final String name;
+        private final Function<Object, Object> getter;
+        private final boolean explicit;
+        private final BiConsumer<Object, Object> setter;
+        private final Decoder decoder;
+
+        private Property(String name, Function<Object, Object> getter, boolean explicit, BiConsumer<Object, Object> setter, Decoder decoder) {
+            this.name = name;
+            this.getter = getter;
+            this.explicit = explicit;
+            this.setter = setter;
+            this.decoder = decoder;
+        }
+    }
+
+    BeanCodec(Class<?> type, Codecs codecs) {
+        this.type = type;
+        constructor = constructor(type);
+
+        // analyze bean properties
+        BeanInfo info;
+        try {
+            info = Introspector.getBeanInfo(type);
+        } catch (IntrospectionException e) {
+            throw new JsonStoreException("unable to analyze " + type.getName() + "!!", e);
+        }
+
+        // sort properties by name like flexjson, class attribute included
+        Map<String, Property> properties = new TreeMap<>();
+        String className = type.getName();
+        properties.put(CLASS_ATTRIBUTE, new Property(CLASS_ATTRIBUTE, bean -> className, false, null, null));
+        for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+            Field field = field(type, descriptor.getName());
+            Method read = descriptor.getReadMethod();
+            Method write = descriptor.getWriteMethod();
+            if (CLASS_ATTRIBUTE.equals(descriptor.getName()) || isTransient(field) || read == null && write == null) {
+                continue;
+            }
+            JSON annotation = annotation(read, field);
+            String name = name(descriptor.getName(), annotation);
+            Function<Object, Object> getter = read != null && isIncluded(annotation) ? getter(read) : null;
+            BiConsumer<Object, Object> setter = write != null ? setter(write) : null;
+            Decoder decoder = write != null ? codecs.decoder(write.getGenericParameterTypes()[0]) : null;
+            properties.put(name, new Property(name, getter, annotation != null, setter, decoder));
+        }
+
+        // public fields not exposed as properties
+        for (Field field : type.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || isTransient(field) || properties.containsKey(field.getName())) {
+                continue;
+            }
+            JSON annotation = field.getAnnotation(JSON.class);
+            String name = name(field.getName(), annotation);
+            Function<Object, Object> getter = isIncluded(annotation) ? getter(field) : null;
+            boolean settable = !Modifier.isFinal(field.getModifiers());
+            properties.put(name, new Property(name, getter, annotation != null, settable ? setter(field) : null, settable ? codecs.decoder(field.getGenericType()) : null));
+        }
+
+        // separate properties for writing and reading
+        readable = properties.values().stream().filter(p -> p.getter != null).toArray(Property[]::new);
+        writable = new HashMap<>();
+        properties.values().stream().filter(p -> p.setter != null).forEach(p -> writable.put(p.name, p));
+    }
+
+    /**
+     * Writes the given bean as object.
+     *
+     * @param bean
+     *            bean to be written
+     * @param writer
+     *            value writer
+     * @param codecs
+     *            codecs used for property values
+     * @throws IOException
+     *             if writing fails
+     */
+    void encode(Object bean, ValueWriter writer, Codecs codecs) throws IOException {
+        writer.beginObject();
+        for (Property property : readable) {
+            Object value = property.getter.apply(bean);
+            if (property.explicit || codecs.isIncluded(value)) {
+                writer.name(property.name);
+                codecs.encode(value, writer);
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Creates a new bean from the given generic structure. Unknown attributes are ignored.
+     *
+     * @param raw
+     *            generic structure
+     * @return created bean
+     */
+    Object decode(Map<String, Object> raw) {
+        if (constructor == null) {
+            throw new JsonStoreException("no default constructor available for " + type.getName() + "!!");
+        }
+        Object bean = constructor.get();
+        for (Map.Entry<String, Object> entry : raw.entrySet()) {
+            Property property = writable.get(entry.getKey());
+            if (property != null) {
+                property.setter.accept(bean, property.decoder.decode(entry.getValue()));
+            }
+        }
+        return bean;
+    }
+
+    private static Field field(Class<?> type, String name) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            try {
+                return current.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isTransient(Field field) {
+        return field != null && Modifier.isTransient(field.getModifiers());
+    }
+
+    private static JSON annotation(Method read, Field field) {
+        JSON annotation = read != null ? read.getAnnotation(JSON.class) : null;
+        if (annotation == null && field != null) {
+            annotation = field.getAnnotation(JSON.class);
+        }
+        return annotation;
+    }
+
+    private static boolean isIncluded(JSON annotation) {
+        return annotation == null || annotation.include();
+    }
+
+    private static String name(String name, JSON annotation) {
+        return annotation != null && !annotation.name().isEmpty() ? annotation.name() : name;
+    }
+
+    /**
+     * Compiles the default constructor of the given class.
+     *
+     * @param type
+     *            class to be instantiated
+     * @return constructor or null if not available
+     */
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> constructor(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            if (isLinkable(constructor)) {
+                MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+                return (Supplier<Object>) LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class), CONSTRUCTOR_TYPE, handle,
+                        MethodType.methodType(type)).getTarget().invokeExact();
+            }
+            MethodHandle handle = LOOKUP.unreflectConstructor(accessible(constructor)).asType(CONSTRUCTOR_TYPE);
+            return () -> {
+                try {
+                    return (Object) handle.invokeExact();
+                } catch (Throwable e) {
+                    throw failure("unable to create " + type.getName() + "!!", e);
+                }
+            };
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Throwable e) {
+            throw failure("unable to access constructor of " + type.getName() + "!!", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(Method method) {
+        try {
+            if (isLinkable(method) && isVisible(method.getReturnType())) {
+                MethodHandle handle = LOOKUP.unreflect(method);
+                return (Function<Object, Object>) LambdaMetafactory.metafactory(LOOKUP, "apply", MethodType.methodType(Function.class), GETTER_TYPE, handle,
+                        MethodType.methodType(method.getReturnType(), method.getDeclaringClass()).wrap()).getTarget().invokeExact();
+            }
+            return getter(LOOKUP.unreflect(accessible(method)), method.getName());
+        } catch (Throwable e) {
+            throw failure("unable to access getter " + method + "!!", e);
+        }
+    }
+
+    private static Function<Object, Object> getter(Field field) {
+        try {
+            return getter(LOOKUP.unreflectGetter(accessible(field)), field.getName());
+        } catch (IllegalAccessException e) {
+            throw new JsonStoreException("unable to access field " + field + "!!", e);
+        }
+    }
+
+    private static Function<Object, Object> getter(MethodHandle handle, String name) {
+        MethodHandle getter = handle.asType(GETTER_TYPE);
+        return bean -> {
+            try {
+                return (Object) getter.invokeExact(bean);
+            } catch (Throwable e) {
+                throw failure("unable to get " + name + "!!", e);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setter(Method method) {
+        try {
+            if (isLinkable(method) && isVisible(method.getParameterTypes()[0])) {
+                MethodHandle handle = LOOKUP.unreflect(method);
+                return (BiConsumer<Object, Object>) LambdaMetafactory.metafactory(LOOKUP, "accept", MethodType.methodType(BiConsumer.class), SETTER_TYPE, handle,
+                        MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]).wrap().changeReturnType(void.class)).getTarget()
+                        .invokeExact();
+            }
+            return setter(LOOKUP.unreflect(accessible(method)), method.getName());
+        } catch (Throwable e) {
+            throw failure("unable to access setter " + method + "!!", e);
+        }
+    }
+
+    private static BiConsumer<Object, Object> setter(Field field) {
+        try {
+            return setter(LOOKUP.unreflectSetter(accessible(field)), field.getName());
+        } catch (IllegalAccessException e) {
+            throw new JsonStoreException("unable to access field " + field + "!!", e);
+        }
+    }
+
+    private static BiConsumer<Object, Object> setter(MethodHandle handle, String name) {
+        MethodHandle setter = handle.asType(SETTER_TYPE);
+        return (bean, value) -> {
+            try {
+                setter.invokeExact(bean, value);
+            } catch (Throwable e) {
+                throw failure("unable to set " + name + "!!", e);
+            }
+        };
+    }
+
+    private static RuntimeException failure(String message, Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new JsonStoreException(message, e instanceof Exception ? (Exception) e : new IllegalStateException(e));
+    }
+
+    private static <A extends AccessibleObject> A accessible(A member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    private static boolean isLinkable(Member member) {
+
+        // generated lambdas are defined by this library and must be able to access the member directly
+        Class<?> declaringClass = member.getDeclaringClass();
+        return Modifier.isPublic(member.getModifiers()) && Modifier.isPublic(declaringClass.getModifiers()) && isVisible(declaringClass);
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        if (type.isPrimitive()) {
+            return true;
+        }
+        if (type.isArray()) {
+            return isVisible(type.getComponentType());
+        }
+        try {
+            return Class.forName(type.getName(), false, BeanCodec.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
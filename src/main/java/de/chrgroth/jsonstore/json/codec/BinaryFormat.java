@@ -0,0 +1,45 @@
+package de.chrgroth.jsonstore.json.codec;
+
+/**
+ * Constants of the binary format used by {@link BinaryJsonService}. Data starts with a table of all strings used, including attribute names and class names,
+ * each as varint length followed by its UTF-8 bytes. The root value follows, each value starting with a tag byte:
+ * <ul>
+ * <li>null, false and true have no further data</li>
+ * <li>integers are written as zigzag encoded varint</li>
+ * <li>decimals are written as IEEE 754 double with 8 bytes if this keeps their textual representation, otherwise as reference to their text in the string
+ * table</li>
+ * <li>strings are written as varint reference to the string table</li>
+ * <li>objects are written with a 4 byte length of their content, so they can be skipped, followed by pairs of varint reference to the attribute name plus one
+ * and value, terminated by 0</li>
+ * <li>arrays are written as values terminated by the end tag</li>
+ * </ul>
+ *
+ * @author Christian Groth
+ */
+final class BinaryFormat {
+
+    static final int TAG_NULL = 0;
+    static final int TAG_FALSE = 1;
+    static final int TAG_TRUE = 2;
+    static final int TAG_INTEGER = 3;
+    static final int TAG_DOUBLE = 4;
+    static final int TAG_NUMBER = 5;
+    static final int TAG_STRING = 6;
+    static final int TAG_OBJECT = 7;
+    static final int TAG_ARRAY = 8;
+    static final int TAG_END = 9;
+
+    static final int OBJECT_END = 0;
+    static final int LENGTH_BYTES = 4;
+    static final int DOUBLE_BYTES = 8;
+
+    static final int VARINT_BITS = 7;
+    static final int VARINT_MASK = 0x7f;
+    static final int VARINT_CONTINUE = 0x80;
+    static final int BYTE_BITS = 8;
+    static final int BYTE_MASK = 0xff;
+
+    private BinaryFormat() {
+
+    }
+}
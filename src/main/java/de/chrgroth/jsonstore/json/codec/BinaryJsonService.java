@@ -0,0 +1,261 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.BufferedReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.google.common.io.BaseEncoding;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+import de.chrgroth.jsonstore.VersionMigrationHandler;
+import de.chrgroth.jsonstore.json.AbstractJsonService;
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonHelper.FlexjsonHelperBuilder;
+import flexjson.JSON;
+
+/**
+ * Service to handle serialization and deserialization using the compact {@link BinaryFormat}. Values are encoded with the same codecs as used by
+ * {@link CodecJsonService}, but all strings including attribute and class names are stored only once, numbers are written as varints or doubles and objects
+ * are length-prefixed. Decoding produces the same generic structure as parsing JSON data, so {@link VersionMigrationHandler} implementations work unchanged.
+ * Storage services are character based, so binary data is written as single line of Base64 text. Base64 adds a third to the size, so binary data is deflated
+ * before by default and prefixed by {@value #COMPRESSED_PREFIX}, or prefixed by {@value #PREFIX} if compression is disabled. File compression won't shrink
+ * compressed data any further. Data not starting with one of the prefixes is read as JSON, so existing JSON files are converted on next save. Use
+ * {@link #exportJson(Reader, Writer)} to inspect stored data.
+ *
+ * @author Christian Groth
+ */
+public class BinaryJsonService extends AbstractCodecJsonService {
+
+    /**
+     * Prefix of uncompressed data written.
+     */
+    public static final String PREFIX = "JSB1:";
+
+    /**
+     * Prefix of compressed data written.
+     */
+    public static final String COMPRESSED_PREFIX = "JSZ1:";
+
+    private static final BaseEncoding BASE64 = BaseEncoding.base64();
+
+    private final boolean compression;
+
+    /**
+     * Builder to configure a new instance of {@link BinaryJsonService}.
+     *
+     * @author Christian Groth
+     */
+    public static class BinaryJsonServiceBuilder {
+
+        private String dateTimePattern;
+        private boolean deepSerialize;
+        private int deserializationChunkSize;
+        private boolean compression;
+
+        private BinaryJsonServiceBuilder() {
+            dateTimePattern = FlexjsonHelperBuilder.DEFAULT_DATE_TIME_PATTERN;
+            deserializationChunkSize = DEFAULT_CHUNK_SIZE;
+            compression = true;
+        }
+
+        /**
+         * Configures given date time pattern for {@link java.util.Date} and {@link java.time.LocalDateTime} values. Defaults to the pattern used by
+         * {@link CodecJsonService}.
+         *
+         * @param dateTimePattern
+         *            date time pattern to be used
+         * @return builder
+         */
+        public BinaryJsonServiceBuilder dateTimePattern(String dateTimePattern) {
+            this.dateTimePattern = dateTimePattern;
+            return this;
+        }
+
+        /**
+         * Sets the deep serialize mode.
+         *
+         * @param deepSerialize
+         *            true for deep serialization, false to skip collections, maps and arrays not annotated using {@link JSON}
+         * @return builder
+         */
+        public BinaryJsonServiceBuilder setDeepSerialize(boolean deepSerialize) {
+            this.deepSerialize = deepSerialize;
+            return this;
+        }
+
+        /**
+         * Sets the number of payload items decoded per chunk on deserialization. Payloads consisting of more than one chunk are decoded in parallel using the
+         * common fork join pool. Defaults to {@link AbstractJsonService#DEFAULT_CHUNK_SIZE}.
+         *
+         * @param deserializationChunkSize
+         *            max number of items per chunk, 0 or less to decode all items at once
+         * @return builder
+         */
+        public BinaryJsonServiceBuilder setDeserializationChunkSize(int deserializationChunkSize) {
+            this.deserializationChunkSize = deserializationChunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the compression mode. Defaults to true.
+         *
+         * @param compression
+         *            true to deflate binary data before encoding as Base64, false otherwise
+         * @return builder
+         */
+        public BinaryJsonServiceBuilder setCompression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Creates the service instance.
+         *
+         * @return created service
+         */
+        public BinaryJsonService build() {
+            if (dateTimePattern == null) {
+                throw new JsonStoreException("dateTimePattern must be provided!!");
+            }
+            return new BinaryJsonService(new Codecs(dateTimePattern, deepSerialize), deserializationChunkSize, compression);
+        }
+    }
+
+    /**
+     * Creates a new builder instance.
+     *
+     * @return builder
+     */
+    public static BinaryJsonServiceBuilder builder() {
+        return new BinaryJsonServiceBuilder();
+    }
+
+    BinaryJsonService(Codecs codecs, int deserializationChunkSize, boolean compression) {
+        super(codecs, false, deserializationChunkSize);
+        this.compression = compression;
+    }
+
+    @Override
+    void encode(Object value, Writer writer, boolean prettyPrint) {
+        try {
+
+            // encode
+            BinaryWriter binaryWriter = new BinaryWriter();
+            getCodecs().encode(value, binaryWriter);
+
+            // write as Base64 text, closing the streams writes pending data and padding but keeps the writer open
+            writer.write(compression ? COMPRESSED_PREFIX : PREFIX);
+            OutputStream out = BASE64.encodingStream(new NonClosingWriter(writer));
+            if (compression) {
+                out = new DeflaterOutputStream(out);
+            }
+            try {
+                binaryWriter.writeTo(out);
+            } finally {
+                out.close();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    Object parse(Reader reader) {
+        try {
+
+            // fall back to JSON if prefix is missing
+            PushbackReader pushbackReader = new PushbackReader(reader, PREFIX.length());
+            char[] prefix = new char[PREFIX.length()];
+            int read = 0;
+            while (read < prefix.length) {
+                int count = pushbackReader.read(prefix, read, prefix.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            String prefixValue = new String(prefix, 0, read);
+            boolean compressed = COMPRESSED_PREFIX.equals(prefixValue);
+            if (!compressed && !PREFIX.equals(prefixValue)) {
+                pushbackReader.unread(prefix, 0, read);
+                JsonParser parser = new JsonParser(pushbackReader);
+                return parser.hasValue() ? parser.nextValue() : NO_VALUE;
+            }
+
+            // decode binary data while reading, the reader is owned by the caller
+            InputStream in = BASE64.decodingStream(new BufferedReader(pushbackReader));
+            if (!compressed) {
+                return new BinaryReader(in).nextValue();
+            }
+            Inflater inflater = new Inflater();
+            try {
+                return new BinaryReader(new InflaterInputStream(in, inflater)).nextValue();
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException e) {
+            throw new JsonStoreException("unable to read binary data!!", e);
+        }
+    }
+
+    /**
+     * Exports given data to pretty printed JSON data. The JSON data reflects the generic structure before migration, so it is not guaranteed to be readable
+     * by other services.
+     *
+     * @param data
+     *            binary or JSON data
+     * @param json
+     *            writer to export JSON data to
+     */
+    public void exportJson(Reader data, Writer json) {
+        Object genericStructureRaw = parse(data);
+        if (genericStructureRaw == NO_VALUE) {
+            return;
+        }
+        try {
+            JsonWriter jsonWriter = new JsonWriter(json, true);
+            getCodecs().encode(genericStructureRaw, jsonWriter);
+            jsonWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Exports given data to pretty printed JSON data.
+     *
+     * @param data
+     *            binary or JSON data
+     * @return exported JSON data
+     * @see #exportJson(Reader, Writer)
+     */
+    public String exportJson(String data) {
+        StringWriter json = new StringWriter();
+        exportJson(new StringReader(data), json);
+        return json.toString();
+    }
+
+    // Base64 streams close their target on close, but the writer is owned by the caller
+    private static final class NonClosingWriter extends FilterWriter {
+
+        private NonClosingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+
+/**
+ * Reads data in {@link BinaryFormat} from an input stream into the generic structure used for migration: maps, lists, strings, booleans, {@link ParsedNumber}
+ * and null. Data is read in blocks, so the stream doesn't need to be buffered. Instances are not thread-safe.
+ *
+ * @author Christian Groth
+ */
+final class BinaryReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long consumed;
+
+    private String[] strings;
+
+    BinaryReader(InputStream in) {
+        this.in = in;
+        buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads the string table and the root value.
+     *
+     * @return root value
+     * @throws IOException
+     *             if reading fails
+     */
+    Object nextValue() throws IOException {
+        try {
+
+            // string table
+            int count = (int) readVarint();
+            strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                strings[i] = new String(readBytes((int) readVarint()), StandardCharsets.UTF_8);
+            }
+
+            // root value
+            return readValue(read());
+        } catch (RuntimeException e) {
+            throw new JsonStoreException("invalid binary data at position " + (consumed + position) + "!!", e);
+        }
+    }
+
+    private Object readValue(int tag) throws IOException {
+        switch (tag) {
+            case BinaryFormat.TAG_NULL:
+                return null;
+            case BinaryFormat.TAG_FALSE:
+                return Boolean.FALSE;
+            case BinaryFormat.TAG_TRUE:
+                return Boolean.TRUE;
+            case BinaryFormat.TAG_INTEGER:
+                long zigzag = readVarint();
+                return new ParsedNumber(Long.toString(zigzag >>> 1 ^ -(zigzag & 1)));
+            case BinaryFormat.TAG_DOUBLE:
+                long bits = 0;
+                for (int i = 0; i < BinaryFormat.DOUBLE_BYTES; i++) {
+                    bits = bits << BinaryFormat.BYTE_BITS | read();
+                }
+                return new ParsedNumber(Double.toString(Double.longBitsToDouble(bits)));
+            case BinaryFormat.TAG_NUMBER:
+                return new ParsedNumber(strings[(int) readVarint()]);
+            case BinaryFormat.TAG_STRING:
+                return strings[(int) readVarint()];
+            case BinaryFormat.TAG_OBJECT:
+                return readObject();
+            case BinaryFormat.TAG_ARRAY:
+                return readArray();
+            default:
+                throw new IllegalStateException("unknown tag " + tag);
+        }
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+
+        // content length is only needed to skip objects
+        for (int i = 0; i < BinaryFormat.LENGTH_BYTES; i++) {
+            read();
+        }
+
+        Map<String, Object> object = new HashMap<>();
+        for (long name = readVarint(); name != BinaryFormat.OBJECT_END; name = readVarint()) {
+            object.put(strings[(int) name - 1], readValue(read()));
+        }
+        return object;
+    }
+
+    private List<Object> readArray() throws IOException {
+        List<Object> array = new ArrayList<>();
+        for (int tag = read(); tag != BinaryFormat.TAG_END; tag = read()) {
+            array.add(readValue(tag));
+        }
+        return array;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = read();
+            value |= (long) (b & BinaryFormat.VARINT_MASK) << shift;
+            shift += BinaryFormat.VARINT_BITS;
+        } while ((b & BinaryFormat.VARINT_CONTINUE) != 0);
+        return value;
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (position == limit) {
+                fill();
+            }
+            int count = Math.min(length - offset, limit - position);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+            offset += count;
+        }
+        return bytes;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position++] & BinaryFormat.BYTE_MASK;
+    }
+
+    private void fill() throws IOException {
+        consumed += limit;
+        position = 0;
+        limit = 0;
+        int count = in.read(buffer);
+        if (count <= 0) {
+            throw new IllegalStateException("unexpected end of data");
+        }
+        limit = count;
+    }
+}
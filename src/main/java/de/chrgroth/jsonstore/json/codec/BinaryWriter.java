@@ -0,0 +1,193 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes values in {@link BinaryFormat}. Values are collected in memory, because the string table is written first. Instances are not thread-safe.
+ *
+ * @author Christian Groth
+ */
+final class BinaryWriter implements ValueWriter {
+
+    private static final int INITIAL_SIZE = 8192;
+    private static final int INITIAL_DEPTH = 16;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final Map<String, Integer> stringReferences;
+    private final List<String> strings;
+
+    private byte[] data;
+    private int size;
+
+    private int[] objectStarts;
+    private int depth;
+
+    BinaryWriter() {
+        stringReferences = new HashMap<>();
+        strings = new ArrayList<>();
+        data = new byte[INITIAL_SIZE];
+        objectStarts = new int[INITIAL_DEPTH];
+    }
+
+    @Override
+    public void beginObject() {
+        write(BinaryFormat.TAG_OBJECT);
+
+        // reserve space for content length
+        if (depth == objectStarts.length) {
+            objectStarts = Arrays.copyOf(objectStarts, depth * 2);
+        }
+        objectStarts[depth++] = size;
+        ensureCapacity(BinaryFormat.LENGTH_BYTES);
+        size += BinaryFormat.LENGTH_BYTES;
+    }
+
+    @Override
+    public void endObject() {
+        writeVarint(BinaryFormat.OBJECT_END);
+
+        // fill in content length
+        int start = objectStarts[--depth];
+        int length = size - start - BinaryFormat.LENGTH_BYTES;
+        for (int i = 0; i < BinaryFormat.LENGTH_BYTES; i++) {
+            data[start + i] = (byte) (length >> BinaryFormat.BYTE_BITS * (BinaryFormat.LENGTH_BYTES - 1 - i));
+        }
+    }
+
+    @Override
+    public void beginArray() {
+        write(BinaryFormat.TAG_ARRAY);
+    }
+
+    @Override
+    public void endArray() {
+        write(BinaryFormat.TAG_END);
+    }
+
+    @Override
+    public void name(String name) {
+        writeVarint(reference(name) + 1);
+    }
+
+    @Override
+    public void value(String value) {
+        write(BinaryFormat.TAG_STRING);
+        writeVarint(reference(value));
+    }
+
+    @Override
+    public void value(boolean value) {
+        write(value ? BinaryFormat.TAG_TRUE : BinaryFormat.TAG_FALSE);
+    }
+
+    @Override
+    public void value(long value) {
+        write(BinaryFormat.TAG_INTEGER);
+        writeVarint(value << 1 ^ value >> Long.SIZE - 1);
+    }
+
+    @Override
+    public void value(Number value) {
+        String text = value.toString();
+
+        // integral numbers
+        boolean decimal = text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0;
+        if (!decimal) {
+            try {
+                value(Long.parseLong(text));
+                return;
+            } catch (NumberFormatException e) {
+                write(BinaryFormat.TAG_NUMBER);
+                writeVarint(reference(text));
+                return;
+            }
+        }
+
+        // decimals as double if text is kept
+        double number = Double.parseDouble(text);
+        if (Double.toString(number).equals(text)) {
+            write(BinaryFormat.TAG_DOUBLE);
+            long bits = Double.doubleToRawLongBits(number);
+            ensureCapacity(BinaryFormat.DOUBLE_BYTES);
+            for (int i = BinaryFormat.DOUBLE_BYTES - 1; i >= 0; i--) {
+                data[size++] = (byte) (bits >> BinaryFormat.BYTE_BITS * i);
+            }
+        } else {
+            write(BinaryFormat.TAG_NUMBER);
+            writeVarint(reference(text));
+        }
+    }
+
+    @Override
+    public void nullValue() {
+        write(BinaryFormat.TAG_NULL);
+    }
+
+    /**
+     * Writes the string table followed by all values written so far.
+     *
+     * @param out
+     *            stream to write to
+     * @throws IOException
+     *             if writing fails
+     */
+    void writeTo(OutputStream out) throws IOException {
+
+        // string table
+        byte[] length = new byte[MAX_VARINT_BYTES];
+        out.write(length, 0, varint(length, 0, strings.size()));
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.write(length, 0, varint(length, 0, bytes.length));
+            out.write(bytes);
+        }
+
+        // values
+        out.write(data, 0, size);
+        out.flush();
+    }
+
+    private int reference(String string) {
+        Integer reference = stringReferences.get(string);
+        if (reference == null) {
+            reference = strings.size();
+            strings.add(string);
+            stringReferences.put(string, reference);
+        }
+        return reference;
+    }
+
+    private void write(int b) {
+        ensureCapacity(1);
+        data[size++] = (byte) (b & BinaryFormat.BYTE_MASK);
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(MAX_VARINT_BYTES);
+        size = varint(data, size, value);
+    }
+
+    private static int varint(byte[] buffer, int position, long value) {
+        int current = position;
+        long remaining = value;
+        while ((remaining & ~BinaryFormat.VARINT_MASK) != 0) {
+            buffer[current++] = (byte) (remaining & BinaryFormat.VARINT_MASK | BinaryFormat.VARINT_CONTINUE);
+            remaining >>>= BinaryFormat.VARINT_BITS;
+        }
+        buffer[current++] = (byte) remaining;
+        return current;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (size + bytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + bytes));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+import de.chrgroth.jsonstore.VersionMigrationHandler;
+import de.chrgroth.jsonstore.json.AbstractJsonService;
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonHelper.FlexjsonHelperBuilder;
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonService;
+import flexjson.JSON;
+
+/**
+ * Service to handle JSON serialization and deserialization using codecs compiled once per payload class. Accessors are bound using method handles and
+ * generated lambdas, so no reflection is needed per instance. JSON data is streamed without any intermediate representation when writing and parsed into the
+ * same generic structure used by {@link FlexjsonService} when reading, so {@link VersionMigrationHandler} implementations work unchanged. The created JSON
+ * data is compatible with {@link FlexjsonService} in both directions, including the class attributes and the metadata envelope. Dates are handled with the
+ * configured date time pattern, custom flexjson type handlers are not supported.
+ *
+ * @author Christian Groth
+ */
+public class CodecJsonService extends AbstractCodecJsonService {
+
+    /**
+     * Builder to configure a new instance of {@link CodecJsonService}.
+     *
+     * @author Christian Groth
+     */
+    public static class CodecJsonServiceBuilder {
+
+        private String dateTimePattern;
+        private boolean deepSerialize;
+        private int deserializationChunkSize;
+        private boolean prettyPrint;
+
+        private CodecJsonServiceBuilder() {
+            dateTimePattern = FlexjsonHelperBuilder.DEFAULT_DATE_TIME_PATTERN;
+            deserializationChunkSize = DEFAULT_CHUNK_SIZE;
+        }
+
+        /**
+         * Configures given date time pattern for {@link java.util.Date} and {@link java.time.LocalDateTime} values. Defaults to the pattern used by
+         * {@link FlexjsonService}.
+         *
+         * @param dateTimePattern
+         *            date time pattern to be used
+         * @return builder
+         */
+        public CodecJsonServiceBuilder dateTimePattern(String dateTimePattern) {
+            this.dateTimePattern = dateTimePattern;
+            return this;
+        }
+
+        /**
+         * Sets the deep serialize mode.
+         *
+         * @param deepSerialize
+         *            true for deep serialization, false to skip collections, maps and arrays not annotated using {@link JSON}
+         * @return builder
+         */
+        public CodecJsonServiceBuilder setDeepSerialize(boolean deepSerialize) {
+            this.deepSerialize = deepSerialize;
+            return this;
+        }
+
+        /**
+         * Sets the pretty print serialization mode.
+         *
+         * @param prettyPrint
+         *            true for pretty print mode, false otherwise
+         * @return builder
+         */
+        public CodecJsonServiceBuilder setPrettyPrint(boolean prettyPrint) {
+            this.prettyPrint = prettyPrint;
+            return this;
+        }
+
+        /**
+         * Sets the number of payload items decoded per chunk on deserialization. Payloads consisting of more than one chunk are decoded in parallel using the
+         * common fork join pool. Defaults to {@link AbstractJsonService#DEFAULT_CHUNK_SIZE}.
+         *
+         * @param deserializationChunkSize
+         *            max number of items per chunk, 0 or less to decode all items at once
+         * @return builder
+         */
+        public CodecJsonServiceBuilder setDeserializationChunkSize(int deserializationChunkSize) {
+            this.deserializationChunkSize = deserializationChunkSize;
+            return this;
+        }
+
+        /**
+         * Creates the service instance.
+         *
+         * @return created service
+         */
+        public CodecJsonService build() {
+            if (dateTimePattern == null) {
+                throw new JsonStoreException("dateTimePattern must be provided!!");
+            }
+            return new CodecJsonService(new Codecs(dateTimePattern, deepSerialize), prettyPrint, deserializationChunkSize);
+        }
+    }
+
+    /**
+     * Creates a new builder instance.
+     *
+     * @return builder
+     */
+    public static CodecJsonServiceBuilder builder() {
+        return new CodecJsonServiceBuilder();
+    }
+
+    CodecJsonService(Codecs codecs, boolean prettyPrint, int deserializationChunkSize) {
+        super(codecs, prettyPrint, deserializationChunkSize);
+    }
+
+    @Override
+    void encode(Object value, Writer writer, boolean prettyPrint) {
+        try {
+            JsonWriter jsonWriter = new JsonWriter(writer, prettyPrint);
+            getCodecs().encode(value, jsonWriter);
+            jsonWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    Object parse(Reader reader) {
+        JsonParser parser = new JsonParser(reader);
+        return parser.hasValue() ? parser.nextValue() : NO_VALUE;
+    }
+}
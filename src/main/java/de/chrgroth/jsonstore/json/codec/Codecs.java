@@ -0,0 +1,583 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+import flexjson.JsonNumber;
+
+/**
+ * Registry of all codecs used by a {@link CodecJsonService}. Encoders are compiled per runtime class and decoders per declared type on first use and cached
+ * afterwards, bean classes are handled by {@link BeanCodec}. All codecs are thread-safe.
+ *
+ * @author Christian Groth
+ */
+final class Codecs {
+
+    private final boolean deepSerialize;
+    private final String dateTimePattern;
+    private final ThreadLocal<SimpleDateFormat> dateFormat;
+    private final DateTimeFormatter dateTimeFormatter;
+
+    private final ConcurrentMap<Class<?>, Encoder> encoders;
+    private final ConcurrentMap<Type, Decoder> decoders;
+    private final ConcurrentMap<Class<?>, BeanCodec> beanCodecs;
+    private final ConcurrentMap<String, Class<?>> classes;
+
+    Codecs(String dateTimePattern, boolean deepSerialize) {
+        this.deepSerialize = deepSerialize;
+        this.dateTimePattern = dateTimePattern;
+        dateFormat = ThreadLocal.withInitial(() -> new SimpleDateFormat(dateTimePattern));
+        dateTimeFormatter = DateTimeFormatter.ofPattern(dateTimePattern);
+
+        encoders = new ConcurrentHashMap<>();
+        decoders = new ConcurrentHashMap<>();
+        beanCodecs = new ConcurrentHashMap<>();
+        classes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Writes the given value.
+     *
+     * @param value
+     *            value to be written, may be null
+     * @param writer
+     *            value writer
+     * @throws IOException
+     *             if writing fails
+     */
+    void encode(Object value, ValueWriter writer) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+            return;
+        }
+        Class<?> type = value.getClass();
+        Encoder encoder = encoders.get(type);
+        if (encoder == null) {
+            encoder = createEncoder(type);
+            Encoder existing = encoders.putIfAbsent(type, encoder);
+            if (existing != null) {
+                encoder = existing;
+            }
+        }
+        encoder.encode(value, writer);
+    }
+
+    /**
+     * Checks if the given bean property value is written. Without deep serialization collections, maps and arrays are skipped like flexjson does unless the
+     * property is annotated explicitly.
+     *
+     * @param value
+     *            property value
+     * @return true if value is written, false otherwise
+     */
+    boolean isIncluded(Object value) {
+        return deepSerialize || value == null || !(value instanceof Iterable || value instanceof Map || value.getClass().isArray());
+    }
+
+    /**
+     * Returns the decoder for the given declared type.
+     *
+     * @param type
+     *            declared type
+     * @return decoder
+     */
+    Decoder decoder(Type type) {
+
+        // decoders for beans are resolved lazily, so recursive types don't recurse here
+        Decoder decoder = decoders.get(type);
+        if (decoder == null) {
+            decoder = createDecoder(type);
+            Decoder existing = decoders.putIfAbsent(type, decoder);
+            if (existing != null) {
+                decoder = existing;
+            }
+        }
+        return decoder;
+    }
+
+    private BeanCodec beanCodec(Class<?> type) {
+        BeanCodec codec = beanCodecs.get(type);
+        if (codec == null) {
+            codec = new BeanCodec(type, this);
+            BeanCodec existing = beanCodecs.putIfAbsent(type, codec);
+            if (existing != null) {
+                codec = existing;
+            }
+        }
+        return codec;
+    }
+
+    private Encoder createEncoder(Class<?> type) {
+        if (type == String.class) {
+            return (value, writer) -> writer.value((String) value);
+        } else if (type == Character.class || type == Class.class || Enum.class.isAssignableFrom(type)) {
+            return (value, writer) -> writer.value(value instanceof Class ? ((Class<?>) value).getName() : value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+        } else if (type == Double.class || type == Float.class) {
+            return (value, writer) -> {
+                double number = ((Number) value).doubleValue();
+                if (Double.isNaN(number) || Double.isInfinite(number)) {
+                    writer.nullValue();
+                } else {
+                    writer.value((Number) value);
+                }
+            };
+        } else if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+            return (value, writer) -> writer.value(((Number) value).longValue());
+        } else if (Number.class.isAssignableFrom(type)) {
+            return (value, writer) -> writer.value((Number) value);
+        } else if (type == Boolean.class) {
+            return (value, writer) -> writer.value(((Boolean) value).booleanValue());
+        } else if (Date.class.isAssignableFrom(type)) {
+            return (value, writer) -> writer.value(dateFormat.get().format((Date) value));
+        } else if (type == LocalDateTime.class) {
+            return (value, writer) -> writer.value(dateTimeFormatter.format((LocalDateTime) value));
+        } else if (type.isArray()) {
+            return type.getComponentType().isPrimitive() ? this::encodePrimitiveArray : (value, writer) -> encodeAll(Arrays.asList((Object[]) value), writer);
+        } else if (Iterable.class.isAssignableFrom(type)) {
+            return (value, writer) -> encodeAll((Iterable<?>) value, writer);
+        } else if (Map.class.isAssignableFrom(type)) {
+            return this::encodeMap;
+        }
+        BeanCodec codec = beanCodec(type);
+        return (value, writer) -> codec.encode(value, writer, this);
+    }
+
+    private void encodeAll(Iterable<?> values, ValueWriter writer) throws IOException {
+        writer.beginArray();
+        for (Object value : values) {
+            encode(value, writer);
+        }
+        writer.endArray();
+    }
+
+    private void encodePrimitiveArray(Object array, ValueWriter writer) throws IOException {
+        writer.beginArray();
+        if (array instanceof int[]) {
+            for (int value : (int[]) array) {
+                writer.value(value);
+            }
+        } else if (array instanceof long[]) {
+            for (long value : (long[]) array) {
+                writer.value(value);
+            }
+        } else if (array instanceof double[]) {
+            for (double value : (double[]) array) {
+                encode(value, writer);
+            }
+        } else if (array instanceof float[]) {
+            for (float value : (float[]) array) {
+                encode(value, writer);
+            }
+        } else if (array instanceof short[]) {
+            for (short value : (short[]) array) {
+                writer.value(value);
+            }
+        } else if (array instanceof byte[]) {
+            for (byte value : (byte[]) array) {
+                writer.value(value);
+            }
+        } else if (array instanceof boolean[]) {
+            for (boolean value : (boolean[]) array) {
+                writer.value(value);
+            }
+        } else {
+            for (char value : (char[]) array) {
+                writer.value(String.valueOf(value));
+            }
+        }
+        writer.endArray();
+    }
+
+    private void encodeMap(Object value, ValueWriter writer) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            writer.name(String.valueOf(entry.getKey()));
+            encode(entry.getValue(), writer);
+        }
+        writer.endObject();
+    }
+
+    private Decoder createDecoder(Type type) {
+
+        // resolve generic types
+        if (type instanceof TypeVariable) {
+            return decoder(((TypeVariable<?>) type).getBounds()[0]);
+        } else if (type instanceof WildcardType) {
+            return decoder(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof GenericArrayType) {
+            Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            return arrayDecoder(rawClass(componentType), decoder(componentType));
+        } else if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            Class<?> rawType = (Class<?>) ((ParameterizedType) type).getRawType();
+            if (Collection.class.isAssignableFrom(rawType)) {
+                return collectionDecoder(rawType, decoder(arguments[0]));
+            } else if (Map.class.isAssignableFrom(rawType)) {
+                return mapDecoder(rawType, keyDecoder(arguments[0]), decoder(arguments[1]));
+            }
+            return decoder(rawType);
+        }
+
+        // concrete classes
+        Class<?> rawType = (Class<?>) type;
+        Decoder scalar = scalarDecoder(rawType);
+        if (scalar != null) {
+            return scalar;
+        } else if (rawType.isArray()) {
+            return arrayDecoder(rawType.getComponentType(), decoder(rawType.getComponentType()));
+        } else if (Collection.class.isAssignableFrom(rawType)) {
+            return collectionDecoder(rawType, this::decodeUntyped);
+        } else if (Map.class.isAssignableFrom(rawType)) {
+            return mapDecoder(rawType, key -> key, this::decodeUntyped);
+        }
+        return raw -> decodeBean(raw, rawType);
+    }
+
+    private Decoder scalarDecoder(Class<?> type) {
+        if (type == Object.class || type == Number.class) {
+            return this::decodeUntyped;
+        } else if (type == String.class) {
+            return raw -> raw != null ? raw.toString() : null;
+        } else if (type == int.class || type == Integer.class) {
+            return numberDecoder(Number::intValue, type.isPrimitive() ? 0 : null);
+        } else if (type == long.class || type == Long.class) {
+            return numberDecoder(Number::longValue, type.isPrimitive() ? 0L : null);
+        } else if (type == double.class || type == Double.class) {
+            return numberDecoder(Number::doubleValue, type.isPrimitive() ? 0.0 : null);
+        } else if (type == float.class || type == Float.class) {
+            return numberDecoder(Number::floatValue, type.isPrimitive() ? 0.0f : null);
+        } else if (type == short.class || type == Short.class) {
+            return numberDecoder(Number::shortValue, type.isPrimitive() ? (short) 0 : null);
+        } else if (type == byte.class || type == Byte.class) {
+            return numberDecoder(Number::byteValue, type.isPrimitive() ? (byte) 0 : null);
+        } else if (type == BigDecimal.class) {
+            return numberDecoder(number -> number instanceof JsonNumber ? ((JsonNumber) number).toBigDecimal() : new BigDecimal(number.toString()), null);
+        } else if (type == BigInteger.class) {
+            return numberDecoder(number -> number instanceof JsonNumber ? ((JsonNumber) number).toBigInteger() : new BigInteger(number.toString()), null);
+        } else if (type == boolean.class || type == Boolean.class) {
+            Object defaultValue = type.isPrimitive() ? Boolean.FALSE : null;
+            return raw -> raw == null ? defaultValue : raw instanceof Boolean ? raw : Boolean.valueOf(raw.toString());
+        } else if (type == char.class || type == Character.class) {
+            Object defaultValue = type.isPrimitive() ? Character.valueOf((char) 0) : null;
+            return raw -> raw == null || raw.toString().isEmpty() ? defaultValue : Character.valueOf(raw.toString().charAt(0));
+        } else if (type == Date.class) {
+            return this::decodeDate;
+        } else if (type == LocalDateTime.class) {
+            return raw -> raw != null ? LocalDateTime.parse(raw.toString(), dateTimeFormatter) : null;
+        } else if (type.isEnum()) {
+            return raw -> raw != null ? enumValue(type, raw.toString()) : null;
+        } else if (type == Class.class) {
+            return raw -> raw != null ? resolveClass(raw.toString()) : null;
+        }
+        return null;
+    }
+
+    private static Decoder numberDecoder(Function<Number, Object> conversion, Object defaultValue) {
+        return raw -> raw == null ? defaultValue : conversion.apply(raw instanceof Number ? (Number) raw : new ParsedNumber(raw.toString()));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object enumValue(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    private Object decodeDate(Object raw) {
+        if (raw == null) {
+            return null;
+        } else if (raw instanceof Number) {
+            return new Date(((Number) raw).longValue());
+        }
+        try {
+            return dateFormat.get().parse(raw.toString());
+        } catch (ParseException e) {
+            throw new JsonStoreException("failed to parse " + raw + " with pattern " + dateTimePattern + "!!", e);
+        }
+    }
+
+    private Decoder keyDecoder(Type type) {
+        return type == String.class || type == Object.class ? key -> key : decoder(type);
+    }
+
+    private Decoder arrayDecoder(Class<?> componentType, Decoder componentDecoder) {
+        if (componentType.isPrimitive()) {
+            return primitiveArrayDecoder(componentType, componentDecoder);
+        }
+        return raw -> {
+            if (raw == null) {
+                return null;
+            }
+            List<?> items = list(raw);
+            Object[] array = (Object[]) Array.newInstance(componentType, items.size());
+            for (int i = 0; i < array.length; i++) {
+                array[i] = componentDecoder.decode(items.get(i));
+            }
+            return array;
+        };
+    }
+
+    private static Decoder primitiveArrayDecoder(Class<?> componentType, Decoder componentDecoder) {
+        return raw -> {
+            if (raw == null) {
+                return null;
+            }
+            List<?> items = list(raw);
+            int length = items.size();
+            if (componentType == int.class) {
+                int[] array = new int[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = (Integer) componentDecoder.decode(items.get(i));
+                }
+                return array;
+            } else if (componentType == long.class) {
+                long[] array = new long[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = (Long) componentDecoder.decode(items.get(i));
+                }
+                return array;
+            } else if (componentType == double.class) {
+                double[] array = new double[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = (Double) componentDecoder.decode(items.get(i));
+                }
+                return array;
+            } else if (componentType == float.class) {
+                float[] array = new float[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = (Float) componentDecoder.decode(items.get(i));
+                }
+                return array;
+            } else if (componentType == short.class) {
+                short[] array = new short[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = (Short) componentDecoder.decode(items.get(i));
+                }
+                return array;
+            } else if (componentType == byte.class) {
+                byte[] array = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = (Byte) componentDecoder.decode(items.get(i));
+                }
+                return array;
+            } else if (componentType == boolean.class) {
+                boolean[] array = new boolean[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = (Boolean) componentDecoder.decode(items.get(i));
+                }
+                return array;
+            }
+            char[] array = new char[length];
+            for (int i = 0; i < length; i++) {
+                array[i] = (Character) componentDecoder.decode(items.get(i));
+            }
+            return array;
+        };
+    }
+
+    private Decoder collectionDecoder(Class<?> type, Decoder elementDecoder) {
+        IntFunction<Collection<Object>> factory = collectionFactory(type);
+        return raw -> {
+            if (raw == null) {
+                return null;
+            }
+            List<?> items = list(raw);
+            Collection<Object> collection = factory.apply(items.size());
+            for (Object item : items) {
+                collection.add(elementDecoder.decode(item));
+            }
+            return collection;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private IntFunction<Collection<Object>> collectionFactory(Class<?> type) {
+        if (type.isAssignableFrom(ArrayList.class)) {
+            return ArrayList::new;
+        } else if (type.isAssignableFrom(HashSet.class)) {
+            return HashSet::new;
+        } else if (type == SortedSet.class || type == NavigableSet.class) {
+            return size -> new TreeSet<>();
+        } else if (type.isAssignableFrom(ArrayDeque.class) || type == Queue.class) {
+            return ArrayDeque::new;
+        }
+        Supplier<Object> constructor = BeanCodec.constructor(type);
+        return size -> (Collection<Object>) instantiate(type, constructor);
+    }
+
+    private Decoder mapDecoder(Class<?> type, Decoder keyDecoder, Decoder valueDecoder) {
+        IntFunction<Map<Object, Object>> factory = mapFactory(type);
+        return raw -> {
+            if (raw == null) {
+                return null;
+            }
+            Map<?, ?> entries = map(raw);
+            Map<Object, Object> map = factory.apply(entries.size());
+            for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                map.put(keyDecoder.decode(entry.getKey()), valueDecoder.decode(entry.getValue()));
+            }
+            return map;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private IntFunction<Map<Object, Object>> mapFactory(Class<?> type) {
+        if (type.isAssignableFrom(HashMap.class)) {
+            return HashMap::new;
+        } else if (type == SortedMap.class || type == NavigableMap.class) {
+            return size -> new TreeMap<>();
+        } else if (type.isAssignableFrom(ConcurrentHashMap.class)) {
+            return ConcurrentHashMap::new;
+        }
+        Supplier<Object> constructor = BeanCodec.constructor(type);
+        return size -> (Map<Object, Object>) instantiate(type, constructor);
+    }
+
+    private static Object instantiate(Class<?> type, Supplier<Object> constructor) {
+        if (constructor == null) {
+            throw new JsonStoreException("no default constructor available for " + type.getName() + "!!");
+        }
+        return constructor.get();
+    }
+
+    /**
+     * Converts the given generic structure without a declared type. Objects with a class attribute become beans, other objects maps, arrays lists and numbers
+     * become longs or doubles like with flexjson.
+     *
+     * @param raw
+     *            generic structure
+     * @return converted instance
+     */
+    Object decodeUntyped(Object raw) {
+        if (raw instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) raw;
+            if (map.containsKey(BeanCodec.CLASS_ATTRIBUTE)) {
+                return decodeBean(raw, Object.class);
+            }
+            Map<Object, Object> result = new HashMap<>(map.size());
+            map.forEach((key, value) -> result.put(key, decodeUntyped(value)));
+            return result;
+        } else if (raw instanceof List) {
+            List<?> list = (List<?>) raw;
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object item : list) {
+                result.add(decodeUntyped(item));
+            }
+            return result;
+        } else if (raw instanceof JsonNumber) {
+            JsonNumber number = (JsonNumber) raw;
+            return number.isDecimal() ? number.toDouble() : number.toLong();
+        }
+        return raw;
+    }
+
+    /**
+     * Converts the given generic structure to a bean of the given type or of the type defined by the class attribute.
+     *
+     * @param raw
+     *            generic structure
+     * @param declaredType
+     *            declared type
+     * @return converted bean, may be null
+     */
+    @SuppressWarnings("unchecked")
+    Object decodeBean(Object raw, Class<?> declaredType) {
+        if (raw == null) {
+            return null;
+        }
+        Map<String, Object> map = map(raw);
+
+        // determine concrete type
+        Class<?> type = declaredType;
+        Object className = map.get(BeanCodec.CLASS_ATTRIBUTE);
+        if (className != null) {
+            type = resolveClass(className.toString());
+            if (!declaredType.isAssignableFrom(type)) {
+                throw new JsonStoreException(type.getName() + " is not assignable to " + declaredType.getName() + "!!");
+            }
+        } else if (declaredType == Object.class) {
+            return decodeUntyped(raw);
+        }
+
+        // create bean
+        return beanCodec(type).decode(map);
+    }
+
+    private Class<?> resolveClass(String name) {
+        Class<?> type = classes.get(name);
+        if (type == null) {
+            try {
+                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                type = Class.forName(name, true, classLoader != null ? classLoader : Codecs.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new JsonStoreException("unable to load class " + name + "!!", e);
+            }
+            Class<?> existing = classes.putIfAbsent(name, type);
+            if (existing != null) {
+                type = existing;
+            }
+        }
+        return type;
+    }
+
+    private static Class<?> rawClass(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof TypeVariable) {
+            return rawClass(((TypeVariable<?>) type).getBounds()[0]);
+        } else if (type instanceof WildcardType) {
+            return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        }
+        return Object.class;
+    }
+
+    private static List<?> list(Object raw) {
+        if (!(raw instanceof List)) {
+            throw new JsonStoreException("expected array but found " + raw + "!!");
+        }
+        return (List<?>) raw;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object raw) {
+        if (!(raw instanceof Map)) {
+            throw new JsonStoreException("expected object but found " + raw + "!!");
+        }
+        return (Map<String, Object>) raw;
+    }
+}
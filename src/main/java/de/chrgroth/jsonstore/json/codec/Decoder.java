@@ -0,0 +1,19 @@
+package de.chrgroth.jsonstore.json.codec;
+
+/**
+ * Precompiled conversion of a generic JSON structure to an instance of a concrete type.
+ *
+ * @author Christian Groth
+ */
+@FunctionalInterface
+interface Decoder {
+
+    /**
+     * Converts the given generic structure.
+     *
+     * @param raw
+     *            generic structure, may be null
+     * @return converted instance, may be null
+     */
+    Object decode(Object raw);
+}
@@ -0,0 +1,24 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+
+/**
+ * Precompiled conversion of instances of a concrete class to JSON or binary data.
+ *
+ * @author Christian Groth
+ */
+@FunctionalInterface
+interface Encoder {
+
+    /**
+     * Writes the given value.
+     *
+     * @param value
+     *            value to be written, never null
+     * @param writer
+     *            value writer
+     * @throws IOException
+     *             if writing fails
+     */
+    void encode(Object value, ValueWriter writer) throws IOException;
+}
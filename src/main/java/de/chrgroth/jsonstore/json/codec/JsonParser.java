@@ -0,0 +1,259 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+
+/**
+ * Parses JSON data read from a reader into the generic structure used for migration: maps, lists, strings, booleans, {@link ParsedNumber} and null. Data is
+ * read in blocks, so the reader doesn't need to be buffered. Instances are not thread-safe.
+ *
+ * @author Christian Groth
+ */
+final class JsonParser {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int HEX_RADIX = 16;
+    private static final int UNICODE_ESCAPE_LENGTH = 4;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private long consumed;
+
+    private final StringBuilder text;
+
+    JsonParser(Reader reader) {
+        this.reader = reader;
+        buffer = new char[BUFFER_SIZE];
+        text = new StringBuilder();
+    }
+
+    /**
+     * Checks if any value is left to be parsed, skipping whitespace.
+     *
+     * @return true if a value is available, false otherwise
+     */
+    boolean hasValue() {
+        return skipWhitespace() >= 0;
+    }
+
+    /**
+     * Parses the next value.
+     *
+     * @return parsed value, may be null
+     */
+    Object nextValue() {
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                position++;
+                return parseObject();
+            case '[':
+                position++;
+                return parseArray();
+            case '"':
+                position++;
+                return parseString();
+            case 't':
+                expectLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                expectLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                expectLiteral("null");
+                return null;
+            case -1:
+                throw error("unexpected end of JSON data");
+            default:
+                if (c == '-' || c >= '0' && c <= '9') {
+                    return parseNumber();
+                }
+                throw error("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private Map<String, Object> parseObject() {
+        Map<String, Object> map = new HashMap<>();
+        if (skipWhitespace() == '}') {
+            position++;
+            return map;
+        }
+        while (true) {
+
+            // key
+            if (skipWhitespace() != '"') {
+                throw error("expected attribute name");
+            }
+            position++;
+            String key = parseString();
+            if (skipWhitespace() != ':') {
+                throw error("expected ':' after attribute " + key);
+            }
+            position++;
+
+            // value
+            map.put(key, nextValue());
+
+            // next attribute or end
+            int c = skipWhitespace();
+            position++;
+            if (c == '}') {
+                return map;
+            } else if (c != ',') {
+                throw error("expected ',' or '}' after attribute " + key);
+            }
+        }
+    }
+
+    private List<Object> parseArray() {
+        List<Object> list = new ArrayList<>();
+        if (skipWhitespace() == ']') {
+            position++;
+            return list;
+        }
+        while (true) {
+            list.add(nextValue());
+            int c = skipWhitespace();
+            position++;
+            if (c == ']') {
+                return list;
+            } else if (c != ',') {
+                throw error("expected ',' or ']' in array");
+            }
+        }
+    }
+
+    private String parseString() {
+        text.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                throw error("unterminated string");
+            }
+
+            // copy plain characters at once
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+            if (position == limit) {
+                continue;
+            }
+
+            // end of string or escape sequence
+            char c = buffer[position++];
+            if (c == '"') {
+                return text.toString();
+            }
+            text.append(parseEscape());
+        }
+    }
+
+    private char parseEscape() {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < UNICODE_ESCAPE_LENGTH; i++) {
+                    int digit = Character.digit(read(), HEX_RADIX);
+                    if (digit < 0) {
+                        throw error("invalid unicode escape sequence");
+                    }
+                    value = value * HEX_RADIX + digit;
+                }
+                return (char) value;
+            default:
+                throw error("invalid escape sequence");
+        }
+    }
+
+    private ParsedNumber parseNumber() {
+        text.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                break;
+            }
+            char c = buffer[position];
+            if (c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                text.append(c);
+                position++;
+            } else {
+                break;
+            }
+        }
+        return new ParsedNumber(text.toString());
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("expected " + literal);
+            }
+        }
+    }
+
+    private int skipWhitespace() {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    private int read() {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() {
+        try {
+            consumed += limit;
+            position = 0;
+            limit = 0;
+            int read = reader.read(buffer);
+            while (read == 0) {
+                read = reader.read(buffer);
+            }
+            if (read < 0) {
+                return false;
+            }
+            limit = read;
+            return true;
+        } catch (IOException e) {
+            throw new JsonStoreException("unable to read JSON data!!", e);
+        }
+    }
+
+    private JsonStoreException error(String message) {
+        return new JsonStoreException(message + " at position " + (consumed + position) + "!!");
+    }
+}
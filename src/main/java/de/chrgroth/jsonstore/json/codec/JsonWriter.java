@@ -0,0 +1,223 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON data to a writer. Output is collected in an internal buffer, so the writer doesn't need to be buffered. Be sure to call {@link #flush()} when
+ * done. Instances are not thread-safe.
+ *
+ * @author Christian Groth
+ */
+final class JsonWriter implements ValueWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int INITIAL_DEPTH = 16;
+    private static final char FIRST_PRINTABLE = ' ';
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int HEX_SHIFT_HIGH = 12;
+    private static final int HEX_SHIFT_MID = 8;
+    private static final int HEX_SHIFT_LOW = 4;
+    private static final int HEX_MASK = 0xf;
+    private static final String INDENT = "  ";
+
+    private final Writer writer;
+    private final boolean prettyPrint;
+    private final char[] buffer;
+    private int position;
+
+    private boolean[] hasElements;
+    private int depth;
+    private boolean afterName;
+
+    JsonWriter(Writer writer, boolean prettyPrint) {
+        this.writer = writer;
+        this.prettyPrint = prettyPrint;
+        buffer = new char[BUFFER_SIZE];
+        hasElements = new boolean[INITIAL_DEPTH];
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        begin('{');
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        end('}');
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        begin('[');
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        end(']');
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+        separate();
+        string(name);
+        write(':');
+        if (prettyPrint) {
+            write(' ');
+        }
+        afterName = true;
+    }
+
+    @Override
+    public void value(String value) throws IOException {
+        separate();
+        string(value);
+    }
+
+    @Override
+    public void value(boolean value) throws IOException {
+        literal(Boolean.toString(value));
+    }
+
+    @Override
+    public void value(long value) throws IOException {
+        literal(Long.toString(value));
+    }
+
+    @Override
+    public void value(Number value) throws IOException {
+        literal(value.toString());
+    }
+
+    @Override
+    public void nullValue() throws IOException {
+        literal("null");
+    }
+
+    private void literal(String literal) throws IOException {
+        separate();
+        write(literal);
+    }
+
+    void flush() throws IOException {
+        writer.write(buffer, 0, position);
+        position = 0;
+        writer.flush();
+    }
+
+    private void begin(char c) throws IOException {
+        separate();
+        write(c);
+        if (++depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        hasElements[depth] = false;
+    }
+
+    private void end(char c) throws IOException {
+        boolean elements = hasElements[depth--];
+        if (prettyPrint && elements) {
+            newline();
+        }
+        write(c);
+    }
+
+    private void separate() throws IOException {
+
+        // values directly follow their attribute name
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+
+        // separate from previous element
+        if (hasElements[depth]) {
+            write(',');
+        }
+        hasElements[depth] = true;
+        if (prettyPrint && depth > 0) {
+            newline();
+        }
+    }
+
+    private void newline() throws IOException {
+        write('\n');
+        for (int i = 0; i < depth; i++) {
+            write(INDENT);
+        }
+    }
+
+    private void string(String value) throws IOException {
+        write('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escaped = escape(c);
+            if (escaped != null || c < FIRST_PRINTABLE) {
+                write(value, start, i);
+                if (escaped != null) {
+                    write(escaped);
+                } else {
+                    write('\\');
+                    write('u');
+                    write(HEX_DIGITS[c >> HEX_SHIFT_HIGH & HEX_MASK]);
+                    write(HEX_DIGITS[c >> HEX_SHIFT_MID & HEX_MASK]);
+                    write(HEX_DIGITS[c >> HEX_SHIFT_LOW & HEX_MASK]);
+                    write(HEX_DIGITS[c & HEX_MASK]);
+                }
+                start = i + 1;
+            }
+        }
+        write(value, start, length);
+        write('"');
+    }
+
+    private static String escape(char c) {
+        switch (c) {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\t':
+                return "\\t";
+            case '\b':
+                return "\\b";
+            case '\f':
+                return "\\f";
+            default:
+                return null;
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (position == buffer.length) {
+            writer.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = c;
+    }
+
+    private void write(String value) throws IOException {
+        write(value, 0, value.length());
+    }
+
+    private void write(String value, int start, int end) throws IOException {
+        int offset = start;
+        while (offset < end) {
+            if (position == buffer.length) {
+                writer.write(buffer, 0, position);
+                position = 0;
+            }
+            int count = Math.min(end - offset, buffer.length - position);
+            value.getChars(offset, offset + count, buffer, position);
+            position += count;
+            offset += count;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import flexjson.JsonNumber;
+
+/**
+ * Number parsed by {@link JsonParser}. Extends {@link JsonNumber}, so migration handlers see the same generic structure as created by flexjson, but converts
+ * without regular expressions.
+ *
+ * @author Christian Groth
+ */
+final class ParsedNumber extends JsonNumber {
+    private static final long serialVersionUID = 1L;
+
+    private final String text;
+    private final boolean decimal;
+
+    ParsedNumber(String text) {
+        super(text);
+        this.text = text;
+        decimal = text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0;
+    }
+
+    @Override
+    public int intValue() {
+        return decimal ? (int) doubleValue() : Integer.parseInt(text);
+    }
+
+    @Override
+    public long longValue() {
+        return decimal ? (long) doubleValue() : Long.parseLong(text);
+    }
+
+    @Override
+    public float floatValue() {
+        return Float.parseFloat(text);
+    }
+
+    @Override
+    public double doubleValue() {
+        return Double.parseDouble(text);
+    }
+
+    @Override
+    public Byte toByte() {
+        return Byte.valueOf((byte) intValue());
+    }
+
+    @Override
+    public Short toShort() {
+        return Short.valueOf((short) intValue());
+    }
+
+    @Override
+    public Integer toInteger() {
+        return Integer.valueOf(intValue());
+    }
+
+    @Override
+    public Long toLong() {
+        return Long.valueOf(longValue());
+    }
+
+    @Override
+    public Float toFloat() {
+        return Float.valueOf(floatValue());
+    }
+
+    @Override
+    public Double toDouble() {
+        return Double.valueOf(doubleValue());
+    }
+
+    @Override
+    public BigInteger toBigInteger() {
+        return decimal ? toBigDecimal().toBigInteger() : new BigInteger(text);
+    }
+
+    @Override
+    public BigDecimal toBigDecimal() {
+        return new BigDecimal(text);
+    }
+
+    @Override
+    public boolean isDecimal() {
+        return decimal;
+    }
+
+    @Override
+    public boolean isLong() {
+        return !decimal;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
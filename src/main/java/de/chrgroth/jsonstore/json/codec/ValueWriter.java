@@ -0,0 +1,101 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.IOException;
+
+/**
+ * Receives the structure of encoded values, implemented for JSON and binary data.
+ *
+ * @author Christian Groth
+ */
+interface ValueWriter {
+
+    /**
+     * Starts a new object.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    void beginObject() throws IOException;
+
+    /**
+     * Ends the current object.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    void endObject() throws IOException;
+
+    /**
+     * Starts a new array.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    void beginArray() throws IOException;
+
+    /**
+     * Ends the current array.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    void endArray() throws IOException;
+
+    /**
+     * Writes the name of the next object attribute.
+     *
+     * @param name
+     *            attribute name
+     * @throws IOException
+     *             if writing fails
+     */
+    void name(String name) throws IOException;
+
+    /**
+     * Writes a string.
+     *
+     * @param value
+     *            string to be written
+     * @throws IOException
+     *             if writing fails
+     */
+    void value(String value) throws IOException;
+
+    /**
+     * Writes a boolean.
+     *
+     * @param value
+     *            boolean to be written
+     * @throws IOException
+     *             if writing fails
+     */
+    void value(boolean value) throws IOException;
+
+    /**
+     * Writes an integral number.
+     *
+     * @param value
+     *            number to be written
+     * @throws IOException
+     *             if writing fails
+     */
+    void value(long value) throws IOException;
+
+    /**
+     * Writes any other number exactly as represented by {@link Number#toString()}.
+     *
+     * @param value
+     *            number to be written
+     * @throws IOException
+     *             if writing fails
+     */
+    void value(Number value) throws IOException;
+
+    /**
+     * Writes null.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    void nullValue() throws IOException;
+}
@@ -1,20 +1,24 @@
 package de.chrgroth.jsonstore.json.flexjson;
 
+import java.lang.reflect.Method;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import de.chrgroth.jsonstore.JsonStoreException;
 import de.chrgroth.jsonstore.json.flexjson.custom.AbstractFlexjsonTypeHandler;
 import de.chrgroth.jsonstore.json.flexjson.custom.DateTimeTypeHandler;
 import de.chrgroth.jsonstore.json.flexjson.custom.DateTypeHandler;
 import de.chrgroth.jsonstore.json.flexjson.custom.StringInterningHandler;
 import flexjson.JSONDeserializer;
 import flexjson.JSONSerializer;
+import flexjson.ObjectBinder;
 
 /**
- * Helper class encapsulating Flexjson configuration.
+ * Helper class encapsulating Flexjson configuration. Serializers and deserializers are created per thread, so the helper can be used by concurrent
+ * saves and loads.
  *
  * @author Christian Groth
  */
@@ -124,18 +128,38 @@ public class FlexjsonHelper {
         return new FlexjsonHelperBuilder();
     }
 
-    private JSONSerializer serializer;
-    private JSONSerializer prettyPrintSerializer;
-    private JSONDeserializer<?> deserializer;
+    private static final Method CREATE_OBJECT_BINDER = resolveCreateObjectBinder();
+
+    private final ThreadLocal<JSONSerializer> serializer;
+    private final ThreadLocal<JSONSerializer> prettyPrintSerializer;
+    private final ThreadLocal<JSONDeserializer<?>> deserializer;
+    private final boolean pathHandlers;
 
     protected FlexjsonHelper(Map<Class<?>, AbstractFlexjsonTypeHandler> handlers, Map<String, AbstractFlexjsonTypeHandler> pathHandlers) {
 
+        // flexjson instances cache type lookups internally and are not thread-safe, so each thread uses its own ones
+        Map<Class<?>, AbstractFlexjsonTypeHandler> handlersCopy = new HashMap<>(handlers);
+        Map<String, AbstractFlexjsonTypeHandler> pathHandlersCopy = new HashMap<>(pathHandlers);
+
         // create serializers
-        serializer = createSerializer(handlers, pathHandlers, false);
-        prettyPrintSerializer = createSerializer(handlers, pathHandlers, true);
+        serializer = ThreadLocal.withInitial(() -> createSerializer(handlersCopy, pathHandlersCopy, false));
+        prettyPrintSerializer = ThreadLocal.withInitial(() -> createSerializer(handlersCopy, pathHandlersCopy, true));
 
         // create deserializers
-        deserializer = createDeserializer(handlers, pathHandlers);
+        deserializer = ThreadLocal.withInitial(() -> createDeserializer(handlersCopy, pathHandlersCopy));
+        this.pathHandlers = !pathHandlersCopy.isEmpty();
+    }
+
+    private static Method resolveCreateObjectBinder() {
+
+        // flexjson does not expose the binder, so the method is resolved once instead of on each deserialization
+        try {
+            Method method = JSONDeserializer.class.getDeclaredMethod("createObjectBinder");
+            method.setAccessible(true);
+            return method;
+        } catch (ReflectiveOperationException | SecurityException e) {
+            throw new JsonStoreException("unable to access flexjson object binder!!", e);
+        }
     }
 
     protected JSONSerializer createSerializer(Map<Class<?>, AbstractFlexjsonTypeHandler> handlers, Map<String, AbstractFlexjsonTypeHandler> pathHandlers, boolean prettyPrint) {
@@ -154,22 +178,42 @@ public class FlexjsonHelper {
     }
 
     /**
-     * Returns a preconfigured serializer.
+     * Checks if any path based handlers are configured. Path based handlers depend on the position of values within the whole JSON data.
+     *
+     * @return true if path based handlers are configured, false otherwise
+     */
+    public boolean hasPathHandlers() {
+        return pathHandlers;
+    }
+
+    /**
+     * Returns a preconfigured serializer for the current thread.
      *
      * @param prettyPrint
      *            pretty print mode
      * @return serializer
      */
     public JSONSerializer serializer(boolean prettyPrint) {
-        return prettyPrint ? prettyPrintSerializer : serializer;
+        return prettyPrint ? prettyPrintSerializer.get() : serializer.get();
     }
 
     /**
-     * Returns a preconfigured deserializer.
+     * Returns a preconfigured deserializer for the current thread.
      *
      * @return deserializer
      */
     public JSONDeserializer<?> deserializer() {
-        return deserializer;
+        return deserializer.get();
+    }
+
+    /**
+     * Creates a new object binder using the preconfigured deserializer of the current thread. Each binder must be used by a single thread only.
+     *
+     * @return object binder
+     * @throws ReflectiveOperationException
+     *             if binder can't be created
+     */
+    public ObjectBinder createObjectBinder() throws ReflectiveOperationException {
+        return (ObjectBinder) CREATE_OBJECT_BINDER.invoke(deserializer());
     }
 }
@@ -1,9 +1,19 @@
 package de.chrgroth.jsonstore.json.flexjson;
 
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -19,7 +29,6 @@ import de.chrgroth.jsonstore.json.AbstractJsonService;
 import de.chrgroth.jsonstore.json.flexjson.FlexjsonHelper.FlexjsonHelperBuilder;
 import de.chrgroth.jsonstore.json.flexjson.custom.AbstractFlexjsonTypeHandler;
 import de.chrgroth.jsonstore.json.flexjson.custom.StringInterningHandler;
-import flexjson.JSONDeserializer;
 import flexjson.JSONSerializer;
 import flexjson.JSONTokener;
 import flexjson.JsonNumber;
@@ -36,6 +45,7 @@ public class FlexjsonService extends AbstractJsonService {
     private static final String JSON_FIELD_CLASS = "class";
     private static final String JSON_FIELD_PAYLOAD = "payload";
     private static final String JSON_FIELD_PAYLOAD_TYPE_VERSION = "payloadTypeVersion";
+    private static final String JSON_EMPTY_PAYLOAD = "\"" + JSON_FIELD_PAYLOAD + "\":[]";
 
     private final FlexjsonHelper flexjsonHelper;
     private final Map<String, FlexjsonHelper> flexjsonHelperPerStore;
@@ -46,6 +56,9 @@ public class FlexjsonService extends AbstractJsonService {
     private final boolean prettyPrint;
     private final Map<String, Boolean> prettyPrintPerStore;
 
+    private final int serializationChunkSize;
+    private final int deserializationChunkSize;
+
     /**
      * Builder to configure a new instance of {@link FlexjsonService}.
      *
@@ -62,11 +75,16 @@ public class FlexjsonService extends AbstractJsonService {
         private boolean prettyPrint;
         private final Map<String, Boolean> prettyPrintPerStore;
 
+        private int serializationChunkSize;
+        private int deserializationChunkSize;
+
         private FlexjsonServiceBuilder() {
             flexjsonHelperBuilder = FlexjsonHelper.builder();
             flexjsonHelperBuilderPerStore = new HashMap<>();
             deepSerializePerStore = new HashMap<>();
             prettyPrintPerStore = new HashMap<>();
+            serializationChunkSize = DEFAULT_CHUNK_SIZE;
+            deserializationChunkSize = DEFAULT_CHUNK_SIZE;
         }
 
         /**
@@ -240,6 +258,34 @@ public class FlexjsonService extends AbstractJsonService {
             return this;
         }
 
+        /**
+         * Sets the number of payload items serialized per chunk. Payloads consisting of more than one chunk are serialized in parallel using the common fork
+         * join pool and written in order as soon as they are done, creating the same JSON data. Only a bounded number of serialized chunks is held in memory at
+         * the same time, see {@link AbstractJsonService#chunksInFlight()}. Payloads of stores using pretty print mode or path based handlers are always
+         * serialized at once. Defaults to {@link AbstractJsonService#DEFAULT_CHUNK_SIZE}.
+         *
+         * @param serializationChunkSize
+         *            max number of items per chunk, 0 or less to serialize all items at once
+         * @return builder
+         */
+        public FlexjsonServiceBuilder setSerializationChunkSize(int serializationChunkSize) {
+            this.serializationChunkSize = serializationChunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of payload items bound per chunk on deserialization. Payloads consisting of more than one chunk are bound in parallel using the
+         * common fork join pool. Payloads of stores using path based handlers are always bound at once. Defaults to {@link AbstractJsonService#DEFAULT_CHUNK_SIZE}.
+         *
+         * @param deserializationChunkSize
+         *            max number of items per chunk, 0 or less to bind all items at once
+         * @return builder
+         */
+        public FlexjsonServiceBuilder setDeserializationChunkSize(int deserializationChunkSize) {
+            this.deserializationChunkSize = deserializationChunkSize;
+            return this;
+        }
+
         /**
          * Creates the service instance.
          *
@@ -248,7 +294,8 @@ public class FlexjsonService extends AbstractJsonService {
         public FlexjsonService build() {
             Map<String, FlexjsonHelper> flexjsonHelperPerStore = flexjsonHelperBuilderPerStore.entrySet().stream()
                     .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue().build()));
-            return new FlexjsonService(flexjsonHelperBuilder.build(), flexjsonHelperPerStore, deepSerialize, deepSerializePerStore, prettyPrint, prettyPrintPerStore);
+            return new FlexjsonService(flexjsonHelperBuilder.build(), flexjsonHelperPerStore, deepSerialize, deepSerializePerStore, prettyPrint, prettyPrintPerStore,
+                    serializationChunkSize, deserializationChunkSize);
         }
     }
 
@@ -262,7 +309,7 @@ public class FlexjsonService extends AbstractJsonService {
     }
 
     protected FlexjsonService(FlexjsonHelper flexjsonHelper, Map<String, FlexjsonHelper> flexjsonHelperPerStore, boolean deepSerialize, Map<String, Boolean> deepSerializePerStore,
-            boolean prettyPrint, Map<String, Boolean> prettyPrintPerStore) {
+            boolean prettyPrint, Map<String, Boolean> prettyPrintPerStore, int serializationChunkSize, int deserializationChunkSize) {
 
         this.flexjsonHelper = flexjsonHelper;
         this.flexjsonHelperPerStore = new HashMap<>();
@@ -281,25 +328,132 @@ public class FlexjsonService extends AbstractJsonService {
         if (prettyPrintPerStore != null) {
             this.prettyPrintPerStore.putAll(prettyPrintPerStore);
         }
+
+        this.serializationChunkSize = serializationChunkSize;
+        this.deserializationChunkSize = deserializationChunkSize;
     }
 
     @Override
     public String toJson(JsonStoreMetadata<?> metadata) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         try {
-            final String uid = metadata.getUid();
-
-            final boolean prettyPrintForStore = prettyPrintPerStore.getOrDefault(metadata.getUid(), prettyPrint);
-            final JSONSerializer serializer = resolveFlexjsonHelper(uid).serializer(prettyPrintForStore);
-
-            final boolean deepSerializeForStore = deepSerializePerStore.getOrDefault(metadata.getUid(), deepSerialize);
-            return deepSerializeForStore ? serializer.deepSerialize(metadata) : serializer.serialize(metadata);
+            if (isSerializedChunked(metadata)) {
+                StringWriter writer = new StringWriter();
+                serializeChunked(metadata, writer);
+                return writer.toString();
+            }
+            final JSONSerializer serializer = resolveSerializer(metadata);
+            return isDeepSerialize(metadata) ? serializer.deepSerialize(metadata) : serializer.serialize(metadata);
         } finally {
             stopwatch.stop();
             LOG.info(metadata.getUid() + ": converting to json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
         }
     }
 
+    @Override
+    public void toJson(JsonStoreMetadata<?> metadata, Writer writer) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            if (isSerializedChunked(metadata)) {
+                serializeChunked(metadata, writer);
+                return;
+            }
+            final JSONSerializer serializer = resolveSerializer(metadata);
+            if (isDeepSerialize(metadata)) {
+                serializer.deepSerialize(metadata, writer);
+            } else {
+                serializer.serialize(metadata, writer);
+            }
+        } finally {
+            stopwatch.stop();
+            LOG.info(metadata.getUid() + ": streaming json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        }
+    }
+
+    private boolean isSerializedChunked(JsonStoreMetadata<?> metadata) {
+
+        // pretty printed items are indented depending on their position and paths depend on the whole JSON data
+        boolean prettyPrintForStore = prettyPrintPerStore.getOrDefault(metadata.getUid(), prettyPrint);
+        return !prettyPrintForStore && isChunked(metadata, metadata.getPayload(), serializationChunkSize) && !resolveFlexjsonHelper(metadata.getUid()).hasPathHandlers();
+    }
+
+    private void serializeChunked(JsonStoreMetadata<?> metadata, Writer writer) {
+
+        // serialize envelope without payload items
+        JsonStoreMetadata<List<Object>> envelope = new JsonStoreMetadata<>();
+        envelope.setUid(metadata.getUid());
+        envelope.setPayloadTypeVersion(metadata.getPayloadTypeVersion());
+        envelope.setSingleton(metadata.isSingleton());
+        envelope.setCreated(metadata.getCreated());
+        envelope.setModified(metadata.getModified());
+        envelope.setPayload(new ArrayList<>());
+        final JSONSerializer serializer = resolveFlexjsonHelper(metadata.getUid()).serializer(false);
+        String envelopeJson = isDeepSerialize(metadata) ? serializer.deepSerialize(envelope) : serializer.serialize(envelope);
+        int payloadEnd = envelopeJson.indexOf(JSON_EMPTY_PAYLOAD) + JSON_EMPTY_PAYLOAD.length() - 1;
+
+        try {
+            writer.write(envelopeJson, 0, payloadEnd);
+
+            // serialize payload chunks in parallel, each using the serializer of the current thread, and write them in order dropping their brackets
+            AtomicBoolean first = new AtomicBoolean(true);
+            encodeChunked((Collection<?>) metadata.getPayload(), serializationChunkSize, chunk -> {
+                final JSONSerializer chunkSerializer = resolveFlexjsonHelper(metadata.getUid()).serializer(false);
+                return isDeepSerialize(metadata) ? chunkSerializer.deepSerialize(chunk) : chunkSerializer.serialize(chunk);
+            }, chunk -> {
+                try {
+                    if (!first.getAndSet(false)) {
+                        writer.write(',');
+                    }
+                    writer.write(chunk, 1, chunk.length() - 2);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            writer.write(envelopeJson, payloadEnd, envelopeJson.length() - payloadEnd);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String payloadItemToJson(JsonStoreMetadata<?> metadata, Object payloadItem) {
+
+        // never pretty print single items to get single line JSON data
+        final JSONSerializer serializer = resolveFlexjsonHelper(metadata.getUid()).serializer(false);
+        return isDeepSerialize(metadata) ? serializer.deepSerialize(payloadItem) : serializer.serialize(payloadItem);
+    }
+
+    @Override
+    public Object payloadItemFromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, int payloadTypeVersion, String json) {
+
+        // null guard
+        if (json == null) {
+            return null;
+        }
+
+        // deserialize to raw generic structure and migrate as single item list
+        Object genericStructureRaw = new JSONTokener(json).nextValue();
+        migrateVersions(metadata, migrationHandlers, Collections.singletonList(genericStructureRaw), payloadTypeVersion);
+
+        // process deserialization to payload object instance
+        try {
+            return createObjectBinder(metadata.getUid()).bind(genericStructureRaw);
+        } catch (Exception e) {
+            throw new JsonStoreException("Unable to restore payload item from JSON content: " + metadata.getUid() + "!!", e);
+        }
+    }
+
+    private JSONSerializer resolveSerializer(JsonStoreMetadata<?> metadata) {
+        final boolean prettyPrintForStore = prettyPrintPerStore.getOrDefault(metadata.getUid(), prettyPrint);
+        return resolveFlexjsonHelper(metadata.getUid()).serializer(prettyPrintForStore);
+    }
+
+    private boolean isDeepSerialize(JsonStoreMetadata<?> metadata) {
+        return deepSerializePerStore.getOrDefault(metadata.getUid(), deepSerialize);
+    }
+
     @Override
     public void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, String json, Consumer<Boolean> successConsumer) {
 
@@ -308,9 +462,28 @@ public class FlexjsonService extends AbstractJsonService {
             return;
         }
 
-        // deserialize to raw generic structure
+        // deserialize
+        fromJson(metadata, migrationHandlers, new StringReader(json), successConsumer);
+    }
+
+    @Override
+    public void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, Reader json, Consumer<Boolean> successConsumer) {
+
+        // null guard
+        if (json == null) {
+            return;
+        }
+
+        // abort on empty content
         Stopwatch stopwatch = Stopwatch.createStarted();
-        Object genericStructureRaw = new JSONTokener(json).nextValue();
+        JSONTokener tokener = new JSONTokener(json);
+        if (tokener.nextClean() == 0) {
+            return;
+        }
+        tokener.back();
+
+        // deserialize to raw generic structure
+        Object genericStructureRaw = tokener.nextValue();
         stopwatch.stop();
         LOG.info(metadata.getUid() + ": raw parsing from json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
         if (!(genericStructureRaw instanceof Map)) {
@@ -355,16 +528,19 @@ public class FlexjsonService extends AbstractJsonService {
         // proceed with deserialization
         try {
 
-            // TODO for the moment this is a bad hack to get the binder instance!!
             Stopwatch stopwatch = Stopwatch.createStarted();
-            JSONDeserializer<?> deserializer = resolveFlexjsonHelper(metadata.getUid()).deserializer();
-            Method method = deserializer.getClass().getDeclaredMethod("createObjectBinder");
-            method.setAccessible(true);
-            ObjectBinder binder = (ObjectBinder) method.invoke(deserializer);
+            Object rawPayload = oldMetadataRaw.get(JSON_FIELD_PAYLOAD);
+            if (isChunked(metadata, rawPayload, deserializationChunkSize) && !resolveFlexjsonHelper(metadata.getUid()).hasPathHandlers()) {
+
+                // payload item deserialization in parallel chunks, each using its own binder
+                metadata.setPayload((T) decodeChunked((List<?>) rawPayload, deserializationChunkSize, chunk -> bindChunk(metadata.getUid(), chunk)));
+            } else {
 
-            // metadata deserialization
-            JsonStoreMetadata<T> oldMetadata = (JsonStoreMetadata<T>) binder.bind(oldMetadataRaw);
-            metadata.setPayload(oldMetadata.getPayload());
+                // metadata deserialization
+                ObjectBinder binder = createObjectBinder(metadata.getUid());
+                JsonStoreMetadata<T> oldMetadata = (JsonStoreMetadata<T>) binder.bind(oldMetadataRaw);
+                metadata.setPayload(oldMetadata.getPayload());
+            }
 
             stopwatch.stop();
             LOG.info(metadata.getUid() + ": deserializing from json took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
@@ -373,6 +549,23 @@ public class FlexjsonService extends AbstractJsonService {
         }
     }
 
+    private List<Object> bindChunk(String uid, List<?> rawItems) {
+        try {
+            ObjectBinder binder = createObjectBinder(uid);
+            List<Object> items = new ArrayList<>(rawItems.size());
+            for (Object rawItem : rawItems) {
+                items.add(binder.bind(rawItem));
+            }
+            return items;
+        } catch (ReflectiveOperationException e) {
+            throw new JsonStoreException("Unable to create object binder: " + uid + "!!", e);
+        }
+    }
+
+    protected ObjectBinder createObjectBinder(String uid) throws ReflectiveOperationException {
+        return resolveFlexjsonHelper(uid).createObjectBinder();
+    }
+
     protected FlexjsonHelper resolveFlexjsonHelper(String uid) {
         return flexjsonHelperPerStore.getOrDefault(uid, flexjsonHelper);
     }
@@ -0,0 +1,57 @@
+package de.chrgroth.jsonstore.metrics;
+
+/**
+ * Simplified metrics for an asynchronous write-behind storage service.
+ *
+ * @author Christian Groth
+ */
+public class WriteBehindMetrics {
+
+    private final long queueDepth;
+    private final long submittedWrites;
+    private final long coalescedWrites;
+    private final long completedWrites;
+    private final long failedWrites;
+
+    /**
+     * Creates new metrics with the given values.
+     *
+     * @param queueDepth
+     *            number of writes waiting to be processed
+     * @param submittedWrites
+     *            number of all submitted writes
+     * @param coalescedWrites
+     *            number of writes dropped in favor of newer writes for the same store
+     * @param completedWrites
+     *            number of processed writes
+     * @param failedWrites
+     *            number of writes failed during processing
+     */
+    public WriteBehindMetrics(long queueDepth, long submittedWrites, long coalescedWrites, long completedWrites, long failedWrites) {
+        this.queueDepth = queueDepth;
+        this.submittedWrites = submittedWrites;
+        this.coalescedWrites = coalescedWrites;
+        this.completedWrites = completedWrites;
+        this.failedWrites = failedWrites;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getSubmittedWrites() {
+        return submittedWrites;
+    }
+
+    public long getCoalescedWrites() {
+        return coalescedWrites;
+    }
+
+    public long getCompletedWrites() {
+        return completedWrites;
+    }
+
+    public long getFailedWrites() {
+        return failedWrites;
+    }
+}
@@ -0,0 +1,210 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+
+/**
+ * Durability policy of {@link FileStorageService} controlling if and how written files are forced to disk. Without syncing durability depends on the operating
+ * system. Syncing each write is safe but slow. Group commit forces all files written by concurrent writers within the configured time window at once, so
+ * writers share a single sync instead of paying one each. Writers always wait until their data has been forced.
+ *
+ * @author Christian Groth
+ */
+public final class Durability {
+
+    private static final Durability NONE = new Durability(Mode.NONE, 0, 1);
+    private static final Durability SYNC = new Durability(Mode.SYNC, 0, 1);
+
+    /**
+     * Supported sync modes.
+     */
+    private enum Mode {
+        NONE, SYNC, GROUP_COMMIT
+    }
+
+    private final Mode mode;
+    private final long intervalMillis;
+    private final int maxWrites;
+
+    private final AtomicLong commits;
+    private Batch batch;
+
+    /**
+     * Files to be forced within a single group commit.
+     */
+    private static final class Batch {
+        private final Set<Path> paths = new LinkedHashSet<>();
+        private int writes;
+        private final CountDownLatch committed = new CountDownLatch(1);
+        private IOException failure;
+    }
+
+    private Durability(Mode mode, long intervalMillis, int maxWrites) {
+        this.mode = mode;
+        this.intervalMillis = intervalMillis;
+        this.maxWrites = maxWrites;
+        commits = new AtomicLong();
+    }
+
+    /**
+     * Never forces any file, durability depends on the operating system.
+     *
+     * @return durability policy
+     */
+    public static Durability none() {
+        return NONE;
+    }
+
+    /**
+     * Forces each written file right away.
+     *
+     * @return durability policy
+     */
+    public static Durability sync() {
+        return SYNC;
+    }
+
+    /**
+     * Forces all files written within the given time window or until the given number of writes is reached at once.
+     *
+     * @param intervalMillis
+     *            maximum time in milliseconds a write waits for further writes to join the group commit
+     * @param maxWrites
+     *            number of writes forcing the group commit right away
+     * @return durability policy
+     */
+    public static Durability groupCommit(long intervalMillis, int maxWrites) {
+        if (intervalMillis < 0) {
+            throw new JsonStoreException("group commit interval must not be negative!!");
+        }
+        if (maxWrites < 1) {
+            throw new JsonStoreException("group commit writes must be positive!!");
+        }
+        return new Durability(Mode.GROUP_COMMIT, intervalMillis, maxWrites);
+    }
+
+    /**
+     * Forces the given files or directories to disk according to this policy and waits until done.
+     *
+     * @param paths
+     *            paths to be forced
+     * @throws IOException
+     *             if any path can't be forced
+     */
+    void force(Path... paths) throws IOException {
+        switch (mode) {
+            case NONE:
+                break;
+            case SYNC:
+                commits.incrementAndGet();
+                forceAll(Arrays.asList(paths));
+                break;
+            case GROUP_COMMIT:
+                groupCommit(paths);
+                break;
+            default:
+                throw new JsonStoreException("unknown durability mode " + mode + "!!");
+        }
+    }
+
+    private void groupCommit(Path... paths) throws IOException {
+
+        // join current batch or start a new one
+        Batch joined;
+        boolean leader;
+        synchronized (this) {
+            leader = batch == null;
+            if (leader) {
+                batch = new Batch();
+            }
+            joined = batch;
+            joined.paths.addAll(Arrays.asList(paths));
+            joined.writes++;
+            if (joined.writes >= maxWrites) {
+                notifyAll();
+            }
+        }
+
+        // the first writer waits for others to join and commits for all of them
+        if (leader) {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + intervalMillis;
+                long remaining = intervalMillis;
+                while (joined.writes < maxWrites && remaining > 0) {
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                batch = null;
+            }
+            commits.incrementAndGet();
+            try {
+                forceAll(joined.paths);
+            } catch (IOException e) {
+                joined.failure = e;
+            } finally {
+                joined.committed.countDown();
+            }
+        } else {
+            try {
+                joined.committed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for group commit", e);
+            }
+        }
+
+        // report failure to all writers
+        if (joined.failure != null) {
+            throw new IOException("group commit failed", joined.failure);
+        }
+    }
+
+    private static void forceAll(Iterable<Path> paths) throws IOException {
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+
+                // persists renames, not supported on all platforms
+                try {
+                    force(path, StandardOpenOption.READ, true);
+                } catch (IOException e) {
+                    continue;
+                }
+            } else if (Files.exists(path)) {
+                force(path, StandardOpenOption.WRITE, false);
+            }
+        }
+    }
+
+    private static void force(Path path, StandardOpenOption option, boolean metaData) throws IOException {
+        FileChannel channel = FileChannel.open(path, option);
+        try {
+            channel.force(metaData);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the number of syncs done so far.
+     *
+     * @return number of syncs
+     */
+    long commits() {
+        return commits.get();
+    }
+}
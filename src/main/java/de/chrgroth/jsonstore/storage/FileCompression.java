@@ -0,0 +1,110 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression codecs supported by {@link FileStorageService} for store files. Compression of existing files is detected on read, so the codec of a store may
+ * be changed at any time and takes effect on next write.
+ *
+ * @author Christian Groth
+ */
+public enum FileCompression {
+
+    /**
+     * Plain files without compression.
+     */
+    NONE {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+
+    /**
+     * GZIP file format.
+     */
+    GZIP {
+        @Override
+        OutputStream compress(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    /**
+     * Deflate compressed data using ZLIB format.
+     */
+    DEFLATE {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int HEADER_SIZE = 2;
+    private static final int BYTE_MASK = 0xff;
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+    private static final int ZLIB_METHOD_MASK = 0x0f;
+    private static final int ZLIB_METHOD_DEFLATE = 8;
+    private static final int ZLIB_HEADER_CHECK = 31;
+    private static final int BITS_PER_BYTE = 8;
+
+    abstract OutputStream compress(OutputStream out) throws IOException;
+
+    abstract InputStream decompress(InputStream in) throws IOException;
+
+    /**
+     * Detects the compression of given file using the leading magic bytes. Plain JSON data never starts with one of these.
+     *
+     * @param file
+     *            file to be checked
+     * @return detected compression
+     * @throws IOException
+     *             if file can't be read
+     */
+    static FileCompression detect(Path file) throws IOException {
+
+        // read header
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            if (in.read(header) < HEADER_SIZE) {
+                return NONE;
+            }
+        }
+
+        // check magic bytes
+        int first = header[0] & BYTE_MASK;
+        int second = header[1] & BYTE_MASK;
+        if (first == GZIP_MAGIC_FIRST && second == GZIP_MAGIC_SECOND) {
+            return GZIP;
+        } else if ((first & ZLIB_METHOD_MASK) == ZLIB_METHOD_DEFLATE && ((first << BITS_PER_BYTE) | second) % ZLIB_HEADER_CHECK == 0) {
+            return DEFLATE;
+        }
+        return NONE;
+    }
+}
@@ -1,13 +1,35 @@
 package de.chrgroth.jsonstore.storage;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -16,26 +38,49 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Stopwatch;
 
+import de.chrgroth.jsonstore.JournalRecord;
+import de.chrgroth.jsonstore.JournalRecord.Operation;
+import de.chrgroth.jsonstore.JournalStorageService;
 import de.chrgroth.jsonstore.JsonStoreException;
 import de.chrgroth.jsonstore.JsonStoreMetadata;
-import de.chrgroth.jsonstore.StorageService;
+import de.chrgroth.jsonstore.SegmentedStorageService;
 
 /**
- * Implementation storing each store in a separate file using metadata uid.
+ * Implementation storing each store in a separate file using metadata uid. If journaling is enabled incremental changes are appended to a separate journal file
+ * per store, which is discarded on each full write. If segmentation is enabled the payload is stored in several files, one per segment, and journaling is
+ * disabled. Store files may be compressed using any of {@link FileCompression}, journal files are never compressed.
  *
  * @author Christian Groth
  */
-public class FileStorageService implements StorageService {
+public class FileStorageService implements JournalStorageService, SegmentedStorageService {
     private static final Logger LOG = LoggerFactory.getLogger(FileStorageService.class);
 
     public static final String FILE_SEPARATOR = ".";
     public static final String FILE_PREFIX = "storage";
     public static final String FILE_SUFFIX = "json";
+    public static final String FILE_SUFFIX_TEMP = "tmp";
+    public static final String FILE_SUFFIX_JOURNAL = "journal";
+    public static final String FILE_SUFFIX_COMPACTION = "compaction";
 
     private static final String FILE_SINGLETON = "singleton";
 
+    private static final char JOURNAL_RECORD_SEPARATOR = '\n';
+    private static final String JOURNAL_FIELD_SEPARATOR = "\t";
+    private static final int JOURNAL_FIELDS = 3;
+
     private final File storage;
     private final Charset charset;
+    private final boolean memoryMapped;
+    private final Durability durability;
+    private final FileCompression compression;
+    private final Map<String, FileCompression> compressionPerStore;
+    private final ConcurrentMap<String, Object> locks;
+
+    private final int segments;
+    private final Map<String, Integer> segmentsPerStore;
+
+    private final boolean journal;
+    private final Map<String, Boolean> journalPerStore;
 
     /**
      * Builder to configure a new instance of {@link FileStorageService}. Be sure to set the base path calling {@link #storage(File)}.
@@ -47,9 +92,21 @@ public class FileStorageService implements StorageService {
 
         private File storage;
         private Charset charset = DEFAULT_CHARSET;
+        private boolean memoryMapped;
+        private Durability durability = Durability.none();
+        private FileCompression compression = FileCompression.NONE;
+        private final Map<String, FileCompression> compressionPerStore;
 
-        private FileStorageServiceBuilder() {
+        private int segments = 1;
+        private final Map<String, Integer> segmentsPerStore;
 
+        private boolean journal;
+        private final Map<String, Boolean> journalPerStore;
+
+        private FileStorageServiceBuilder() {
+            compressionPerStore = new HashMap<>();
+            segmentsPerStore = new HashMap<>();
+            journalPerStore = new HashMap<>();
         }
 
         /**
@@ -76,13 +133,120 @@ public class FileStorageService implements StorageService {
             return this;
         }
 
+        /**
+         * Sets the durability policy controlling if and how written store and journal files are forced to disk.
+         *
+         * @param durability
+         *            durability policy
+         * @return builder
+         * @see Durability
+         */
+        public FileStorageServiceBuilder durability(Durability durability) {
+            this.durability = durability;
+            return this;
+        }
+
+        /**
+         * Sets the compression of store files.
+         *
+         * @param compression
+         *            compression to be used
+         * @return builder
+         */
+        public FileStorageServiceBuilder compression(FileCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Sets the compression of store files for matching store with given uid.
+         *
+         * @param uid
+         *            used for store matching
+         * @param compression
+         *            compression to be used
+         * @return builder
+         */
+        public FileStorageServiceBuilder compression(String uid, FileCompression compression) {
+            compressionPerStore.put(uid, compression);
+            return this;
+        }
+
+        /**
+         * Sets the read mode. If enabled store files are memory mapped and decoded straight from the mapped buffer during load instead of being read through
+         * heap buffers, which speeds up loading large store files. Compressed store files are always streamed.
+         *
+         * @param memoryMapped
+         *            true to enable memory mapped reads, false otherwise
+         * @return builder
+         */
+        public FileStorageServiceBuilder memoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
+
+        /**
+         * Sets the number of segments the payload of non singleton stores is split into. Items are assigned to segments by hash code, so be sure to implement
+         * {@link Object#hashCode()} for payload classes. Journaling is disabled for segmented stores.
+         *
+         * @param segments
+         *            number of segments, one to disable segmentation
+         * @return builder
+         */
+        public FileStorageServiceBuilder segments(int segments) {
+            this.segments = segments;
+            return this;
+        }
+
+        /**
+         * Sets the number of segments for matching store with given uid.
+         *
+         * @param uid
+         *            used for store matching
+         * @param segments
+         *            number of segments, one to disable segmentation
+         * @return builder
+         */
+        public FileStorageServiceBuilder segments(String uid, int segments) {
+            segmentsPerStore.put(uid, segments);
+            return this;
+        }
+
+        /**
+         * Sets the journaling mode. If enabled changes of non singleton stores in auto-save mode are appended to a journal file instead of rewriting the whole
+         * store file.
+         *
+         * @param journal
+         *            true to enable journaling, false otherwise
+         * @return builder
+         */
+        public FileStorageServiceBuilder journal(boolean journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * Sets the journaling mode for matching store with given uid.
+         *
+         * @param uid
+         *            used for store matching
+         * @param journal
+         *            true to enable journaling, false otherwise
+         * @return builder
+         */
+        public FileStorageServiceBuilder journal(String uid, boolean journal) {
+            journalPerStore.put(uid, journal);
+            return this;
+        }
+
         /**
          * Creates the service instance.
          *
          * @return create service
          */
         public FileStorageService build() {
-            return new FileStorageService(storage != null ? storage.getAbsoluteFile() : null, charset);
+            return new FileStorageService(storage != null ? storage.getAbsoluteFile() : null, charset, memoryMapped, durability, compression, compressionPerStore,
+                    segments, segmentsPerStore, journal, journalPerStore);
         }
     }
 
@@ -95,7 +259,8 @@ public class FileStorageService implements StorageService {
         return new FileStorageServiceBuilder();
     }
 
-    protected FileStorageService(File storage, Charset charset) {
+    protected FileStorageService(File storage, Charset charset, boolean memoryMapped, Durability durability, FileCompression compression,
+            Map<String, FileCompression> compressionPerStore, int segments, Map<String, Integer> segmentsPerStore, boolean journal, Map<String, Boolean> journalPerStore) {
 
         // storage base path
         if (storage == null) {
@@ -108,6 +273,53 @@ public class FileStorageService implements StorageService {
             throw new JsonStoreException("storage charset must not be null!!");
         }
         this.charset = charset;
+        this.memoryMapped = memoryMapped;
+
+        // durability
+        if (durability == null) {
+            throw new JsonStoreException("storage durability must not be null!!");
+        }
+        this.durability = durability;
+
+        // compression
+        if (compression == null) {
+            throw new JsonStoreException("storage compression must not be null!!");
+        }
+        this.compression = compression;
+        this.compressionPerStore = new HashMap<>();
+        if (compressionPerStore != null) {
+            compressionPerStore.forEach((uid, storeCompression) -> {
+                if (storeCompression == null) {
+                    throw new JsonStoreException("storage compression for " + uid + " must not be null!!");
+                }
+                this.compressionPerStore.put(uid, storeCompression);
+            });
+        }
+
+        // segmentation
+        if (segments < 1) {
+            throw new JsonStoreException("storage segments must be positive!!");
+        }
+        this.segments = segments;
+        this.segmentsPerStore = new HashMap<>();
+        if (segmentsPerStore != null) {
+            segmentsPerStore.forEach((uid, storeSegments) -> {
+                if (storeSegments == null || storeSegments < 1) {
+                    throw new JsonStoreException("storage segments for " + uid + " must be positive!!");
+                }
+                this.segmentsPerStore.put(uid, storeSegments);
+            });
+        }
+
+        // per store locks
+        locks = new ConcurrentHashMap<>();
+
+        // journaling
+        this.journal = journal;
+        this.journalPerStore = new HashMap<>();
+        if (journalPerStore != null) {
+            this.journalPerStore.putAll(journalPerStore);
+        }
     }
 
     @Override
@@ -132,50 +344,99 @@ public class FileStorageService implements StorageService {
         if (file != null && file.exists()) {
             fileSize = FileUtils.sizeOf(file);
         }
+        for (File segmentFile : resolveSegmentFiles(metadata).values()) {
+            fileSize += FileUtils.sizeOf(segmentFile);
+        }
+        for (File journalFile : resolveJournalFiles(metadata)) {
+            if (journalFile.exists()) {
+                fileSize += FileUtils.sizeOf(journalFile);
+            }
+        }
         return fileSize;
     }
 
     @Override
-    public void write(JsonStoreMetadata<?> metadata, String json) {
+    public void write(JsonStoreMetadata<?> metadata, Consumer<Writer> json) {
 
-        // write to file
+        // stream to temp file and replace store file afterwards, so readers will always see the last completely written file
         File file = resolveFile(metadata);
+        File tempFile = resolveTempFile(file);
         try {
             Stopwatch stopwatch = Stopwatch.createStarted();
-            synchronized (file) {
-                Files.write(file.toPath(), Arrays.asList(json), charset, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            synchronized (lock(metadata)) {
+                writeFile(metadata, tempFile, json);
+                replace(tempFile, file);
+
+                // snapshot contains all journaled changes and segments
+                deleteJournals(metadata);
+                deleteSegments(metadata, 0);
             }
             stopwatch.stop();
             LOG.info(metadata.getUid() + ": saving json to file took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
         } catch (IOException e) {
-            LOG.error("Unable to write file content, skipping file during store: " + file.getAbsolutePath() + "!!", e);
+            throw new JsonStoreException("Unable to write file content: " + file.getAbsolutePath() + "!!", e);
         }
     }
 
+    private void writeFile(JsonStoreMetadata<?> metadata, File file, Consumer<Writer> json) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(resolveCompression(metadata).compress(out), charset.newEncoder()))) {
+            json.accept(writer);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+
+        // data has to be durable before file gets replaced
+        durability.force(file.toPath());
+    }
+
+    private void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOG.warn("atomic move not supported, falling back to non atomic replace of " + target.getAbsolutePath());
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        durability.force(target.toPath().getParent());
+    }
+
     @Override
-    public String read(JsonStoreMetadata<?> metadata) {
+    public void read(JsonStoreMetadata<?> metadata, Consumer<Reader> json) {
 
         // abort if not data file is present
         File file = resolveFile(metadata);
         if (file == null || !file.exists()) {
-            return null;
+            return;
         }
 
-        // load JSON
-        String json = null;
-        try {
-            Stopwatch stopwatch = Stopwatch.createStarted();
-            synchronized (file) {
-                json = Files.lines(file.toPath(), charset).parallel().filter(line -> line != null && !"".equals(line.trim())).map(String::trim).collect(Collectors.joining());
-            }
-            stopwatch.stop();
-            LOG.info(metadata.getUid() + ": loading json from file took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
-        } catch (Exception e) {
+        // stream JSON
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (Reader reader = openReader(file.toPath())) {
+            json.accept(reader);
+        } catch (IOException e) {
             throw new JsonStoreException("Unable to read file content: " + file.getAbsolutePath() + "!!", e);
         }
+        stopwatch.stop();
+        LOG.info(metadata.getUid() + ": loading json from file took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+    }
 
-        // done
-        return json;
+    private Reader openReader(Path file) throws IOException {
+
+        // decompress as needed
+        FileCompression fileCompression = FileCompression.detect(file);
+        if (fileCompression != FileCompression.NONE) {
+            InputStream in = Files.newInputStream(file);
+            try {
+                return new BufferedReader(new InputStreamReader(fileCompression.decompress(in), charset.newDecoder()));
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        // read plain file
+        return memoryMapped ? new MappedFileReader(file, charset) : Files.newBufferedReader(file, charset);
     }
 
     @Override
@@ -183,14 +444,278 @@ public class FileStorageService implements StorageService {
         try {
             LOG.info(metadata.getUid() + ": dropping strage file");
             File file = resolveFile(metadata);
-            synchronized (file) {
+            synchronized (lock(metadata)) {
                 Files.deleteIfExists(file.toPath());
+                deleteJournals(metadata);
+                deleteSegments(metadata, 0);
             }
         } catch (IOException e) {
             LOG.error("Unable to delete persistent JSON store: " + metadata.getUid() + "!!", e);
         }
     }
 
+    @Override
+    public int segments(JsonStoreMetadata<?> metadata) {
+        return metadata.isSingleton() ? 1 : segmentsPerStore.getOrDefault(metadata.getUid(), segments);
+    }
+
+    @Override
+    public Set<Integer> writeSegments(JsonStoreMetadata<?> metadata, Map<Integer, Consumer<Writer>> segments) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        synchronized (lock(metadata)) {
+
+            // stream each segment to temp file and replace segment file afterwards
+            Set<Integer> failed = segments.entrySet().parallelStream().filter(segment -> !writeSegment(metadata, segment)).map(Entry::getKey)
+                    .collect(Collectors.toSet());
+            if (!failed.isEmpty()) {
+                LOG.error(metadata.getUid() + ": segments " + failed + " could not be written, keeping stale files!!");
+                return failed;
+            }
+
+            // discard data of any other layout
+            try {
+                Files.deleteIfExists(resolveFile(metadata).toPath());
+                deleteJournals(metadata);
+                deleteSegments(metadata, segments(metadata));
+            } catch (IOException e) {
+                LOG.error("Unable to delete stale files of persistent JSON store: " + metadata.getUid() + "!!", e);
+            }
+        }
+        stopwatch.stop();
+        LOG.info(metadata.getUid() + ": saving " + segments.size() + " json segments to file took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        return Collections.emptySet();
+    }
+
+    private boolean writeSegment(JsonStoreMetadata<?> metadata, Entry<Integer, Consumer<Writer>> segment) {
+        File file = resolveSegmentFile(metadata, segment.getKey());
+        File tempFile = resolveTempFile(file);
+        try {
+            writeFile(metadata, tempFile, segment.getValue());
+            replace(tempFile, file);
+            return true;
+        } catch (IOException e) {
+            LOG.error("Unable to write file content, skipping file during store: " + file.getAbsolutePath() + "!!", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void readSegments(JsonStoreMetadata<?> metadata, BiConsumer<Integer, Reader> segments) {
+
+        // collect all files
+        Map<Integer, File> files = resolveSegmentFiles(metadata);
+        File file = resolveFile(metadata);
+        if (file.exists()) {
+            files.put(UNSEGMENTED, file);
+        }
+
+        // stream JSON in parallel
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        files.entrySet().parallelStream().forEach(segment -> {
+            try (Reader reader = openReader(segment.getValue().toPath())) {
+                segments.accept(segment.getKey(), reader);
+            } catch (IOException e) {
+                throw new JsonStoreException("Unable to read file content: " + segment.getValue().getAbsolutePath() + "!!", e);
+            }
+        });
+        stopwatch.stop();
+        LOG.info(metadata.getUid() + ": loading " + files.size() + " json segments from file took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+    }
+
+    private void deleteSegments(JsonStoreMetadata<?> metadata, int firstSegment) throws IOException {
+        for (Entry<Integer, File> segment : resolveSegmentFiles(metadata).entrySet()) {
+            if (segment.getKey() >= firstSegment) {
+                Files.deleteIfExists(segment.getValue().toPath());
+            }
+        }
+    }
+
+    private Map<Integer, File> resolveSegmentFiles(JsonStoreMetadata<?> metadata) {
+        Map<Integer, File> files = new HashMap<>();
+        Pattern pattern = Pattern.compile(Pattern.quote(resolveFile(metadata).getName() + FILE_SEPARATOR) + "(\\d+)");
+        File[] candidates = storage.listFiles();
+        if (candidates != null) {
+            for (File candidate : candidates) {
+                Matcher matcher = pattern.matcher(candidate.getName());
+                if (matcher.matches()) {
+                    files.put(Integer.valueOf(matcher.group(1)), candidate);
+                }
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public boolean isJournaling(JsonStoreMetadata<?> metadata) {
+        return !metadata.isSingleton() && segments(metadata) == 1 && journalPerStore.getOrDefault(metadata.getUid(), journal);
+    }
+
+    @Override
+    public void append(JsonStoreMetadata<?> metadata, List<JournalRecord> records) {
+
+        // append all records to journal file
+        File file = resolveJournalFile(metadata);
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            synchronized (lock(metadata)) {
+                boolean created = !file.exists();
+                try (Writer writer = Files.newBufferedWriter(file.toPath(), charset, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+                    for (JournalRecord record : records) {
+                        writer.write(record.getOperation().name());
+                        writer.write(JOURNAL_FIELD_SEPARATOR);
+                        writer.write(Integer.toString(record.getPayloadTypeVersion()));
+                        writer.write(JOURNAL_FIELD_SEPARATOR);
+                        if (record.getJson() != null) {
+                            writer.write(record.getJson());
+                        }
+                        writer.write(JOURNAL_RECORD_SEPARATOR);
+                    }
+                }
+
+                // new journal files have to be durable within directory
+                if (created) {
+                    durability.force(file.toPath(), file.toPath().getParent());
+                } else {
+                    durability.force(file.toPath());
+                }
+            }
+            stopwatch.stop();
+            LOG.debug(metadata.getUid() + ": appending " + records.size() + " journal records took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        } catch (IOException e) {
+            throw new JsonStoreException("Unable to append journal records: " + file.getAbsolutePath() + "!!", e);
+        }
+    }
+
+    @Override
+    public void readJournal(JsonStoreMetadata<?> metadata, Consumer<JournalRecord> records) {
+
+        // records marked for compaction are older than the ones in current journal
+        readJournal(metadata, resolveCompactionJournalFile(metadata), records);
+        readJournal(metadata, resolveJournalFile(metadata), records);
+    }
+
+    private void readJournal(JsonStoreMetadata<?> metadata, File file, Consumer<JournalRecord> records) {
+
+        // abort if no journal file is present
+        if (!file.exists()) {
+            return;
+        }
+
+        // read record per line
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), charset)) {
+            StringBuilder line = new StringBuilder();
+            int c = reader.read();
+            while (c >= 0) {
+                if (c == JOURNAL_RECORD_SEPARATOR) {
+                    records.accept(parseJournalRecord(file, line.toString()));
+                    line.setLength(0);
+                } else {
+                    line.append((char) c);
+                }
+                c = reader.read();
+            }
+
+            // records are always terminated, so any remaining data was not written completely
+            if (line.length() > 0) {
+                LOG.warn(metadata.getUid() + ": skipping incomplete journal record " + line);
+            }
+        } catch (IOException e) {
+            throw new JsonStoreException("Unable to read journal content: " + file.getAbsolutePath() + "!!", e);
+        }
+    }
+
+    private JournalRecord parseJournalRecord(File file, String line) {
+        String[] fields = line.split(JOURNAL_FIELD_SEPARATOR, JOURNAL_FIELDS);
+        try {
+            Operation operation = Operation.valueOf(fields[0]);
+            int payloadTypeVersion = Integer.parseInt(fields[1]);
+            String json = fields[2].isEmpty() ? null : fields[2];
+            return new JournalRecord(operation, payloadTypeVersion, json);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new JsonStoreException("Invalid journal record in " + file.getAbsolutePath() + ": " + line + "!!", e);
+        }
+    }
+
+    @Override
+    public long journalSize(JsonStoreMetadata<?> metadata) {
+        File file = resolveJournalFile(metadata);
+        return file.exists() ? FileUtils.sizeOf(file) : 0;
+    }
+
+    @Override
+    public void rotateJournal(JsonStoreMetadata<?> metadata) {
+        Path journal = resolveJournalFile(metadata).toPath();
+        Path compactionJournal = resolveCompactionJournalFile(metadata).toPath();
+        try {
+            synchronized (lock(metadata)) {
+                if (!Files.exists(journal)) {
+
+                    // just mark compaction
+                    if (!Files.exists(compactionJournal)) {
+                        Files.createFile(compactionJournal);
+                    }
+                } else if (Files.exists(compactionJournal)) {
+
+                    // previous compaction did not finish, so keep all records
+                    try (OutputStream out = Files.newOutputStream(compactionJournal, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+                        Files.copy(journal, out);
+                    }
+                    Files.delete(journal);
+                } else {
+                    replace(journal.toFile(), compactionJournal.toFile());
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to rotate journal, compaction will be skipped: " + journal + "!!", e);
+        }
+    }
+
+    @Override
+    public void compact(JsonStoreMetadata<?> metadata, Consumer<Writer> json) {
+        File file = resolveFile(metadata);
+        File tempFile = new File(file.getParentFile(), file.getName() + FILE_SEPARATOR + FILE_SUFFIX_COMPACTION + FILE_SEPARATOR + FILE_SUFFIX_TEMP);
+        File compactionJournal = resolveCompactionJournalFile(metadata);
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+
+            // stream snapshot without holding the lock, so journal appends are not blocked
+            writeFile(metadata, tempFile, json);
+
+            // replace store file and discard compacted records
+            synchronized (lock(metadata)) {
+                if (!compactionJournal.exists()) {
+                    LOG.info(metadata.getUid() + ": skipping compaction, store was saved or dropped in the meantime");
+                    Files.deleteIfExists(tempFile.toPath());
+                    return;
+                }
+                replace(tempFile, file);
+                Files.delete(compactionJournal.toPath());
+            }
+            stopwatch.stop();
+            LOG.info(metadata.getUid() + ": compacting journal took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        } catch (IOException e) {
+            LOG.error("Unable to compact journal, skipping compaction: " + file.getAbsolutePath() + "!!", e);
+        }
+    }
+
+    private FileCompression resolveCompression(JsonStoreMetadata<?> metadata) {
+        return compressionPerStore.getOrDefault(metadata.getUid(), compression);
+    }
+
+    private void deleteJournals(JsonStoreMetadata<?> metadata) throws IOException {
+        for (File journalFile : resolveJournalFiles(metadata)) {
+            Files.deleteIfExists(journalFile.toPath());
+        }
+    }
+
+    private File[] resolveJournalFiles(JsonStoreMetadata<?> metadata) {
+        return new File[] {resolveCompactionJournalFile(metadata), resolveJournalFile(metadata)};
+    }
+
+    private File resolveCompactionJournalFile(JsonStoreMetadata<?> metadata) {
+        return resolveFile(metadata, FILE_SUFFIX_JOURNAL + FILE_SEPARATOR + FILE_SUFFIX_COMPACTION);
+    }
+
     /**
      * Resolves the persistent file for given store metadata.
      *
@@ -199,6 +724,42 @@ public class FileStorageService implements StorageService {
      * @return storage file
      */
     public File resolveFile(JsonStoreMetadata<?> metadata) {
-        return new File(storage, FILE_PREFIX + FILE_SEPARATOR + (metadata.isSingleton() ? FILE_SINGLETON + FILE_SEPARATOR : "") + metadata.getUid() + FILE_SEPARATOR + FILE_SUFFIX);
+        return resolveFile(metadata, FILE_SUFFIX);
+    }
+
+    /**
+     * Resolves the file of given segment for given store metadata.
+     *
+     * @param metadata
+     *            store metadata
+     * @param segment
+     *            segment index
+     * @return segment file
+     */
+    public File resolveSegmentFile(JsonStoreMetadata<?> metadata, int segment) {
+        return resolveFile(metadata, FILE_SUFFIX + FILE_SEPARATOR + segment);
+    }
+
+    /**
+     * Resolves the journal file for given store metadata.
+     *
+     * @param metadata
+     *            store metadata
+     * @return journal file
+     */
+    public File resolveJournalFile(JsonStoreMetadata<?> metadata) {
+        return resolveFile(metadata, FILE_SUFFIX_JOURNAL);
+    }
+
+    private File resolveFile(JsonStoreMetadata<?> metadata, String suffix) {
+        return new File(storage, FILE_PREFIX + FILE_SEPARATOR + (metadata.isSingleton() ? FILE_SINGLETON + FILE_SEPARATOR : "") + metadata.getUid() + FILE_SEPARATOR + suffix);
+    }
+
+    private File resolveTempFile(File file) {
+        return new File(file.getParentFile(), file.getName() + FILE_SEPARATOR + FILE_SUFFIX_TEMP);
+    }
+
+    private Object lock(JsonStoreMetadata<?> metadata) {
+        return locks.computeIfAbsent(metadata.getUid(), uid -> new Object());
     }
 }
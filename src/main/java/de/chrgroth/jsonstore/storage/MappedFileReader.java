@@ -0,0 +1,88 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader decoding characters straight from a memory mapped file, so file contents are neither copied to heap buffers nor read using system calls. Files larger
+ * than a single mapping are mapped region by region. Mapped regions are released by the garbage collector, not on {@link #close()}.
+ *
+ * @author Christian Groth
+ */
+class MappedFileReader extends Reader {
+
+    private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long maxRegionSize;
+    private final CharsetDecoder decoder;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private boolean flushed;
+
+    MappedFileReader(Path file, Charset charset) throws IOException {
+        this(file, charset, MAX_REGION_SIZE);
+    }
+
+    MappedFileReader(Path file, Charset charset, long maxRegionSize) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        this.maxRegionSize = maxRegionSize;
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        map(0);
+    }
+
+    private void map(long position) throws IOException {
+        regionStart = position;
+        region = channel.map(MapMode.READ_ONLY, position, Math.min(maxRegionSize, size - position));
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off && !flushed) {
+
+            // decode current region
+            boolean lastRegion = regionStart + region.limit() >= size;
+            CoderResult result = decoder.decode(region, out, lastRegion);
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            if (result.isUnderflow()) {
+                if (!lastRegion) {
+
+                    // continue at first byte not decoded, may be part of a multi byte character
+                    map(regionStart + region.position());
+                } else if (decoder.flush(out).isUnderflow()) {
+                    flushed = true;
+                }
+            }
+        }
+
+        // done
+        int read = out.position() - off;
+        return read == 0 && flushed ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,5 +1,9 @@
 package de.chrgroth.jsonstore.storage;
 
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Consumer;
+
 import de.chrgroth.jsonstore.JsonStoreMetadata;
 import de.chrgroth.jsonstore.StorageService;
 
@@ -20,12 +24,11 @@ public class TransientStorageService implements StorageService {
     }
 
     @Override
-    public void write(JsonStoreMetadata<?> metadata, String json) {
+    public void write(JsonStoreMetadata<?> metadata, Consumer<Writer> json) {
     }
 
     @Override
-    public String read(JsonStoreMetadata<?> metadata) {
-        return null;
+    public void read(JsonStoreMetadata<?> metadata, Consumer<Reader> json) {
     }
 
     @Override
@@ -0,0 +1,223 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.StorageService;
+import de.chrgroth.jsonstore.metrics.WriteBehindMetrics;
+
+/**
+ * Decorator writing data asynchronously using the given storage service. JSON data is created and streamed to storage in background, so stores hand over a
+ * snapshot of their contents, see {@link #isWriteBehind()}. If a newer write for the same store arrives before the older one was started, the older one is
+ * dropped. Failing writes are logged and don't invoke the callback given to {@link #write(JsonStoreMetadata, Consumer, Runnable)}, so stores stay dirty and
+ * get saved again. Reads wait for all pending writes, so stores always load the latest data. Be sure to call {@link #close()} before exiting to process all
+ * pending writes. Journaling and segmentation of the decorated storage service are not supported.
+ *
+ * @author Christian Groth
+ */
+public class WriteBehindStorageService implements StorageService, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindStorageService.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MINUTES = 1;
+    private static final String SINGLETON_KEY_PREFIX = "singleton:";
+
+    private final StorageService delegate;
+    private final ConcurrentMap<String, PendingWrite> pending;
+    private final ExecutorService executor;
+
+    private final AtomicLong submittedWrites;
+    private final AtomicLong coalescedWrites;
+    private final AtomicLong completedWrites;
+    private final AtomicLong failedWrites;
+
+    /**
+     * Write waiting to be processed.
+     */
+    private static final class PendingWrite {
+        private final JsonStoreMetadata<?> metadata;
+        private final Consumer<Writer> json;
+        private final Runnable written;
+
+        private PendingWrite(JsonStoreMetadata<?> metadata, Consumer<Writer> json, Runnable written) {
+            this.metadata = metadata;
+            this.json = json;
+            this.written = written;
+        }
+    }
+
+    /**
+     * Creates a new decorator writing data in background using the given storage service.
+     *
+     * @param delegate
+     *            storage service to be decorated
+     */
+    public WriteBehindStorageService(StorageService delegate) {
+
+        // decorated service
+        if (delegate == null) {
+            throw new JsonStoreException("delegate storage service must be provided!!");
+        }
+        this.delegate = delegate;
+
+        // single background thread keeps order of writes per store
+        pending = new ConcurrentHashMap<>();
+        executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("json-store-write-behind-%d").build());
+
+        // metrics
+        submittedWrites = new AtomicLong();
+        coalescedWrites = new AtomicLong();
+        completedWrites = new AtomicLong();
+        failedWrites = new AtomicLong();
+    }
+
+    @Override
+    public void prepare() {
+        delegate.prepare();
+    }
+
+    @Override
+    public long size(JsonStoreMetadata<?> metadata) {
+        return delegate.size(metadata);
+    }
+
+    @Override
+    public boolean isWriteBehind() {
+        return true;
+    }
+
+    @Override
+    public void write(JsonStoreMetadata<?> metadata, Consumer<Writer> json) {
+        write(metadata, json, () -> {
+        });
+    }
+
+    @Override
+    public void write(JsonStoreMetadata<?> metadata, Consumer<Writer> json, Runnable written) {
+
+        // abort if closed
+        if (executor.isShutdown()) {
+            throw new JsonStoreException("write-behind storage service already closed, unable to write " + metadata.getUid() + "!!");
+        }
+
+        // JSON data is created in background
+        PendingWrite write = new PendingWrite(metadata, json, written);
+        submittedWrites.incrementAndGet();
+
+        // replace older pending write or schedule processing
+        String key = key(metadata);
+        pending.compute(key, (k, existing) -> {
+            if (existing != null) {
+                coalescedWrites.incrementAndGet();
+            } else {
+                executor.execute(() -> process(key));
+            }
+            return write;
+        });
+    }
+
+    private void process(String key) {
+
+        // abort if processed with an earlier task or dropped
+        PendingWrite write = pending.remove(key);
+        if (write == null) {
+            return;
+        }
+
+        // serialize and write using decorated service
+        try {
+            delegate.write(write.metadata, write.json);
+        } catch (RuntimeException e) {
+            failedWrites.incrementAndGet();
+            LOG.error(write.metadata.getUid() + ": write-behind failed, store stays dirty!!", e);
+            return;
+        }
+
+        // report success
+        completedWrites.incrementAndGet();
+        write.written.run();
+    }
+
+    @Override
+    public void read(JsonStoreMetadata<?> metadata, Consumer<Reader> json) {
+        flush();
+        delegate.read(metadata, json);
+    }
+
+    @Override
+    public void delete(JsonStoreMetadata<?> metadata) {
+
+        // drop pending write and delete after writes already in progress
+        pending.remove(key(metadata));
+        if (executor.isShutdown()) {
+            delegate.delete(metadata);
+        } else {
+            await(executor.submit(() -> delegate.delete(metadata)));
+        }
+    }
+
+    /**
+     * Waits until all writes submitted so far are processed.
+     */
+    public void flush() {
+        if (!executor.isShutdown()) {
+            await(executor.submit(() -> {
+            }));
+        }
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JsonStoreException("interrupted while waiting for write-behind!!", e);
+        } catch (ExecutionException e) {
+            throw new JsonStoreException("write-behind failed!!", e);
+        }
+    }
+
+    /**
+     * Stops background processing after all pending writes are done. Further writes are rejected.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                LOG.warn("pending writes did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("interrupted while waiting for pending writes");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Computes current metrics of background processing.
+     *
+     * @return metrics, never null
+     */
+    public WriteBehindMetrics computeMetrics() {
+        return new WriteBehindMetrics(pending.size(), submittedWrites.get(), coalescedWrites.get(), completedWrites.get(), failedWrites.get());
+    }
+
+    private String key(JsonStoreMetadata<?> metadata) {
+        return metadata.isSingleton() ? SINGLETON_KEY_PREFIX + metadata.getUid() : metadata.getUid();
+    }
+}
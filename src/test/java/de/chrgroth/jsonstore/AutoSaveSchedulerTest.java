@@ -0,0 +1,136 @@
+package de.chrgroth.jsonstore;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class AutoSaveSchedulerTest {
+
+    private static final String UID = "test-uid";
+    private static final String UID_MAP = "test-uid-map";
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final long LONG_DELAY_MILLIS = 60000;
+
+    private JsonStores stores;
+
+    @Mock
+    private JsonService jsonService;
+
+    @Mock
+    private StorageService storageService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @After
+    public void shutdown() {
+        if (stores != null) {
+            stores.shutdown();
+        }
+    }
+
+    private void createStores(AutoSavePolicy policy) {
+        stores = JsonStores.builder(jsonService, storageService).autoSave(policy).build();
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void noTrigger() {
+        AutoSavePolicy.debounced(0, 0, 0);
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void immediatePolicy() {
+        new AutoSaveScheduler(AutoSavePolicy.immediate());
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void nonConcurrentStore() {
+        JsonStore<String> store = new JsonStore<>(jsonService, storageService, UID, 0, true);
+        store.autoSaveScheduler(new AutoSaveScheduler(AutoSavePolicy.debounced(LONG_DELAY_MILLIS, 0, 0)));
+    }
+
+    @Test
+    public void maxChanges() {
+        createStores(AutoSavePolicy.debounced(0, 3, 0));
+        JsonStore<String> store = stores.ensure(UID, 0);
+        Assert.assertTrue(store.isConcurrent());
+
+        // save after third change
+        store.add("one");
+        store.add("two");
+        assertSaveInteractions(0);
+        store.add("three");
+        Mockito.verify(storageService, Mockito.timeout(TIMEOUT_MILLIS).times(1)).write(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void idle() {
+        createStores(AutoSavePolicy.debounced(0, 0, 1));
+        JsonMapStore<Integer, String> store = stores.ensureMap(UID_MAP, 0, String::length);
+        store.put("one");
+        store.put("three");
+        Mockito.verify(storageService, Mockito.timeout(TIMEOUT_MILLIS).atLeast(1)).write(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void failedSaveRetried() {
+        Mockito.doThrow(new JsonStoreException("write failed!!")).doNothing().when(storageService).write(Mockito.any(), Mockito.any());
+        createStores(AutoSavePolicy.debounced(0, 0, 1));
+        JsonStore<String> store = stores.ensure(UID, 0);
+        store.add("one");
+
+        // saved on retry
+        Mockito.verify(storageService, Mockito.timeout(TIMEOUT_MILLIS).times(2)).write(Mockito.any(), Mockito.any());
+        Assert.assertFalse(store.isDirty());
+    }
+
+    @Test
+    public void shutdownSavesPendingChanges() {
+        createStores(AutoSavePolicy.debounced(LONG_DELAY_MILLIS, 0, LONG_DELAY_MILLIS));
+        JsonStore<String> store = stores.ensure(UID, 0);
+        store.add("one");
+        store.add("two");
+        assertSaveInteractions(0);
+
+        // coalesced into single save
+        stores.shutdown();
+        assertSaveInteractions(1);
+
+        // saved right away after shutdown
+        store.add("three");
+        assertSaveInteractions(2);
+        stores = null;
+    }
+
+    @Test
+    public void saveCancelsPendingChanges() {
+        createStores(AutoSavePolicy.debounced(LONG_DELAY_MILLIS, 0, 0));
+        JsonStore<String> store = stores.ensure(UID, 0);
+        store.add("one");
+        store.save();
+        assertSaveInteractions(1);
+        stores.shutdown();
+        assertSaveInteractions(1);
+        stores = null;
+    }
+
+    @Test
+    public void dropCancelsPendingChanges() {
+        createStores(AutoSavePolicy.debounced(LONG_DELAY_MILLIS, 0, 0));
+        stores.ensure(UID, 0).add("one");
+        stores.drop(UID);
+        stores.shutdown();
+        assertSaveInteractions(0);
+        stores = null;
+    }
+
+    private void assertSaveInteractions(int times) {
+        Mockito.verify(storageService, Mockito.times(times)).write(Mockito.any(), Mockito.any());
+    }
+}
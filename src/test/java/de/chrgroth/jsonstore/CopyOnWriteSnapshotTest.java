@@ -0,0 +1,84 @@
+package de.chrgroth.jsonstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CopyOnWriteSnapshotTest {
+
+    private static final int READERS = 4;
+    private static final int ITEMS = 10000;
+
+    private CopyOnWriteSnapshot<String> snapshot;
+
+    @Before
+    public void setup() {
+        snapshot = new CopyOnWriteSnapshot<>();
+    }
+
+    @Test
+    public void changes() {
+        snapshot.change(items -> items.add("one"));
+        snapshot.change(items -> items.add("two"));
+        Set<String> read = snapshot.get();
+        Assert.assertEquals(new HashSet<>(Arrays.asList("one", "two")), read);
+        Assert.assertSame(read, snapshot.get());
+
+        // read snapshot is kept
+        snapshot.change(items -> items.remove("one"));
+        Assert.assertEquals(2, read.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("two")), snapshot.get());
+
+        // replaced
+        snapshot.replace(Arrays.asList("three"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("three")), snapshot.get());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        snapshot.get().add("one");
+    }
+
+    @Test
+    public void concurrentReads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        AtomicBoolean done = new AtomicBoolean();
+
+        // readers never see a snapshot changing
+        List<Future<Boolean>> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            readers.add(executor.submit(() -> {
+                while (!done.get()) {
+                    Set<String> read = snapshot.get();
+                    int size = read.size();
+                    if (read.stream().count() != size || read.size() != size) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+
+        // single writer
+        for (int i = 0; i < ITEMS; i++) {
+            String item = Integer.toString(i);
+            snapshot.change(items -> items.add(item));
+        }
+        done.set(true);
+        for (Future<Boolean> reader : readers) {
+            Assert.assertTrue(reader.get());
+        }
+        executor.shutdown();
+        Assert.assertEquals(ITEMS, snapshot.get().size());
+    }
+}
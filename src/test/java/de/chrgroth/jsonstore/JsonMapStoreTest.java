@@ -0,0 +1,171 @@
+package de.chrgroth.jsonstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonService;
+import de.chrgroth.jsonstore.model.TestDataVersion1;
+import de.chrgroth.jsonstore.storage.TransientStorageService;
+
+public class JsonMapStoreTest {
+
+    private JsonMapStore<String, TestDataVersion1> store;
+
+    private TestDataVersion1 one;
+    private TestDataVersion1 oneChanged;
+    private TestDataVersion1 two;
+
+    @Mock
+    private JsonService jsonService;
+
+    @Mock
+    private StorageService storageService;
+
+    @Before
+    public void init() {
+
+        // configure mocks
+        MockitoAnnotations.initMocks(this);
+
+        store = new JsonMapStore<>(jsonService, storageService, "uid1", 0, true, e -> e.id);
+        one = create("1", "one");
+        oneChanged = create("1", "one changed");
+        two = create("2", "two");
+    }
+
+    private TestDataVersion1 create(String id, String name) {
+        TestDataVersion1 item = new TestDataVersion1();
+        item.id = id;
+        item.name = name;
+        return item;
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void nullKeyFunction() {
+        new JsonMapStore<>(jsonService, storageService, "uid1", 0, true, null);
+    }
+
+    @Test
+    public void dataLifecycle() {
+        assertDataLifecycle(true);
+    }
+
+    @Test
+    public void dataLifecycleNoAutoSave() {
+        store = new JsonMapStore<>(jsonService, storageService, "uid1", 0, false, e -> e.id);
+        assertDataLifecycle(false);
+    }
+
+    private void assertDataLifecycle(boolean autoSave) {
+
+        // no data
+        Assert.assertTrue(store.isEmpty());
+        Assert.assertNull(store.get("1"));
+        assertPersistenceInteractions(0);
+
+        // put
+        Assert.assertNull(store.put(one));
+        Assert.assertEquals(one, store.get("1"));
+        Assert.assertTrue(store.containsKey("1"));
+        assertPersistenceInteractions(autoSave ? 1 : 0);
+
+        // replace
+        Assert.assertEquals(one, store.put(oneChanged));
+        Assert.assertEquals(oneChanged, store.get("1"));
+        Assert.assertEquals(1, store.size());
+        assertPersistenceInteractions(autoSave ? 2 : 0);
+
+        // compute
+        Assert.assertEquals(oneChanged, store.computeIfAbsent("1", id -> create(id, "unused")));
+        assertPersistenceInteractions(autoSave ? 2 : 0);
+        Assert.assertEquals("two", store.computeIfAbsent("2", id -> create(id, "two")).name);
+        Assert.assertEquals(2, store.size());
+        assertPersistenceInteractions(autoSave ? 3 : 0);
+
+        // remove
+        Assert.assertNull(store.remove("3"));
+        assertPersistenceInteractions(autoSave ? 3 : 0);
+        Assert.assertEquals(oneChanged, store.remove("1"));
+        Assert.assertFalse(store.containsKey("1"));
+        assertPersistenceInteractions(autoSave ? 4 : 0);
+
+        // put all
+        store.putAll(Arrays.asList(one, two));
+        Assert.assertEquals(2, store.size());
+        assertPersistenceInteractions(autoSave ? 5 : 0);
+
+        // clear
+        store.clear();
+        store.clear();
+        Assert.assertTrue(store.isEmpty());
+        assertPersistenceInteractions(autoSave ? 6 : 0);
+    }
+
+    @Test
+    public void listener() {
+        List<String> events = new ArrayList<>();
+        store.addListener(new StoreListener<TestDataVersion1>() {
+            @Override
+            public void onAdd(Collection<TestDataVersion1> items) {
+                items.forEach(item -> events.add("add " + item.name));
+            }
+
+            @Override
+            public void onRemove(Collection<TestDataVersion1> items) {
+                items.forEach(item -> events.add("remove " + item.name));
+            }
+
+            @Override
+            public void onReplace(TestDataVersion1 oldItem, TestDataVersion1 newItem) {
+                events.add(oldItem.name + " -> " + newItem.name);
+            }
+        });
+        store.put(one);
+        store.put(oneChanged);
+        store.remove("1");
+        store.remove("1");
+        Assert.assertEquals(Arrays.asList("add one", "one -> one changed", "remove one changed"), events);
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void computeIfAbsentKeyMismatch() {
+        store.computeIfAbsent("1", id -> two);
+    }
+
+    @Test
+    public void compatibleFormat() {
+        FlexjsonService flexjsonService = FlexjsonService.builder().build();
+        StorageService transientStorage = new TransientStorageService();
+
+        // load set store data
+        JsonStore<TestDataVersion1> setStore = new JsonStore<>(flexjsonService, transientStorage, "uid1", 0, false);
+        setStore.addAll(Arrays.asList(one, two));
+        store = new JsonMapStore<>(flexjsonService, transientStorage, "uid1", 0, false, e -> e.id);
+        store.fromJson(setStore.toJson());
+        Map<String, TestDataVersion1> expected = new HashMap<>();
+        expected.put("1", one);
+        expected.put("2", two);
+        Assert.assertEquals(expected, store.copy());
+
+        // and vice versa
+        store.put(oneChanged);
+        setStore.fromJson(store.toJson());
+        Assert.assertEquals(2, setStore.size());
+        Assert.assertTrue(setStore.contains(oneChanged));
+    }
+
+    private void assertPersistenceInteractions(int times) {
+        Mockito.verify(storageService, Mockito.times(times)).write(Mockito.any(), Mockito.any());
+    }
+}
@@ -1,5 +1,15 @@
 package de.chrgroth.jsonstore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -10,6 +20,10 @@ import org.mockito.MockitoAnnotations;
 public class JsonSingletonStoreTest {
     public static final String DATE_TIME_PATTERN = "HH:mm:ss.SSS dd.MM.yyyy";
 
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 200;
+    private static final int TIMEOUT_SECONDS = 10;
+
     private JsonSingletonStore<String> store;
     private String testDataOne;
 
@@ -40,6 +54,81 @@ public class JsonSingletonStoreTest {
         assertDataLifecycle(false);
     }
 
+    @Test
+    public void listener() {
+        List<String> events = new ArrayList<>();
+        store.addListener(new StoreListener<String>() {
+            @Override
+            public void onReplace(String oldItem, String newItem) {
+                events.add(oldItem + " -> " + newItem);
+            }
+        });
+        store.set(testDataOne);
+        store.clear();
+        Assert.assertEquals(Arrays.asList("null -> " + testDataOne, testDataOne + " -> null"), events);
+    }
+
+    @Test
+    public void setReturnsPrevious() {
+        Assert.assertNull(store.set(testDataOne));
+        Assert.assertEquals(testDataOne, store.set("other"));
+        Assert.assertEquals("other", store.getAndSet(null));
+    }
+
+    @Test
+    public void compareAndSet() {
+        Assert.assertTrue(store.compareAndSet(null, testDataOne));
+        Assert.assertFalse(store.compareAndSet(null, "other"));
+        Assert.assertEquals(testDataOne, store.get());
+        assertPersistenceInteractions(1);
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        JsonSingletonStore<Integer> counter = new JsonSingletonStore<>(jsonService, storageService, "counter", 0, true);
+        counter.set(0);
+
+        // first save blocks until all other threads are done
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch othersDone = new CountDownLatch(THREADS - 1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        Mockito.doAnswer(invocation -> {
+            if (first.getAndSet(false)) {
+                saving.countDown();
+                Assert.assertTrue(othersDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+            return null;
+        }).when(storageService).write(Mockito.any(), Mockito.any());
+
+        // increment from many threads
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                    counter.update(value -> value + 1);
+                }
+                othersDone.countDown();
+                return null;
+            }));
+        }
+        try {
+            Assert.assertTrue(saving.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            for (Future<Void> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // no update lost
+        Assert.assertEquals(Integer.valueOf(THREADS * UPDATES_PER_THREAD), counter.get());
+        Assert.assertFalse(counter.isDirty());
+
+        // initial save, blocked save, one save for all updates of other threads and at most one per remaining update of the saving thread
+        Mockito.verify(storageService, Mockito.atMost(UPDATES_PER_THREAD + 2)).write(Mockito.any(), Mockito.any());
+    }
+
     private void assertDataLifecycle(boolean autoSave) {
 
         // verfiy no interactions yet
@@ -70,7 +159,6 @@ public class JsonSingletonStoreTest {
     }
 
     private void assertPersistenceInteractions(int times) {
-        Mockito.verify(jsonService, Mockito.times(times)).toJson(Mockito.any());
         Mockito.verify(storageService, Mockito.times(times)).write(Mockito.any(), Mockito.any());
     }
 }
@@ -1,17 +1,35 @@
 package de.chrgroth.jsonstore;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import de.chrgroth.jsonstore.JournalRecord.Operation;
+
 public class JsonStoreTest {
 
+    private static final int THREADS = 8;
+    private static final int ITEMS_PER_THREAD = 500;
+
     private JsonStore<String> store;
 
     private String testDataOne;
@@ -47,6 +65,362 @@ public class JsonStoreTest {
         assertDataLifecycle(false);
     }
 
+    @Test
+    public void dataLifecycleConcurrent() {
+        store = new JsonStore<>(jsonService, storageService, null, "uid1", 0, true, true);
+        assertDataLifecycle(true);
+    }
+
+    @Test
+    public void concurrentNullElements() {
+        store = new JsonStore<>(jsonService, storageService, null, "uid1", 0, true, true);
+        List<String> events = new ArrayList<>();
+        store.addListener(new StoreListener<String>() {
+            @Override
+            public void onAdd(Collection<String> items) {
+                events.add("add " + items);
+            }
+        });
+
+        // rejected before any element is added
+        try {
+            store.addAll(Arrays.asList(testDataOne, null, testDataTwo));
+            Assert.fail("exception expected");
+        } catch (JsonStoreException e) {
+            // expected
+        }
+        Assert.assertTrue(store.isEmpty());
+        Assert.assertFalse(store.isDirty());
+        Assert.assertTrue(events.isEmpty());
+
+        // null is never contained
+        Assert.assertFalse(store.contains(null));
+        Assert.assertFalse(store.remove(null));
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        store = new JsonStore<>(jsonService, storageService, null, "uid1", 0, false, true);
+
+        // each thread adds own items and removes every second one while reading
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            String prefix = thread + "-";
+            tasks.add(() -> {
+                for (int i = 0; i < ITEMS_PER_THREAD; i++) {
+                    store.add(prefix + i);
+                    Assert.assertTrue(store.contains(prefix + i));
+                    store.stream().count();
+                }
+                store.removeIf(e -> e.startsWith(prefix) && Integer.parseInt(e.substring(prefix.length())) % 2 == 0);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // check contents
+        Assert.assertEquals(THREADS * ITEMS_PER_THREAD / 2, store.size());
+        Assert.assertEquals(THREADS * ITEMS_PER_THREAD / 2, store.snapshot().size());
+        Assert.assertTrue(store.contains("0-1"));
+        Assert.assertFalse(store.contains("0-0"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void index() {
+        store.add(testDataOne);
+        store.createIndex("length", String::length);
+        Assert.assertEquals(Collections.singleton(testDataOne), store.lookup("length", testDataOne.length()));
+
+        // maintained on changes
+        store.add("short");
+        store.addAll(Arrays.asList("a", "b"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), store.lookup("length", 1));
+        store.remove("a");
+        store.removeIf(e -> e.startsWith("b"));
+        Assert.assertTrue(store.lookup("length", 1).isEmpty());
+        store.retainAll(Collections.singleton("short"));
+        Assert.assertTrue(store.lookup("length", testDataOne.length()).isEmpty());
+        Assert.assertEquals(Collections.singleton("short"), store.lookup("length", "short".length()));
+        store.clear();
+        Assert.assertTrue(store.lookup("length", "short".length()).isEmpty());
+
+        // rebuilt on load
+        Mockito.doAnswer(invocation -> {
+            JsonStoreMetadata<Object> metadata = invocation.getArgument(0);
+            metadata.setPayload(testData);
+            ((Consumer<Boolean>) invocation.getArgument(3)).accept(false);
+            return null;
+        }).when(jsonService).fromJson(Mockito.any(), Mockito.any(), Mockito.anyString(), Mockito.any());
+        store.fromJson("[]");
+        Assert.assertEquals(new HashSet<>(testData), store.lookup("length", testDataOne.length()));
+
+        // dropped
+        store.dropIndex("length");
+        try {
+            store.lookup("length", 1);
+            Assert.fail("exception expected");
+        } catch (JsonStoreException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void sortedIndex() {
+        store.addAll(Arrays.asList("a", "bbb", "cc"));
+        store.createSortedIndex("length", String::length);
+        Assert.assertEquals(Arrays.asList("a", "cc"), store.range("length", 1, 3));
+        Assert.assertEquals("a", store.first("length"));
+        Assert.assertEquals("bbb", store.last("length"));
+        Assert.assertEquals(Arrays.asList("bbb", "cc"), store.descending("length", 2));
+
+        // maintained on changes
+        store.remove("a");
+        store.add("dddd");
+        Assert.assertEquals(Arrays.asList("cc", "bbb", "dddd"), store.ascending("length", Integer.MAX_VALUE));
+        Assert.assertEquals(Collections.singleton("cc"), store.lookup("length", 2));
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void unsortedIndex() {
+        store.createIndex("length", String::length);
+        store.first("length");
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void duplicateIndex() {
+        store.createIndex("length", String::length);
+        store.createIndex("length", String::isEmpty);
+    }
+
+    @Test
+    public void dirty() {
+        store = new JsonStore<>(jsonService, storageService, "uid1", 0, false);
+        Assert.assertFalse(store.isDirty());
+
+        // unchanged
+        store.remove(testDataOne);
+        Assert.assertFalse(store.isDirty());
+
+        // changed until saved
+        store.add(testDataOne);
+        Assert.assertTrue(store.isDirty());
+        store.save();
+        Assert.assertFalse(store.isDirty());
+
+        // loading nothing keeps changes
+        store.clear();
+        store.load();
+        Assert.assertTrue(store.isDirty());
+    }
+
+    @Test
+    public void dirtyAutoSave() {
+        store.add(testDataOne);
+        Assert.assertFalse(store.isDirty());
+
+        // changed within batch
+        store.batch(s -> {
+            s.add(testDataTwo);
+            Assert.assertTrue(s.isDirty());
+        });
+        Assert.assertFalse(store.isDirty());
+    }
+
+    @Test
+    public void dirtyJournaling() {
+        JournalStorageService journalStorageService = Mockito.mock(JournalStorageService.class);
+        Mockito.when(journalStorageService.isJournaling(Mockito.any())).thenReturn(true);
+        store = new JsonStore<>(jsonService, journalStorageService, "uid1", 0, true);
+
+        // appended changes are persisted
+        store.add(testDataOne);
+        Assert.assertFalse(store.isDirty());
+    }
+
+    @Test
+    public void dirtyFailedSave() {
+        Mockito.doThrow(new JsonStoreException("write failed!!")).when(storageService).write(Mockito.any(), Mockito.any());
+
+        // failed save keeps changes
+        try {
+            store.add(testDataOne);
+            Assert.fail("exception expected");
+        } catch (JsonStoreException e) {
+            // expected
+        }
+        Assert.assertTrue(store.contains(testDataOne));
+        Assert.assertTrue(store.isDirty());
+
+        // saved again
+        Mockito.doNothing().when(storageService).write(Mockito.any(), Mockito.any());
+        store.save();
+        Assert.assertFalse(store.isDirty());
+    }
+
+    @Test
+    public void dirtyFailedAppend() {
+        JournalStorageService journalStorageService = Mockito.mock(JournalStorageService.class);
+        Mockito.when(journalStorageService.isJournaling(Mockito.any())).thenReturn(true);
+        Mockito.doThrow(new JsonStoreException("append failed!!")).when(journalStorageService).append(Mockito.any(), Mockito.any());
+        store = new JsonStore<>(jsonService, journalStorageService, "uid1", 0, true);
+
+        // failed append keeps changes
+        try {
+            store.add(testDataOne);
+            Assert.fail("exception expected");
+        } catch (JsonStoreException e) {
+            // expected
+        }
+        Assert.assertTrue(store.isDirty());
+
+        // journal misses the change, so next change writes a snapshot
+        store.add(testDataTwo);
+        Assert.assertFalse(store.isDirty());
+        Mockito.verify(journalStorageService, Mockito.times(1)).append(Mockito.any(), Mockito.any());
+        Mockito.verify(journalStorageService, Mockito.times(1)).write(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void listener() {
+        List<String> events = new ArrayList<>();
+        StoreListener<String> listener = new StoreListener<String>() {
+            @Override
+            public void onAdd(Collection<String> items) {
+                events.add("add " + items);
+            }
+
+            @Override
+            public void onRemove(Collection<String> items) {
+                events.add("remove " + items);
+            }
+
+            @Override
+            public void onClear() {
+                events.add("clear");
+            }
+        };
+        store.addListener(listener);
+
+        // changes only
+        store.add(testDataOne);
+        store.add(testDataOne);
+        store.remove(testDataOne);
+        store.remove(testDataOne);
+        store.addAll(testData);
+        store.clear();
+        store.clear();
+        Assert.assertEquals(Arrays.asList("add [" + testDataOne + "]", "remove [" + testDataOne + "]", "add " + testData, "clear"), events);
+
+        // failing listener does not affect store
+        store.addListener(new StoreListener<String>() {
+            @Override
+            public void onAdd(Collection<String> items) {
+                throw new IllegalStateException("failed");
+            }
+        });
+        store.add(testDataTwo);
+        Assert.assertTrue(store.contains(testDataTwo));
+
+        // removed
+        events.clear();
+        store.removeListener(listener);
+        store.clear();
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void listenerExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<String> events = new CopyOnWriteArrayList<>();
+        store.addListener(new StoreListener<String>() {
+            @Override
+            public void onAdd(Collection<String> items) {
+                events.addAll(items);
+            }
+        }, executor);
+        store.add(testDataOne);
+        store.add(testDataTwo);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        Assert.assertEquals(testData, events);
+    }
+
+    @Test
+    public void batch() {
+        store.batch(s -> {
+            for (int i = 0; i < ITEMS_PER_THREAD; i++) {
+                s.add(Integer.toString(i));
+            }
+
+            // nested batch
+            s.batch(nested -> nested.remove("0"));
+            assertPersistenceInteractions(0);
+        });
+        assertPersistenceInteractions(1);
+        Assert.assertEquals(ITEMS_PER_THREAD - 1, store.size());
+
+        // unchanged
+        store.batch(s -> s.remove("unknown"));
+        assertPersistenceInteractions(1);
+
+        // auto-save is active again
+        store.add(testDataOne);
+        assertPersistenceInteractions(2);
+    }
+
+    @Test
+    public void batchFailure() {
+        try {
+            store.batch(s -> {
+                s.add(testDataOne);
+                throw new IllegalStateException("failed");
+            });
+            Assert.fail("exception expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // changes are saved anyway
+        Assert.assertTrue(store.contains(testDataOne));
+        assertPersistenceInteractions(1);
+    }
+
+    @Test
+    public void snapshot() {
+        Assert.assertTrue(store.snapshot().isEmpty());
+
+        // snapshot is shared until changed
+        store.add(testDataOne);
+        Set<String> snapshot = store.snapshot();
+        Assert.assertSame(snapshot, store.snapshot());
+        Assert.assertEquals(1, store.stream().count());
+
+        // changes publish a new snapshot
+        store.add(testDataTwo);
+        Assert.assertEquals(1, snapshot.size());
+        Assert.assertNotSame(snapshot, store.snapshot());
+        Assert.assertEquals(2, store.snapshot().size());
+
+        // unchanged store keeps snapshot
+        snapshot = store.snapshot();
+        store.add(testDataTwo);
+        store.remove("unknown");
+        Assert.assertSame(snapshot, store.snapshot());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotImmutable() {
+        store.snapshot().add(testDataOne);
+    }
+
     private void assertDataLifecycle(boolean autoSave) {
 
         // no interactions
@@ -112,8 +486,57 @@ public class JsonStoreTest {
         Assert.assertTrue(store.isEmpty());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void journaling() {
+        JournalStorageService journalStorageService = Mockito.mock(JournalStorageService.class);
+        Mockito.when(journalStorageService.isJournaling(Mockito.any())).thenReturn(true);
+        Mockito.when(jsonService.payloadItemToJson(Mockito.any(), Mockito.any())).thenAnswer(invocation -> invocation.getArgument(1));
+        store = new JsonStore<>(jsonService, journalStorageService, "uid1", 0, true);
+
+        // changes are appended
+        store.addAll(testData);
+        store.remove(testDataOne);
+        store.remove(testDataOne);
+        store.clear();
+        Mockito.verify(journalStorageService, Mockito.never()).write(Mockito.any(), Mockito.any());
+
+        ArgumentCaptor<List<JournalRecord>> records = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(journalStorageService, Mockito.times(3)).append(Mockito.any(), records.capture());
+        Assert.assertEquals(2, records.getAllValues().get(0).size());
+        Assert.assertEquals(Operation.ADD, records.getAllValues().get(0).get(0).getOperation());
+        Assert.assertEquals(Operation.REMOVE, records.getAllValues().get(1).get(0).getOperation());
+        Assert.assertEquals(testDataOne, records.getAllValues().get(1).get(0).getJson());
+        Assert.assertEquals(Operation.CLEAR, records.getAllValues().get(2).get(0).getOperation());
+
+        // explicit save writes snapshot
+        store.save();
+        Mockito.verify(journalStorageService, Mockito.times(1)).write(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void journalReplay() {
+        JournalStorageService journalStorageService = Mockito.mock(JournalStorageService.class);
+        Mockito.when(journalStorageService.isJournaling(Mockito.any())).thenReturn(true);
+        Mockito.when(jsonService.payloadItemFromJson(Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any())).thenAnswer(invocation -> invocation.getArgument(3));
+        Mockito.doAnswer(invocation -> {
+            Consumer<JournalRecord> consumer = invocation.getArgument(1);
+            consumer.accept(new JournalRecord(Operation.ADD, 0, testDataOne));
+            consumer.accept(new JournalRecord(Operation.CLEAR, 0, null));
+            consumer.accept(new JournalRecord(Operation.ADD, 0, testDataOne));
+            consumer.accept(new JournalRecord(Operation.ADD, 0, testDataTwo));
+            consumer.accept(new JournalRecord(Operation.REMOVE, 0, testDataOne));
+            return null;
+        }).when(journalStorageService).readJournal(Mockito.any(), Mockito.any());
+        store = new JsonStore<>(jsonService, journalStorageService, "uid1", 0, true);
+
+        store.load();
+        Assert.assertEquals(1, store.size());
+        Assert.assertTrue(store.contains(testDataTwo));
+        Mockito.verify(journalStorageService, Mockito.never()).write(Mockito.any(), Mockito.any());
+    }
+
     private void assertPersistenceInteractions(int times) {
-        Mockito.verify(jsonService, Mockito.times(times)).toJson(Mockito.any());
         Mockito.verify(storageService, Mockito.times(times)).write(Mockito.any(), Mockito.any());
     }
 }
@@ -11,6 +11,7 @@ public class JsonStoresTest {
 
     private static final String UID = "test-uid";
     private static final String UID_SINGLETON = "test-uid-singleton";
+    private static final String UID_MAP = "test-uid-map";
 
     private JsonStores stores;
 
@@ -61,6 +62,15 @@ public class JsonStoresTest {
         assertStoreLifecycle(true, false);
     }
 
+    @Test
+    public void concurrentMode() {
+        Assert.assertTrue(stores.ensure(UID, 0, true).isConcurrent());
+        Assert.assertFalse(stores.ensure(UID_SINGLETON, 0).isConcurrent());
+
+        // mode is fixed on creation
+        Assert.assertTrue(stores.ensure(UID, 0).isConcurrent());
+    }
+
     @SuppressWarnings("unchecked")
     private void assertStoreLifecycle(boolean isSingleton, boolean isAutoSave) {
 
@@ -100,7 +110,8 @@ public class JsonStoresTest {
         }
         stores.save();
         assertLoadInteractions(1);
-        assertSaveInteractions(isAutoSave ? 2 : 1);
+        assertSaveInteractions(1);
+        Assert.assertFalse(store.isDirty());
 
         // drop
         AbstractJsonStore<?, ?> droppedStore = isSingleton ? stores.dropSingleton(UID_SINGLETON) : stores.drop(UID);
@@ -109,16 +120,14 @@ public class JsonStoresTest {
         Assert.assertNull(store);
         Assert.assertEquals(0, stores.computeMetrics().getMetrics().size());
         assertLoadInteractions(1);
-        assertSaveInteractions(isAutoSave ? 2 : 1);
+        assertSaveInteractions(1);
     }
 
     private void assertLoadInteractions(int times) {
-        Mockito.verify(jsonService, Mockito.times(times)).fromJson(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
-        Mockito.verify(storageService, Mockito.times(times)).read(Mockito.any());
+        Mockito.verify(storageService, Mockito.times(times)).read(Mockito.any(), Mockito.any());
     }
 
     private void assertSaveInteractions(int times) {
-        Mockito.verify(jsonService, Mockito.times(times)).toJson(Mockito.any());
         Mockito.verify(storageService, Mockito.times(times)).write(Mockito.any(), Mockito.any());
     }
 
@@ -126,6 +135,104 @@ public class JsonStoresTest {
     public void mixedMetrics() {
         stores.ensure(UID, 0);
         stores.ensureSingleton(UID_SINGLETON, 0);
-        Assert.assertEquals(2, stores.computeMetrics().getMetrics().size());
+        stores.ensureMap(UID_MAP, 0, String::length);
+        Assert.assertEquals(3, stores.computeMetrics().getMetrics().size());
+    }
+
+    @Test
+    public void saveDirtyStoresOnly() {
+        stores = JsonStores.builder(jsonService, storageService).build();
+        JsonStore<String> store = stores.ensure(UID, 0);
+        JsonSingletonStore<String> singletonStore = stores.ensureSingleton(UID_SINGLETON, 0);
+        JsonMapStore<Integer, String> mapStore = stores.ensureMap(UID_MAP, 0, String::length);
+        stores.save();
+        assertSaveInteractions(0);
+
+        // changed stores only
+        store.add(testData);
+        mapStore.put(testData);
+        Assert.assertTrue(store.isDirty());
+        Assert.assertFalse(singletonStore.isDirty());
+        stores.save();
+        assertSaveInteractions(2);
+        Assert.assertFalse(store.isDirty());
+        Assert.assertFalse(mapStore.isDirty());
+
+        // nothing left
+        stores.save();
+        assertSaveInteractions(2);
+    }
+
+    @Test
+    public void batch() {
+        JsonStore<String> store = stores.ensure(UID, 0);
+        JsonSingletonStore<String> singletonStore = stores.ensureSingleton(UID_SINGLETON, 0);
+        JsonMapStore<Integer, String> mapStore = stores.ensureMap(UID_MAP, 0, String::length);
+        stores.batch(() -> {
+            store.add("one");
+            store.add("two");
+            singletonStore.set(testData);
+            singletonStore.set(testData + " changed");
+        });
+
+        // single save per changed store
+        assertSaveInteractions(2);
+        Assert.assertEquals(2, store.size());
+        Assert.assertTrue(mapStore.isEmpty());
+
+        // auto-save is active again
+        mapStore.put(testData);
+        assertSaveInteractions(3);
+    }
+
+    @Test
+    public void batchFailure() {
+        JsonStore<String> store = stores.ensure(UID, 0);
+        Mockito.doThrow(new JsonStoreException("save failed!!")).when(storageService).write(Mockito.any(), Mockito.any());
+
+        // failure of operation is kept, failing save is suppressed
+        IllegalStateException failure = new IllegalStateException("operation failed");
+        try {
+            stores.batch(() -> {
+                store.add("one");
+                throw failure;
+            });
+            Assert.fail("exception expected");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(failure, e);
+            Assert.assertEquals(1, e.getSuppressed().length);
+            Assert.assertEquals("save failed!!", e.getSuppressed()[0].getMessage());
+        }
+        assertSaveInteractions(1);
+
+        // failing save is reported if operation succeeds
+        try {
+            stores.batch(() -> store.add("two"));
+            Assert.fail("exception expected");
+        } catch (JsonStoreException e) {
+            Assert.assertEquals("save failed!!", e.getMessage());
+        }
+        assertSaveInteractions(2);
+    }
+
+    @Test
+    public void mapStoreLifecycle() {
+        Assert.assertNull(stores.resolveMap(UID_MAP));
+
+        // ensure
+        JsonMapStore<Integer, String> store = stores.ensureMap(UID_MAP, 0, String::length);
+        Assert.assertSame(store, stores.ensureMap(UID_MAP, 0, String::isEmpty));
+        Assert.assertSame(store, stores.resolveMap(UID_MAP));
+        assertLoadInteractions(1);
+
+        // save
+        store.put(testData);
+        stores.save();
+        assertSaveInteractions(1);
+
+        // drop
+        Assert.assertSame(store, stores.dropMap(UID_MAP));
+        Assert.assertNull(stores.resolveMap(UID_MAP));
+        Mockito.verify(storageService, Mockito.times(1)).delete(Mockito.any());
     }
 }
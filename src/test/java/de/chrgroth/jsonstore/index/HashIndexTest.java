@@ -0,0 +1,74 @@
+package de.chrgroth.jsonstore.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashIndexTest {
+
+    private HashIndex<String, Integer> index;
+
+    @Before
+    public void setup() {
+        index = new HashIndex<>(String::length);
+    }
+
+    @Test
+    public void addRemove() {
+        index.add("one");
+        index.add("two");
+        index.add("three");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("one", "two")), index.lookup(3));
+        Assert.assertEquals(Collections.singleton("three"), index.lookup(5));
+        Assert.assertTrue(index.lookup(4).isEmpty());
+        Assert.assertEquals(2, index.keys());
+
+        // empty keys are dropped
+        index.remove("three");
+        index.remove("unknown");
+        Assert.assertTrue(index.lookup(5).isEmpty());
+        Assert.assertEquals(1, index.keys());
+    }
+
+    @Test
+    public void nullKey() {
+        HashIndex<String, String> nullIndex = new HashIndex<>(s -> s.isEmpty() ? null : s);
+        nullIndex.add("");
+        Assert.assertEquals(Collections.singleton(""), nullIndex.lookup(null));
+    }
+
+    @Test
+    public void rebuild() {
+        index.add("one");
+        index.rebuild(Arrays.asList("three", "four"));
+        Assert.assertTrue(index.lookup(3).isEmpty());
+        Assert.assertEquals(Collections.singleton("four"), index.lookup(4));
+        index.clear();
+        Assert.assertEquals(0, index.keys());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void lookupImmutable() {
+        index.add("one");
+        index.lookup(3).add("two");
+    }
+
+    @Test
+    public void lookupUnchanged() {
+        index.add("one");
+        index.add("two");
+        Set<String> looked = index.lookup(3);
+        Assert.assertSame(looked, index.lookup(3));
+
+        // changes copy looked up elements
+        index.add("six");
+        index.remove("one");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("one", "two")), looked);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("two", "six")), index.lookup(3));
+    }
+}
@@ -0,0 +1,66 @@
+package de.chrgroth.jsonstore.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SortedIndexTest {
+
+    private SortedIndex<String, Integer> index;
+
+    @Before
+    public void setup() {
+        index = SortedIndex.naturalOrder(s -> s.isEmpty() ? null : Integer.valueOf(s));
+        index.rebuild(Arrays.asList("4", "1", "3", "2", "5"));
+    }
+
+    @Test
+    public void range() {
+        Assert.assertEquals(Arrays.asList("2", "3"), index.range(2, 4));
+        Assert.assertEquals(Arrays.asList("1", "2"), index.range(null, 3));
+        Assert.assertEquals(Arrays.asList("4", "5"), index.range(4, null));
+        Assert.assertTrue(index.range(6, null).isEmpty());
+        Assert.assertTrue(index.range(3, 3).isEmpty());
+    }
+
+    @Test
+    public void rangeInverted() {
+        Assert.assertTrue(index.range(4, 2).isEmpty());
+    }
+
+    @Test
+    public void firstLast() {
+        Assert.assertEquals("1", index.first());
+        Assert.assertEquals("5", index.last());
+        index.clear();
+        Assert.assertNull(index.first());
+        Assert.assertNull(index.last());
+    }
+
+    @Test
+    public void ordered() {
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), index.ascending(3));
+        Assert.assertEquals(Arrays.asList("5", "4"), index.descending(2));
+        Assert.assertEquals(5, index.ascending(Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void nullKeysSkipped() {
+        index.add("");
+        index.remove("");
+        Assert.assertEquals(5, index.keys());
+        Assert.assertTrue(index.lookup(null).isEmpty());
+    }
+
+    @Test
+    public void comparator() {
+        SortedIndex<String, Integer> reversed = new SortedIndex<>(Integer::valueOf, Comparator.reverseOrder());
+        reversed.rebuild(Arrays.asList("1", "2"));
+        Assert.assertEquals(Arrays.asList("2", "1"), reversed.ascending(2));
+        Assert.assertEquals(Collections.singleton("1"), reversed.lookup(1));
+    }
+}
@@ -1,5 +1,7 @@
 package de.chrgroth.jsonstore.json;
 
+import java.io.Reader;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -44,10 +46,30 @@ public class AbstractJsonServiceMigrationTest {
             return null;
         }
 
+        @Override
+        public void toJson(JsonStoreMetadata<?> metadata, Writer writer) {
+
+        }
+
         @Override
         public void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, String json, Consumer<Boolean> successConsumer) {
 
         }
+
+        @Override
+        public void fromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, Reader json, Consumer<Boolean> successConsumer) {
+
+        }
+
+        @Override
+        public String payloadItemToJson(JsonStoreMetadata<?> metadata, Object payloadItem) {
+            return null;
+        }
+
+        @Override
+        public Object payloadItemFromJson(JsonStoreMetadata<?> metadata, Map<Integer, VersionMigrationHandler> migrationHandlers, int payloadTypeVersion, String json) {
+            return null;
+        }
     };
 
     private Map<Integer, Integer> versionsMigrated;
@@ -1,5 +1,7 @@
 package de.chrgroth.jsonstore.json;
 
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
@@ -10,9 +12,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -32,6 +39,12 @@ public abstract class AbstractJsonServiceTest {
     protected static final float DELTA_FLOAT = 0.0f;
     protected static final double DELTA_DOUBLE = 0.0;
 
+    private static final int THREADS = 4;
+    private static final int ROUNDTRIPS_PER_THREAD = 25;
+
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNKED_ITEMS = 10;
+
     protected Date dateOne;
     protected Date dateTwo;
 
@@ -170,10 +183,14 @@ public abstract class AbstractJsonServiceTest {
 
     protected abstract JsonService createJsonService();
 
+    protected JsonService createChunkedJsonService(int chunkSize) {
+        return null;
+    }
+
     @Test
     public void fromJsonNull() {
         metadata.setPayload(null);
-        jsonService.fromJson(metadata, null, null, migrated -> {
+        jsonService.fromJson(metadata, null, (String) null, migrated -> {
             consumerCalled.incrementAndGet();
         });
         Assert.assertNull(metadata.getPayload());
@@ -210,6 +227,93 @@ public abstract class AbstractJsonServiceTest {
         assertTestEntity(metadata.getPayload());
     }
 
+    @Test
+    public void fromJsonEmptyReader() {
+        metadata.setPayload(null);
+        jsonService.fromJson(metadata, null, new StringReader("  "), migrated -> {
+            consumerCalled.incrementAndGet();
+        });
+        Assert.assertNull(metadata.getPayload());
+        Assert.assertEquals(0, consumerCalled.intValue());
+    }
+
+    @Test
+    public void toJsonFromJsonStreamedRoundtrip() {
+        StringWriter writer = new StringWriter();
+        jsonService.toJson(metadata, writer);
+        jsonService.fromJson(metadata, null, new StringReader(writer.toString()), migrated -> {
+            consumerCalled.incrementAndGet();
+        });
+        Assert.assertEquals(1, consumerCalled.intValue());
+        assertTestEntity(metadata.getPayload());
+    }
+
+    @Test
+    public void payloadItemRoundtrip() {
+        String json = jsonService.payloadItemToJson(metadata, metadata.getPayload());
+        Assert.assertFalse(json.contains("\n"));
+        assertTestEntity((AllFieldsTestEntity) jsonService.payloadItemFromJson(metadata, null, metadata.getPayloadTypeVersion(), json));
+    }
+
+    @Test
+    public void toJsonStreamed() {
+        StringWriter writer = new StringWriter();
+        jsonService.toJson(metadata, writer);
+        Assert.assertEquals(jsonService.toJson(metadata), writer.toString());
+    }
+
+    @Test
+    public void concurrentRoundtrips() throws InterruptedException, ExecutionException {
+        String json = jsonService.toJson(metadata);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<AllFieldsTestEntity>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS * ROUNDTRIPS_PER_THREAD; i++) {
+                results.add(executor.submit(() -> {
+                    JsonStoreMetadata<AllFieldsTestEntity> target = new JsonStoreMetadata<>();
+                    target.setUid(metadata.getUid());
+                    target.setPayloadTypeVersion(metadata.getPayloadTypeVersion());
+                    Assert.assertEquals(json, jsonService.toJson(metadata));
+                    jsonService.fromJson(target, null, json, null);
+                    return target.getPayload();
+                }));
+            }
+            for (Future<AllFieldsTestEntity> result : results) {
+                assertTestEntity(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void chunkedRoundtrip() {
+        JsonService chunkedJsonService = createChunkedJsonService(CHUNK_SIZE);
+        Assume.assumeNotNull(chunkedJsonService);
+
+        // create list payload consisting of several chunks
+        List<ReferencedChildEntity> items = new ArrayList<>();
+        for (int i = 0; i < CHUNKED_ITEMS; i++) {
+            items.add(new ReferencedChildEntity(ENTITY_ONE_VALUE + i));
+        }
+        JsonStoreMetadata<List<ReferencedChildEntity>> listMetadata = new JsonStoreMetadata<>();
+        listMetadata.setUid("list");
+        listMetadata.setPayloadTypeVersion(1);
+        listMetadata.setPayload(items);
+
+        // roundtrip keeps order
+        String json = jsonService.toJson(listMetadata);
+        listMetadata.setPayload(null);
+        chunkedJsonService.fromJson(listMetadata, null, json, null);
+        Assert.assertEquals(items, listMetadata.getPayload());
+
+        // chunked roundtrip
+        json = chunkedJsonService.toJson(listMetadata);
+        listMetadata.setPayload(null);
+        chunkedJsonService.fromJson(listMetadata, null, json, null);
+        Assert.assertEquals(items, listMetadata.getPayload());
+    }
+
     protected void assertTestEntity(AllFieldsTestEntity entity) {
 
         Assert.assertEquals((byte) 13, entity.getByt());
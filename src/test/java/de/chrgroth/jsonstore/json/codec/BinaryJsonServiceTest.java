@@ -0,0 +1,102 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.chrgroth.jsonstore.JsonService;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.json.AbstractJsonServiceTest;
+import de.chrgroth.jsonstore.json.model.AllFieldsTestEntity;
+import de.chrgroth.jsonstore.json.model.ReferencedChildEntity;
+
+public class BinaryJsonServiceTest extends AbstractJsonServiceTest {
+
+    private static final int LARGE_ITEMS = 2000;
+
+    private final CodecJsonService codecJsonService = CodecJsonService.builder().setDeepSerialize(true).build();
+
+    @Override
+    protected JsonService createJsonService() {
+        return BinaryJsonService.builder().setDeepSerialize(true).build();
+    }
+
+    @Override
+    protected JsonService createChunkedJsonService(int chunkSize) {
+        return BinaryJsonService.builder().setDeepSerialize(true).setDeserializationChunkSize(chunkSize).build();
+    }
+
+    @Test
+    public void binaryData() {
+        String data = jsonService.toJson(metadata);
+        Assert.assertTrue(data.startsWith(BinaryJsonService.COMPRESSED_PREFIX));
+        Assert.assertTrue(data.length() < codecJsonService.toJson(metadata).length());
+
+        // single line items for journals
+        String item = jsonService.payloadItemToJson(metadata, metadata.getPayload());
+        Assert.assertTrue(item.startsWith(BinaryJsonService.COMPRESSED_PREFIX));
+        Assert.assertFalse(item.contains("\n"));
+    }
+
+    @Test
+    public void uncompressed() {
+        JsonService uncompressedJsonService = BinaryJsonService.builder().setDeepSerialize(true).setCompression(false).build();
+        String data = uncompressedJsonService.toJson(metadata);
+        Assert.assertTrue(data.startsWith(BinaryJsonService.PREFIX));
+        Assert.assertTrue(jsonService.toJson(metadata).length() < data.length());
+
+        // both variants are readable
+        metadata.setPayload(null);
+        jsonService.fromJson(metadata, null, data, null);
+        assertTestEntity(metadata.getPayload());
+        data = jsonService.toJson(metadata);
+        metadata.setPayload(null);
+        uncompressedJsonService.fromJson(metadata, null, data, null);
+        assertTestEntity(metadata.getPayload());
+    }
+
+    @Test
+    public void fromJson() {
+        String json = codecJsonService.toJson(metadata);
+        metadata.setPayload(null);
+        jsonService.fromJson(metadata, null, json, null);
+        assertTestEntity(metadata.getPayload());
+
+        // items
+        json = codecJsonService.payloadItemToJson(metadata, metadata.getPayload());
+        assertTestEntity((AllFieldsTestEntity) jsonService.payloadItemFromJson(metadata, null, metadata.getPayloadTypeVersion(), json));
+    }
+
+    @Test
+    public void exportJson() {
+        BinaryJsonService binaryJsonService = (BinaryJsonService) jsonService;
+        String json = codecJsonService.toJson(metadata);
+        String expected = binaryJsonService.exportJson(json);
+        Assert.assertEquals(new JsonParser(new StringReader(json)).nextValue().toString(), new JsonParser(new StringReader(expected)).nextValue().toString());
+        Assert.assertEquals(expected, binaryJsonService.exportJson(binaryJsonService.toJson(metadata)));
+    }
+
+    @Test
+    public void largeRoundtrip() {
+
+        // data exceeds read buffer, including strings spanning several blocks
+        List<ReferencedChildEntity> items = new ArrayList<>();
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < LARGE_ITEMS; i++) {
+            items.add(new ReferencedChildEntity(ENTITY_ONE_VALUE + i));
+            longValue.append(ENTITY_TWO_VALUE);
+        }
+        items.add(new ReferencedChildEntity(longValue.toString()));
+        JsonStoreMetadata<List<ReferencedChildEntity>> listMetadata = new JsonStoreMetadata<>();
+        listMetadata.setUid("list");
+        listMetadata.setPayload(items);
+
+        String data = jsonService.toJson(listMetadata);
+        listMetadata.setPayload(null);
+        jsonService.fromJson(listMetadata, null, new StringReader(data), null);
+        Assert.assertEquals(items, listMetadata.getPayload());
+    }
+}
@@ -0,0 +1,116 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.chrgroth.jsonstore.JsonService;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.json.AbstractJsonServiceTest;
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonService;
+import de.chrgroth.jsonstore.json.flexjson.model.FlexjsonTestDataChild;
+import de.chrgroth.jsonstore.json.flexjson.model.FlexjsonTestDataParent;
+import de.chrgroth.jsonstore.json.model.AllFieldsTestEntity;
+
+public class CodecJsonServiceCompatibilityTest extends AbstractJsonServiceTest {
+
+    // not accessible for generated lambdas, so method handles are used
+    static class NonPublicEntity {
+        private String value;
+        private int[] numbers;
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        public int[] getNumbers() {
+            return numbers;
+        }
+
+        public void setNumbers(int[] numbers) {
+            this.numbers = numbers;
+        }
+    }
+
+    private final FlexjsonService flexjsonService = FlexjsonService.builder().setDeepSerialize(true).build();
+
+    @Override
+    protected JsonService createJsonService() {
+        return CodecJsonService.builder().setDeepSerialize(true).build();
+    }
+
+    @Test
+    public void sameJsonAsFlexjson() {
+        metadata.setCreated(dateOne);
+        Assert.assertEquals(flexjsonService.toJson(metadata), jsonService.toJson(metadata));
+        Assert.assertEquals(flexjsonService.payloadItemToJson(metadata, metadata.getPayload()), jsonService.payloadItemToJson(metadata, metadata.getPayload()));
+    }
+
+    @Test
+    public void fromFlexjson() {
+        String json = flexjsonService.toJson(metadata);
+        metadata.setPayload(null);
+        jsonService.fromJson(metadata, null, json, null);
+        assertTestEntity(metadata.getPayload());
+    }
+
+    @Test
+    public void toFlexjson() {
+        String json = jsonService.toJson(metadata);
+        metadata.setPayload(null);
+        flexjsonService.fromJson(metadata, null, json, null);
+        assertTestEntity(metadata.getPayload());
+    }
+
+    @Test
+    public void payloadItemFromFlexjson() {
+        String json = flexjsonService.payloadItemToJson(metadata, metadata.getPayload());
+        assertTestEntity((AllFieldsTestEntity) jsonService.payloadItemFromJson(metadata, null, metadata.getPayloadTypeVersion(), json));
+    }
+
+    @Test
+    public void nonDeepSerialize() {
+
+        // collections are skipped like with flexjson
+        FlexjsonTestDataParent parent = new FlexjsonTestDataParent(1, "parent");
+        parent.add(new FlexjsonTestDataChild("child"));
+        JsonStoreMetadata<List<FlexjsonTestDataParent>> listMetadata = new JsonStoreMetadata<>();
+        listMetadata.setUid("list");
+        listMetadata.setCreated(new Date());
+        listMetadata.setPayload(Arrays.asList(parent));
+        JsonService shallowService = CodecJsonService.builder().build();
+        String json = shallowService.toJson(listMetadata);
+        Assert.assertEquals(FlexjsonService.builder().build().toJson(listMetadata), json);
+
+        // load
+        shallowService.fromJson(listMetadata, null, json, null);
+        Assert.assertEquals(1, listMetadata.getPayload().size());
+        Assert.assertNull(listMetadata.getPayload().get(0).getChildren());
+    }
+
+    @Test
+    public void nonPublicPayloadClass() {
+        NonPublicEntity entity = new NonPublicEntity();
+        entity.setValue(ENTITY_ONE_VALUE);
+        entity.setNumbers(new int[] { 7, 13 });
+        JsonStoreMetadata<NonPublicEntity> entityMetadata = new JsonStoreMetadata<>();
+        entityMetadata.setUid("entity");
+        entityMetadata.setSingleton(true);
+        entityMetadata.setPayload(entity);
+        String json = jsonService.toJson(entityMetadata);
+        Assert.assertEquals(flexjsonService.toJson(entityMetadata), json);
+
+        // load
+        entityMetadata.setPayload(null);
+        jsonService.fromJson(entityMetadata, null, json, null);
+        Assert.assertEquals(ENTITY_ONE_VALUE, entityMetadata.getPayload().getValue());
+        Assert.assertArrayEquals(new int[] { 7, 13 }, entityMetadata.getPayload().getNumbers());
+    }
+}
@@ -0,0 +1,17 @@
+package de.chrgroth.jsonstore.json.codec;
+
+import de.chrgroth.jsonstore.JsonService;
+import de.chrgroth.jsonstore.json.AbstractJsonServiceTest;
+
+public class CodecJsonServiceTest extends AbstractJsonServiceTest {
+
+    @Override
+    protected JsonService createJsonService() {
+        return CodecJsonService.builder().setPrettyPrint(true).setDeepSerialize(true).build();
+    }
+
+    @Override
+    protected JsonService createChunkedJsonService(int chunkSize) {
+        return CodecJsonService.builder().setDeepSerialize(true).setDeserializationChunkSize(chunkSize).build();
+    }
+}
@@ -1,12 +1,54 @@
 package de.chrgroth.jsonstore.json.flexjson;
 
+import java.io.StringWriter;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
 import de.chrgroth.jsonstore.JsonService;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
 import de.chrgroth.jsonstore.json.AbstractJsonServiceTest;
+import de.chrgroth.jsonstore.json.model.AllFieldsTestEntity;
 
 public class FlexjsonServiceTest extends AbstractJsonServiceTest {
 
+    private static final int CHUNK_SIZE = 2;
+    private static final int ITEMS = 50;
+
     @Override
     protected JsonService createJsonService() {
         return FlexjsonService.builder().setPrettyPrint(true).setDeepSerialize(true).build();
     }
+
+    @Override
+    protected JsonService createChunkedJsonService(int chunkSize) {
+        return FlexjsonService.builder().setDeepSerialize(true).setSerializationChunkSize(chunkSize).setDeserializationChunkSize(chunkSize).build();
+    }
+
+    @Test
+    public void chunkedSerialization() {
+        Set<AllFieldsTestEntity> items = new LinkedHashSet<>();
+        for (int i = 0; i < ITEMS; i++) {
+            AllFieldsTestEntity item = createTestEntity();
+            item.setInteger(i);
+            items.add(item);
+        }
+        JsonStoreMetadata<Set<AllFieldsTestEntity>> setMetadata = new JsonStoreMetadata<>();
+        setMetadata.setUid("set");
+        setMetadata.setCreated(dateOne);
+        setMetadata.setPayload(items);
+
+        // same JSON data as serialized at once
+        for (boolean deepSerialize : new boolean[] { true, false }) {
+            FlexjsonService unchunked = FlexjsonService.builder().setDeepSerialize(deepSerialize).setSerializationChunkSize(0).build();
+            FlexjsonService chunked = FlexjsonService.builder().setDeepSerialize(deepSerialize).setSerializationChunkSize(CHUNK_SIZE).build();
+            String json = unchunked.toJson(setMetadata);
+            Assert.assertEquals(json, chunked.toJson(setMetadata));
+            StringWriter writer = new StringWriter();
+            chunked.toJson(setMetadata, writer);
+            Assert.assertEquals(json, writer.toString());
+        }
+    }
 }
@@ -0,0 +1,106 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+
+import de.chrgroth.jsonstore.JsonStoreException;
+
+public class DurabilityTest {
+
+    private static final int WRITERS = 4;
+    private static final long LONG_INTERVAL_MILLIS = 60000;
+    private static final long SHORT_INTERVAL_MILLIS = 50;
+
+    private File baseDir;
+
+    @Before
+    public void setup() {
+        baseDir = Files.createTempDir();
+    }
+
+    private File createFile(String name) {
+        File file = new File(baseDir, name);
+        try {
+            Files.write(name, file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return file;
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void groupCommitNegativeInterval() {
+        Durability.groupCommit(-1, 1);
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void groupCommitNoWrites() {
+        Durability.groupCommit(1, 0);
+    }
+
+    @Test
+    public void none() throws IOException {
+        Durability durability = Durability.none();
+        long commits = durability.commits();
+        durability.force(createFile("none").toPath());
+        Assert.assertEquals(commits, durability.commits());
+    }
+
+    @Test
+    public void sync() throws IOException {
+        Durability durability = Durability.sync();
+        long commits = durability.commits();
+        durability.force(createFile("sync").toPath(), baseDir.toPath());
+        Assert.assertEquals(commits + 1, durability.commits());
+    }
+
+    @Test
+    public void groupCommitMaxWrites() throws InterruptedException, ExecutionException {
+        Durability durability = Durability.groupCommit(LONG_INTERVAL_MILLIS, WRITERS);
+        List<File> files = IntStream.range(0, WRITERS).mapToObj(i -> createFile("group" + i)).collect(Collectors.toList());
+
+        // all writers share a single commit without waiting for the interval
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            List<Future<Object>> futures = executor.invokeAll(files.stream().map(file -> (Callable<Object>) () -> {
+                durability.force(file.toPath(), baseDir.toPath());
+                return null;
+            }).collect(Collectors.toList()));
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+            Assert.assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < LONG_INTERVAL_MILLIS);
+            Assert.assertEquals(1, durability.commits());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void groupCommitInterval() throws IOException {
+        Durability durability = Durability.groupCommit(SHORT_INTERVAL_MILLIS, WRITERS);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        durability.force(createFile("interval").toPath());
+        Assert.assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) >= SHORT_INTERVAL_MILLIS);
+        Assert.assertEquals(1, durability.commits());
+    }
+}
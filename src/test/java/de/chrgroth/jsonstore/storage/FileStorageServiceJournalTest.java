@@ -0,0 +1,146 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import de.chrgroth.jsonstore.JsonMapStore;
+import de.chrgroth.jsonstore.JsonStore;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.JsonStores;
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonService;
+import de.chrgroth.jsonstore.model.TestDataVersion1;
+
+public class FileStorageServiceJournalTest {
+
+    private static final String UID = "journal-uid";
+
+    private File baseDir;
+    private FileStorageService storageService;
+    private JsonStoreMetadata<?> metadata;
+    private TestDataVersion1 one;
+    private TestDataVersion1 two;
+
+    @Before
+    public void setup() {
+        baseDir = Files.createTempDir();
+        storageService = FileStorageService.builder().storage(baseDir).journal(true).build();
+        metadata = new JsonStoreMetadata<>();
+        metadata.setUid(UID);
+        one = create("1", "one");
+        two = create("2", "two\nwith line break");
+    }
+
+    private TestDataVersion1 create(String id, String name) {
+        TestDataVersion1 data = new TestDataVersion1();
+        data.id = id;
+        data.name = name;
+        return data;
+    }
+
+    private JsonStore<TestDataVersion1> ensureStore() {
+        JsonStores stores = JsonStores.builder(FlexjsonService.builder().build(), storageService).autoSave(true).build();
+        return stores.ensure(UID, 1);
+    }
+
+    private JsonStores compactingStores() {
+        return JsonStores.builder(FlexjsonService.builder().build(), storageService).autoSave(true).journalCompaction(1, 0).build();
+    }
+
+    @Test
+    public void replayOnLoad() {
+
+        // journal changes
+        JsonStore<TestDataVersion1> store = ensureStore();
+        store.addAll(Arrays.asList(one, two));
+        store.remove(one);
+        Assert.assertFalse(storageService.resolveFile(metadata).exists());
+        Assert.assertTrue(storageService.resolveJournalFile(metadata).exists());
+
+        // reload
+        store = ensureStore();
+        Assert.assertEquals(1, store.size());
+        Assert.assertTrue(store.contains(two));
+    }
+
+    @Test
+    public void replayOnSnapshot() {
+
+        // snapshot and journal changes
+        JsonStore<TestDataVersion1> store = ensureStore();
+        store.add(one);
+        store.save();
+        Assert.assertFalse(storageService.resolveJournalFile(metadata).exists());
+        store.clear();
+        store.add(two);
+
+        // reload
+        store = ensureStore();
+        Assert.assertEquals(1, store.size());
+        Assert.assertTrue(store.contains(two));
+    }
+
+    @Test
+    public void mapStore() {
+
+        // journal changes
+        JsonStore<TestDataVersion1> store = ensureStore();
+        store.add(one);
+        store.save();
+        store.add(two);
+        store.remove(one);
+
+        // journal is replayed by map store
+        JsonStores stores = JsonStores.builder(FlexjsonService.builder().build(), storageService).autoSave(true).build();
+        JsonMapStore<String, TestDataVersion1> mapStore = stores.ensureMap(UID, 1, item -> item.id);
+        Assert.assertEquals(1, mapStore.size());
+        Assert.assertEquals(two, mapStore.get("2"));
+
+        // saving replaces the journal
+        mapStore.put(one);
+        Assert.assertFalse(storageService.resolveJournalFile(metadata).exists());
+        store = ensureStore();
+        Assert.assertEquals(2, store.size());
+    }
+
+    @Test
+    public void compaction() {
+
+        // journal changes triggering compaction
+        JsonStores stores = compactingStores();
+        JsonStore<TestDataVersion1> store = stores.ensure(UID, 1);
+        store.addAll(Arrays.asList(one, two));
+        store.remove(one);
+        stores.shutdown();
+        Assert.assertTrue(storageService.resolveFile(metadata).exists());
+
+        // reload
+        store = ensureStore();
+        Assert.assertEquals(1, store.size());
+        Assert.assertTrue(store.contains(two));
+    }
+
+    @Test
+    public void concurrentCompaction() {
+
+        // journal changes triggering compaction with snapshot taken in background
+        JsonStores stores = compactingStores();
+        JsonStore<TestDataVersion1> store = stores.ensure(UID, 1, true);
+        store.addAll(Arrays.asList(one, two));
+        store.remove(one);
+        store.add(one);
+        stores.shutdown();
+        Assert.assertTrue(storageService.resolveFile(metadata).exists());
+
+        // reload
+        store = ensureStore();
+        Assert.assertEquals(2, store.size());
+        Assert.assertTrue(store.contains(one));
+        Assert.assertTrue(store.contains(two));
+    }
+}
@@ -0,0 +1,173 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import de.chrgroth.jsonstore.JsonMapStore;
+import de.chrgroth.jsonstore.JsonStore;
+import de.chrgroth.jsonstore.JsonStoreException;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.JsonStores;
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonService;
+import de.chrgroth.jsonstore.model.TestDataVersion1;
+
+public class FileStorageServiceSegmentTest {
+
+    private static final String UID = "segment-uid";
+    private static final int SEGMENTS = 4;
+
+    private File baseDir;
+    private JsonStoreMetadata<?> metadata;
+    private Set<TestDataVersion1> data;
+
+    @Before
+    public void setup() {
+        baseDir = Files.createTempDir();
+        metadata = new JsonStoreMetadata<>();
+        metadata.setUid(UID);
+        data = IntStream.range(0, 100).mapToObj(i -> create(Integer.toString(i), "name " + i)).collect(Collectors.toSet());
+    }
+
+    private TestDataVersion1 create(String id, String name) {
+        TestDataVersion1 item = new TestDataVersion1();
+        item.id = id;
+        item.name = name;
+        return item;
+    }
+
+    private JsonStore<TestDataVersion1> ensureStore(int segments) {
+        FileStorageService storageService = FileStorageService.builder().storage(baseDir).segments(segments).build();
+        JsonStores stores = JsonStores.builder(FlexjsonService.builder().build(), storageService).autoSave(true).build();
+        return stores.ensure(UID, 1);
+    }
+
+    private Map<Integer, byte[]> segmentFiles(int segments) throws IOException {
+        FileStorageService storageService = FileStorageService.builder().storage(baseDir).build();
+        Map<Integer, byte[]> contents = new HashMap<>();
+        for (int segment = 0; segment < segments; segment++) {
+            File file = storageService.resolveSegmentFile(metadata, segment);
+            if (file.exists()) {
+                contents.put(segment, Files.toByteArray(file));
+            }
+        }
+        return contents;
+    }
+
+    @Test
+    public void dataCycle() {
+        JsonStore<TestDataVersion1> store = ensureStore(SEGMENTS);
+        store.addAll(data);
+        Assert.assertEquals(SEGMENTS, baseDir.listFiles().length);
+
+        // reload
+        store = ensureStore(SEGMENTS);
+        Assert.assertEquals(data, store.copy());
+    }
+
+    @Test
+    public void mapStore() {
+        JsonStore<TestDataVersion1> store = ensureStore(SEGMENTS);
+        store.addAll(data);
+
+        // segments are loaded by map store
+        FileStorageService storageService = FileStorageService.builder().storage(baseDir).segments(SEGMENTS).build();
+        JsonStores stores = JsonStores.builder(FlexjsonService.builder().build(), storageService).autoSave(true).build();
+        JsonMapStore<String, TestDataVersion1> mapStore = stores.ensureMap(UID, 1, item -> item.id);
+        Assert.assertEquals(data.size(), mapStore.size());
+        Assert.assertEquals(data, mapStore.stream().collect(Collectors.toSet()));
+
+        // saving keeps all items in a single file
+        mapStore.remove("0");
+        Assert.assertEquals(1, baseDir.listFiles().length);
+        store = ensureStore(SEGMENTS);
+        Assert.assertEquals(data.size() - 1, store.size());
+    }
+
+    @Test
+    public void rewriteChangedSegmentsOnly() throws IOException {
+        JsonStore<TestDataVersion1> store = ensureStore(SEGMENTS);
+        store.addAll(data);
+        Map<Integer, byte[]> before = segmentFiles(SEGMENTS);
+
+        // change single item
+        store = ensureStore(SEGMENTS);
+        TestDataVersion1 item = data.iterator().next();
+        store.remove(item);
+        Map<Integer, byte[]> after = segmentFiles(SEGMENTS);
+        int changedSegment = Hashing.consistentHash(item.hashCode(), SEGMENTS);
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            Assert.assertEquals(segment != changedSegment, Arrays.equals(before.get(segment), after.get(segment)));
+        }
+
+        // reload
+        data.remove(item);
+        Assert.assertEquals(data, ensureStore(SEGMENTS).copy());
+    }
+
+    @Test
+    public void changedSegments() {
+
+        // unsegmented to segmented
+        ensureStore(1).addAll(data);
+        JsonStore<TestDataVersion1> store = ensureStore(SEGMENTS);
+        Assert.assertEquals(data, store.copy());
+        store.save();
+        Assert.assertEquals(SEGMENTS, baseDir.listFiles().length);
+
+        // fewer segments
+        store = ensureStore(2);
+        Assert.assertEquals(data, store.copy());
+        store.save();
+        Assert.assertEquals(2, baseDir.listFiles().length);
+
+        // segmented to unsegmented
+        store = ensureStore(1);
+        Assert.assertEquals(data, store.copy());
+        store.save();
+        Assert.assertEquals(1, baseDir.listFiles().length);
+        Assert.assertEquals(data, ensureStore(1).copy());
+    }
+
+    @Test
+    public void failedSegmentStaysDirty() throws IOException {
+        JsonStore<TestDataVersion1> store = ensureStore(SEGMENTS);
+        store.addAll(data);
+
+        // block temp file of segment of removed item
+        TestDataVersion1 item = data.iterator().next();
+        int failingSegment = Hashing.consistentHash(item.hashCode(), SEGMENTS);
+        File segmentFile = FileStorageService.builder().storage(baseDir).build().resolveSegmentFile(metadata, failingSegment);
+        File blocker = new File(baseDir, segmentFile.getName() + FileStorageService.FILE_SEPARATOR + FileStorageService.FILE_SUFFIX_TEMP);
+        Assert.assertTrue(blocker.mkdir());
+        byte[] stale = Files.toByteArray(segmentFile);
+
+        // failure is reported and store stays dirty
+        try {
+            store.remove(item);
+            Assert.fail("segment write failure not reported");
+        } catch (JsonStoreException e) {
+            Assert.assertTrue(store.isDirty());
+        }
+        Assert.assertArrayEquals(stale, Files.toByteArray(segmentFile));
+
+        // failed segment is written on next save
+        Assert.assertTrue(blocker.delete());
+        store.save();
+        Assert.assertFalse(store.isDirty());
+        data.remove(item);
+        Assert.assertEquals(data, ensureStore(SEGMENTS).copy());
+    }
+}
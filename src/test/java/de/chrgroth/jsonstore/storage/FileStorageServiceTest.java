@@ -1,16 +1,36 @@
 package de.chrgroth.jsonstore.storage;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.base.Strings;
+import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 
+import de.chrgroth.jsonstore.JournalRecord;
+import de.chrgroth.jsonstore.JournalRecord.Operation;
 import de.chrgroth.jsonstore.JsonStoreException;
 import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.SegmentedStorageService;
 
 public class FileStorageServiceTest {
 
@@ -64,26 +84,349 @@ public class FileStorageServiceTest {
 
     @Test
     public void dataCycle() {
-        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", false);
+        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.UTF_8);
     }
 
     @Test
     public void dataCycleDifferentCharset() {
         storageService = FileStorageService.builder().storage(baseDir).charset(StandardCharsets.ISO_8859_1).build();
-        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", true);
+        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.ISO_8859_1);
     }
 
-    private void assertDataCycle(String data, boolean isIsoCharset) {
+    @Test
+    public void dataCycleMemoryMapped() {
+        storageService = FileStorageService.builder().storage(baseDir).memoryMapped(true).build();
+        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void dataCycleMemoryMappedDifferentCharset() {
+        storageService = FileStorageService.builder().storage(baseDir).charset(StandardCharsets.ISO_8859_1).memoryMapped(true).build();
+        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void dataCycleMemoryMappedEmpty() {
+        storageService = FileStorageService.builder().storage(baseDir).memoryMapped(true).build();
+        write("");
+        Assert.assertEquals("", read());
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void buildServiceNullCompression() {
+        FileStorageService.builder().storage(baseDir).compression(null).build();
+    }
+
+    @Test
+    public void dataCycleGzip() {
+        storageService = FileStorageService.builder().storage(baseDir).compression(FileCompression.GZIP).build();
+        assertCompressedDataCycle();
+    }
+
+    @Test
+    public void dataCycleDeflate() {
+        storageService = FileStorageService.builder().storage(baseDir).compression(FileCompression.DEFLATE).memoryMapped(true).build();
+        assertCompressedDataCycle();
+    }
+
+    @Test
+    public void dataCyclePerStoreCompression() {
+        storageService = FileStorageService.builder().storage(baseDir).compression(FileCompression.GZIP).compression(metadata.getUid(), FileCompression.NONE).build();
+        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.UTF_8);
+    }
+
+    private void assertCompressedDataCycle() {
+        String data = Strings.repeat("{\"class\":\"some.test.Content\",\"value\":\"äöü\"}", 1000);
+        write(data);
+        Assert.assertTrue(storageService.size(metadata) < data.length() / 10);
+        Assert.assertEquals(data, read());
+    }
+
+    @Test
+    public void changedCompression() {
+        write("plain");
+        storageService = FileStorageService.builder().storage(baseDir).compression(FileCompression.GZIP).build();
+        Assert.assertEquals("plain", read());
+        write("gzip");
+        storageService = FileStorageService.builder().storage(baseDir).compression(FileCompression.DEFLATE).build();
+        Assert.assertEquals("gzip", read());
+        write("deflate");
+        storageService = FileStorageService.builder().storage(baseDir).build();
+        Assert.assertEquals("deflate", read());
+    }
+
+    private void assertDataCycle(String data, Charset charset) {
         Assert.assertEquals(0, storageService.size(metadata));
-        Assert.assertNull(storageService.read(metadata));
+        Assert.assertNull(read());
         Assert.assertEquals(0, storageService.size(metadata));
-        storageService.write(metadata, data);
-        Assert.assertEquals(data.length() + 1 + (isIsoCharset ? 0 : 4), storageService.size(metadata));
-        Assert.assertEquals(data, storageService.read(metadata));
+        write(data);
+        Assert.assertEquals(data.getBytes(charset).length, storageService.size(metadata));
+        Assert.assertEquals(data, read());
+        storageService.delete(metadata);
+        Assert.assertEquals(0, storageService.size(metadata));
+    }
+
+    @Test
+    public void concurrentWrites() {
+        List<String> data = IntStream.range(0, 50).mapToObj(i -> Strings.repeat(Integer.toString(i), 10000)).collect(Collectors.toList());
+        data.parallelStream().forEach(d -> write(d));
+        Assert.assertTrue(data.contains(read()));
+        Assert.assertEquals(1, baseDir.listFiles().length);
+    }
+
+    @Test
+    public void failingWriteKeepsData() {
+        write("data");
+        try {
+            storageService.write(metadata, writer -> {
+                throw new IllegalStateException("serialization failed");
+            });
+            Assert.fail("exception expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals("data", read());
+        Assert.assertEquals(1, baseDir.listFiles().length);
+    }
+
+    @Test
+    public void failingWriteReported() {
+        write("data");
+
+        // blocked temp file
+        new File(baseDir, storageService.resolveFile(metadata).getName() + FileStorageService.FILE_SEPARATOR + FileStorageService.FILE_SUFFIX_TEMP).mkdir();
+        try {
+            write("changed");
+            Assert.fail("exception expected");
+        } catch (JsonStoreException e) {
+            // expected
+        }
+        Assert.assertEquals("data", read());
+    }
+
+    @Test
+    public void dataCycleMultipleLines() {
+        assertDataCycle("  first line\n\n   second line  \n", StandardCharsets.UTF_8);
+    }
+
+    private String read() {
+        AtomicReference<String> data = new AtomicReference<>();
+        storageService.read(metadata, reader -> {
+            try {
+                data.set(CharStreams.toString(reader));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return data.get();
+    }
+
+    private void write(String data) {
+        storageService.write(metadata, writer -> write(writer, data));
+    }
+
+    private void write(Writer writer, String data) {
+        try {
+            writer.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void journaling() {
+        Assert.assertFalse(storageService.isJournaling(metadata));
+        storageService = FileStorageService.builder().storage(baseDir).journal(true).journal("other-uid", false).build();
+        Assert.assertTrue(storageService.isJournaling(metadata));
+        metadata.setUid("other-uid");
+        Assert.assertFalse(storageService.isJournaling(metadata));
+        metadata.setUid("test-uid");
+        metadata.setSingleton(true);
+        Assert.assertFalse(storageService.isJournaling(metadata));
+    }
+
+    @Test
+    public void journalCycle() {
+        Assert.assertTrue(readJournal().isEmpty());
+
+        // append records
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.ADD, 1, "{\"a\":\"\\t\"}"), new JournalRecord(Operation.REMOVE, 2, "{}")));
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.CLEAR, 2, null)));
+        Assert.assertTrue(storageService.size(metadata) > 0);
+        List<JournalRecord> records = readJournal();
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals(Operation.ADD, records.get(0).getOperation());
+        Assert.assertEquals(1, records.get(0).getPayloadTypeVersion());
+        Assert.assertEquals("{\"a\":\"\\t\"}", records.get(0).getJson());
+        Assert.assertEquals(Operation.REMOVE, records.get(1).getOperation());
+        Assert.assertEquals(Operation.CLEAR, records.get(2).getOperation());
+        Assert.assertNull(records.get(2).getJson());
+
+        // snapshot discards journal
+        write("data");
+        Assert.assertTrue(readJournal().isEmpty());
+        Assert.assertEquals(4, storageService.size(metadata));
+
+        // delete removes journal
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.CLEAR, 2, null)));
         storageService.delete(metadata);
+        Assert.assertTrue(readJournal().isEmpty());
         Assert.assertEquals(0, storageService.size(metadata));
     }
 
+    @Test
+    public void journalIncompleteRecord() throws IOException {
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.ADD, 1, "{}")));
+        Files.append("ADD\t1\t{\"incomp", storageService.resolveJournalFile(metadata), StandardCharsets.UTF_8);
+        Assert.assertEquals(1, readJournal().size());
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void journalInvalidRecord() throws IOException {
+        Files.append("FOO\t1\t{}\n", storageService.resolveJournalFile(metadata), StandardCharsets.UTF_8);
+        readJournal();
+    }
+
+    @Test
+    public void compactionCycle() {
+        write("old");
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.ADD, 1, "{}")));
+        Assert.assertTrue(storageService.journalSize(metadata) > 0);
+
+        // rotated records are still replayed
+        storageService.rotateJournal(metadata);
+        Assert.assertEquals(0, storageService.journalSize(metadata));
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.REMOVE, 1, "{}")));
+        List<JournalRecord> records = readJournal();
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(Operation.ADD, records.get(0).getOperation());
+        Assert.assertEquals(Operation.REMOVE, records.get(1).getOperation());
+
+        // compaction only discards rotated records
+        storageService.compact(metadata, writer -> write(writer, "new"));
+        Assert.assertEquals("new", read());
+        records = readJournal();
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(Operation.REMOVE, records.get(0).getOperation());
+    }
+
+    @Test
+    public void compactionRotatesTwice() {
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.ADD, 1, "{}")));
+        storageService.rotateJournal(metadata);
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.REMOVE, 1, "{}")));
+        storageService.rotateJournal(metadata);
+        List<JournalRecord> records = readJournal();
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(Operation.ADD, records.get(0).getOperation());
+        Assert.assertEquals(Operation.REMOVE, records.get(1).getOperation());
+    }
+
+    @Test
+    public void compactionSkippedAfterWrite() {
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.ADD, 1, "{}")));
+        storageService.rotateJournal(metadata);
+        write("saved");
+        storageService.compact(metadata, writer -> write(writer, "compacted"));
+        Assert.assertEquals("saved", read());
+        Assert.assertTrue(readJournal().isEmpty());
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void buildServiceNullDurability() {
+        FileStorageService.builder().storage(baseDir).durability(null).build();
+    }
+
+    @Test
+    public void dataCycleSync() {
+        storageService = FileStorageService.builder().storage(baseDir).durability(Durability.sync()).journal(true).build();
+        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.UTF_8);
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.ADD, 1, "{}")));
+        Assert.assertEquals(1, readJournal().size());
+    }
+
+    @Test
+    public void dataCycleGroupCommit() {
+        storageService = FileStorageService.builder().storage(baseDir).durability(Durability.groupCommit(1, 1)).journal(true).build();
+        assertDataCycle("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.UTF_8);
+        storageService.append(metadata, Arrays.asList(new JournalRecord(Operation.ADD, 1, "{}")));
+        Assert.assertEquals(1, readJournal().size());
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void buildServiceInvalidSegments() {
+        FileStorageService.builder().storage(baseDir).segments(0).build();
+    }
+
+    @Test
+    public void segmentsCycle() {
+        storageService = FileStorageService.builder().storage(baseDir).segments(4).segments("other", 2).journal(true).build();
+        Assert.assertEquals(4, storageService.segments(metadata));
+        Assert.assertFalse(storageService.isJournaling(metadata));
+        Assert.assertTrue(readSegments().isEmpty());
+
+        // segments replace unsegmented data
+        write("data");
+        Map<Integer, Consumer<Writer>> segments = new HashMap<>();
+        segments.put(0, writer -> write(writer, "zero"));
+        segments.put(2, writer -> write(writer, "two"));
+        storageService.writeSegments(metadata, segments);
+        Assert.assertNull(read());
+        Map<Integer, String> data = readSegments();
+        Assert.assertEquals(2, data.size());
+        Assert.assertEquals("zero", data.get(0));
+        Assert.assertEquals("two", data.get(2));
+        Assert.assertEquals(7, storageService.size(metadata));
+
+        // other segments are kept
+        storageService.writeSegments(metadata, Collections.singletonMap(0, writer -> write(writer, "0")));
+        data = readSegments();
+        Assert.assertEquals("0", data.get(0));
+        Assert.assertEquals("two", data.get(2));
+
+        // unsegmented data replaces segments
+        write("data");
+        data = readSegments();
+        Assert.assertEquals(1, data.size());
+        Assert.assertEquals("data", data.get(SegmentedStorageService.UNSEGMENTED));
+
+        // delete removes segments
+        storageService.writeSegments(metadata, segments);
+        storageService.delete(metadata);
+        Assert.assertTrue(readSegments().isEmpty());
+        Assert.assertEquals(0, baseDir.listFiles().length);
+    }
+
+    @Test
+    public void segmentsStale() {
+        storageService = FileStorageService.builder().storage(baseDir).segments(8).build();
+        storageService.writeSegments(metadata, Collections.singletonMap(5, writer -> write(writer, "five")));
+        Assert.assertEquals("five", readSegments().get(5));
+        storageService = FileStorageService.builder().storage(baseDir).segments(4).build();
+        storageService.writeSegments(metadata, Collections.singletonMap(1, writer -> write(writer, "one")));
+        Map<Integer, String> data = readSegments();
+        Assert.assertEquals(1, data.size());
+        Assert.assertEquals("one", data.get(1));
+    }
+
+    private Map<Integer, String> readSegments() {
+        Map<Integer, String> data = new ConcurrentHashMap<>();
+        storageService.readSegments(metadata, (segment, reader) -> {
+            try {
+                data.put(segment, CharStreams.toString(reader));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return data;
+    }
+
+    private List<JournalRecord> readJournal() {
+        List<JournalRecord> records = new ArrayList<>();
+        storageService.readJournal(metadata, records::add);
+        return records;
+    }
+
     @Test
     public void resolveFile() {
         final File file = storageService.resolveFile(metadata);
@@ -92,6 +435,14 @@ public class FileStorageServiceTest {
         Assert.assertEquals("storage.test-uid.json", file.getName());
     }
 
+    @Test
+    public void resolveJournalFile() {
+        final File file = storageService.resolveJournalFile(metadata);
+        Assert.assertNotNull(file);
+        Assert.assertEquals(baseDir, file.getParentFile());
+        Assert.assertEquals("storage.test-uid.journal", file.getName());
+    }
+
     @Test
     public void resolveFileSingleton() {
         metadata.setSingleton(true);
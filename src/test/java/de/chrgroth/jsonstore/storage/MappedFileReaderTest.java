@@ -0,0 +1,64 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+public class MappedFileReaderTest {
+
+    private static final String DATA = "some test content: äöü€+#*'ß?`?-:-.,;_";
+
+    private File file;
+
+    @Before
+    public void setup() {
+        file = new File(Files.createTempDir(), "mapped");
+    }
+
+    @Test
+    public void read() throws IOException {
+        assertRead(DATA, StandardCharsets.UTF_8, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void readEmpty() throws IOException {
+        assertRead("", StandardCharsets.UTF_8, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void readMultipleRegions() throws IOException {
+        for (int regionSize = 3; regionSize < 10; regionSize++) {
+            assertRead(DATA, StandardCharsets.UTF_8, regionSize);
+        }
+    }
+
+    @Test
+    public void readMultipleRegionsDifferentCharset() throws IOException {
+        assertRead("some test content: äöü+#*'ß?`?-:-.,;_", StandardCharsets.ISO_8859_1, 1);
+    }
+
+    @Test(expected = CharacterCodingException.class)
+    public void readMalformed() throws IOException {
+        Files.write(new byte[] {'a', (byte) 0xC3}, file);
+        try (Reader reader = new MappedFileReader(file.toPath(), StandardCharsets.UTF_8)) {
+            CharStreams.toString(reader);
+        }
+    }
+
+    private void assertRead(String data, Charset charset, long regionSize) throws IOException {
+        Files.write(data.getBytes(charset), file);
+        try (Reader reader = new MappedFileReader(file.toPath(), charset, regionSize)) {
+            Assert.assertEquals(data, CharStreams.toString(reader));
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package de.chrgroth.jsonstore.storage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.CharStreams;
+
+import de.chrgroth.jsonstore.JsonStore;
+import de.chrgroth.jsonstore.JsonStoreException;
+import de.chrgroth.jsonstore.JsonStoreMetadata;
+import de.chrgroth.jsonstore.JsonStores;
+import de.chrgroth.jsonstore.StorageService;
+import de.chrgroth.jsonstore.json.flexjson.FlexjsonService;
+import de.chrgroth.jsonstore.metrics.WriteBehindMetrics;
+
+public class WriteBehindStorageServiceTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private RecordingStorageService delegate;
+    private WriteBehindStorageService storageService;
+    private JsonStoreMetadata<?> metadata;
+
+    private static class RecordingStorageService implements StorageService {
+        private final List<String> writes = new CopyOnWriteArrayList<>();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+        private volatile boolean deleted;
+        private volatile boolean failing;
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public long size(JsonStoreMetadata<?> metadata) {
+            return writes.size();
+        }
+
+        @Override
+        public void write(JsonStoreMetadata<?> metadata, Consumer<Writer> json) {
+            started.countDown();
+            try {
+                blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new IllegalStateException("write failed");
+            }
+            Writer writer = new StringWriter();
+            json.accept(writer);
+            writes.add(writer.toString());
+        }
+
+        @Override
+        public void read(JsonStoreMetadata<?> metadata, Consumer<Reader> json) {
+            if (!writes.isEmpty()) {
+                json.accept(new StringReader(writes.get(writes.size() - 1)));
+            }
+        }
+
+        @Override
+        public void delete(JsonStoreMetadata<?> metadata) {
+            deleted = true;
+        }
+    }
+
+    @Before
+    public void setup() {
+        delegate = new RecordingStorageService();
+        storageService = new WriteBehindStorageService(delegate);
+        metadata = new JsonStoreMetadata<>();
+        metadata.setUid("test-uid");
+    }
+
+    private void write(String data) {
+        storageService.write(metadata, writer -> {
+            try {
+                writer.write(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private String read() {
+        StringBuilder data = new StringBuilder();
+        storageService.read(metadata, reader -> {
+            try {
+                data.append(CharStreams.toString(reader));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return data.toString();
+    }
+
+    @Test(expected = JsonStoreException.class)
+    public void nullDelegate() {
+        new WriteBehindStorageService(null);
+    }
+
+    @Test
+    public void writeFlush() {
+        write("one");
+        storageService.flush();
+        Assert.assertEquals(1, delegate.writes.size());
+        Assert.assertEquals("one", delegate.writes.get(0));
+        Assert.assertEquals(1, storageService.size(metadata));
+    }
+
+    @Test
+    public void coalescing() throws InterruptedException {
+
+        // block first write
+        delegate.blocked = new CountDownLatch(1);
+        write("one");
+        Assert.assertTrue(delegate.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // queue further writes
+        write("two");
+        write("three");
+        WriteBehindMetrics metrics = storageService.computeMetrics();
+        Assert.assertEquals(1, metrics.getQueueDepth());
+        Assert.assertEquals(3, metrics.getSubmittedWrites());
+        Assert.assertEquals(1, metrics.getCoalescedWrites());
+
+        // process
+        delegate.blocked.countDown();
+        Assert.assertEquals("three", read());
+        Assert.assertEquals(2, delegate.writes.size());
+        Assert.assertEquals("one", delegate.writes.get(0));
+        metrics = storageService.computeMetrics();
+        Assert.assertEquals(0, metrics.getQueueDepth());
+        Assert.assertEquals(2, metrics.getCompletedWrites());
+        Assert.assertEquals(0, metrics.getFailedWrites());
+    }
+
+    @Test
+    public void deleteDropsPendingWrite() throws InterruptedException {
+        delegate.blocked = new CountDownLatch(1);
+        write("one");
+        Assert.assertTrue(delegate.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        write("two");
+        delegate.blocked.countDown();
+        storageService.delete(metadata);
+        Assert.assertTrue(delegate.deleted);
+        Assert.assertEquals(1, delegate.writes.size());
+    }
+
+    @Test
+    public void backgroundSerialization() {
+        AtomicReference<String> thread = new AtomicReference<>();
+        AtomicBoolean written = new AtomicBoolean();
+        storageService.write(metadata, writer -> thread.set(Thread.currentThread().getName()), () -> written.set(true));
+        storageService.flush();
+        Assert.assertTrue(thread.get().startsWith("json-store-write-behind-"));
+        Assert.assertTrue(written.get());
+    }
+
+    @Test
+    public void failedSerialization() {
+        AtomicBoolean written = new AtomicBoolean();
+        storageService.write(metadata, writer -> {
+            throw new IllegalStateException("serialization failed");
+        }, () -> written.set(true));
+        storageService.flush();
+        Assert.assertFalse(written.get());
+        Assert.assertEquals(1, storageService.computeMetrics().getFailedWrites());
+    }
+
+    @Test
+    public void storeSnapshot() throws InterruptedException {
+        JsonStores stores = JsonStores.builder(FlexjsonService.builder().build(), storageService).autoSave(true).build();
+        JsonStore<String> store = stores.ensure(metadata.getUid(), 1);
+
+        // changes after handing over the snapshot are not written
+        delegate.blocked = new CountDownLatch(1);
+        store.add("one");
+        Assert.assertTrue(delegate.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        store.add("two");
+        delegate.blocked.countDown();
+        storageService.flush();
+        Assert.assertEquals(2, delegate.writes.size());
+        Assert.assertTrue(delegate.writes.get(0).contains("one"));
+        Assert.assertFalse(delegate.writes.get(0).contains("two"));
+        Assert.assertTrue(delegate.writes.get(1).contains("two"));
+        Assert.assertFalse(store.isDirty());
+    }
+
+    @Test
+    public void storeDirtyOnFailedWrite() {
+        JsonStores stores = JsonStores.builder(FlexjsonService.builder().build(), storageService).autoSave(true).build();
+        JsonStore<String> store = stores.ensure(metadata.getUid(), 1);
+
+        // failed write in background
+        delegate.failing = true;
+        store.add("one");
+        storageService.flush();
+        Assert.assertTrue(store.isDirty());
+
+        // saved again
+        delegate.failing = false;
+        stores.save();
+        storageService.flush();
+        Assert.assertFalse(store.isDirty());
+        Assert.assertTrue(read().contains("one"));
+    }
+
+    @Test
+    public void failedWrite() {
+        delegate.failing = true;
+        write("one");
+        storageService.flush();
+        Assert.assertEquals(1, storageService.computeMetrics().getFailedWrites());
+        Assert.assertEquals(0, storageService.computeMetrics().getCompletedWrites());
+    }
+
+    @Test
+    public void close() {
+        write("one");
+        storageService.close();
+        Assert.assertEquals(1, delegate.writes.size());
+        Assert.assertEquals("one", read());
+        try {
+            write("two");
+            Assert.fail("exception expected");
+        } catch (JsonStoreException e) {
+            // expected
+        }
+    }
+}